@@ -23,7 +23,9 @@ kotlin {
 jmh {
     warmupIterations = 1
     fork = 1
-    threads = 1
+    threads = (findProperty("jmhThreads") as String?)?.toInt() ?: 1
+    (findProperty("jmhIncludes") as String?)?.let { includes = listOf(it) }
+    profilers = ((findProperty("jmhProfilers") as String?) ?: "gc").split(",").filter { it.isNotBlank() }
 }
 
 dependencies {
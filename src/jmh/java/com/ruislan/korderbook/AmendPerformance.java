@@ -0,0 +1,76 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookJavaImpl;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import com.ruislan.korderbook.kotlin.OrderBookKotlinImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一价位上挂着 levelDepth 个订单，随机挑一个改单：
+ * reduceByAmend 原地减量；moveByAmend 在相邻两个价位之间来回改价；
+ * moveByCancelAndPlace 用撤单再下单做同样的事，作为对照
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AmendPerformance {
+    private static final long PRICE = 50L;
+    private static final long QTY = 1_000_000_000L;
+
+    @Param({"java", "ladder", "kotlin"})
+    private String impl;
+
+    @Param({"10", "1000"})
+    private int levelDepth;
+
+    private OrderBook orderBook;
+    private Order[] orders;
+    private Random random;
+    private long nextId;
+
+    @Setup
+    public void prepare() {
+        final OrderBookListener listener = new OrderBookListener() {
+        };
+        orderBook = switch (impl) {
+            case "ladder" -> new OrderBookLadderImpl("simple", listener);
+            case "kotlin" -> new OrderBookKotlinImpl("simple", listener);
+            default -> new OrderBookJavaImpl("simple", listener);
+        };
+        orders = new Order[levelDepth];
+        for (int i = 0; i < levelDepth; i++) {
+            orders[i] = new Order(++nextId, true, PRICE, QTY);
+            orderBook.place(orders[i]);
+        }
+        random = new Random();
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    public void reduceByAmend() {
+        final Order order = orders[random.nextInt(levelDepth)];
+        orderBook.amend(order.getId(), order.getPrice(), order.getOpenQty() - 1);
+    }
+
+    @Benchmark
+    public void moveByAmend() {
+        final Order order = orders[random.nextInt(levelDepth)];
+        orderBook.amend(order.getId(), order.getPrice() == PRICE ? PRICE + 1 : PRICE, order.getOpenQty());
+    }
+
+    @Benchmark
+    public void moveByCancelAndPlace() {
+        final int i = random.nextInt(levelDepth);
+        final Order order = orders[i];
+        orderBook.cancel(order.getId());
+        orders[i] = new Order(++nextId, true, order.getPrice() == PRICE ? PRICE + 1 : PRICE, order.getOpenQty());
+        orderBook.place(orders[i]);
+    }
+}
@@ -0,0 +1,56 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 开盘：同一批 orders 个互相交叉的订单（价格在中间价上下 BAND 个 tick 里随机），
+ * continuous 逐个连续撮合，auction 先全部挂单再 uncross 一次成交。
+ * 每次都从空的订单簿开始，两种方式都包含建簿和挂单的开销。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuctionPerformance {
+    private static final long MID_PRICE = 1_000L;
+    private static final int BAND = 50;
+
+    @Param({"continuous", "auction"})
+    private String mode;
+
+    @Param({"1000", "10000"})
+    private int orders;
+
+    private boolean[] sides;
+    private long[] prices;
+    private long[] quantities;
+
+    @Setup
+    public void prepare() {
+        final var random = new Random(42L);
+        sides = new boolean[orders];
+        prices = new long[orders];
+        quantities = new long[orders];
+        for (int i = 0; i < orders; i++) {
+            sides[i] = random.nextBoolean();
+            prices[i] = MID_PRICE - BAND + random.nextInt(2 * BAND + 1);
+            quantities[i] = 1L + random.nextInt(100);
+        }
+    }
+
+    @Benchmark
+    public long openingCross() {
+        final var orderBook = new OrderBookLadderImpl("simple", new OrderBookListener() {
+        }, 1L, 2_000L, 1L);
+        final boolean auction = mode.equals("auction");
+        if (auction) orderBook.beginAuction();
+        for (int i = 0; i < orders; i++) {
+            orderBook.place(new Order(i + 1L, sides[i], prices[i], quantities[i], 0L));
+        }
+        if (auction) orderBook.uncross();
+        return orderBook.getMarketPrice();
+    }
+}
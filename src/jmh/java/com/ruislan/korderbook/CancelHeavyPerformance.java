@@ -0,0 +1,54 @@
+package com.ruislan.korderbook;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 撤单为主的订单流：订单簿里始终保持 LIVE_ORDERS 个自己的订单，每次随机撤掉一个再按订单流补一个。
+ * 补的单集中在最优价附近，其中 5% 是吃单，所以会有一部分撤单落在已经成交的订单上被拒绝。
+ * metrics 为 true 时打开订单簿内置的统计，对比打开前后的耗时。
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CancelHeavyPerformance {
+    private static final long MID_PRICE = 10_000L;
+    private static final int LIVE_ORDERS = 10_000;
+
+    @Param({"java", "ladder", "kotlin"})
+    private String impl;
+
+    @Param({"false", "true"})
+    private boolean metrics;
+
+    private OrderBook orderBook;
+    private OrderFlow flow;
+    private final long[] liveIds = new long[LIVE_ORDERS];
+    private long nextId;
+
+    @Setup
+    public void prepare() {
+        orderBook = OrderFlow.createOrderBook(impl);
+        if (metrics) orderBook.setMetrics(new OrderBookMetrics());
+        flow = new OrderFlow(42L, MID_PRICE, 5, 100, 5, 100L);
+        for (int i = 0; i < LIVE_ORDERS; i++) {
+            liveIds[i] = ++nextId;
+            orderBook.place(flow.order(flow.next(), nextId));
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    public void cancelAndReplace() {
+        final int i = flow.next();
+        final int slot = flow.pick(i, LIVE_ORDERS);
+        orderBook.cancel(liveIds[slot]);
+        liveIds[slot] = ++nextId;
+        orderBook.place(flow.order(i, nextId));
+    }
+}
@@ -0,0 +1,82 @@
+package com.ruislan.korderbook;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单簿里预先挂着 restingOrders 个订单，买卖各 LEVELS_PER_SIDE 档，订单流集中在最优价附近：
+ * placeAndCancel 挂一个被动单再随机撤掉一个自己的单；
+ * tradeAtTouch 先在最优价补一笔被动单，再用同样的数量从对手方吃掉，订单簿的总量保持不变；
+ * placeCancelAndReadDepth 在 placeAndCancel 之后读取双方前 DEPTH_LEVELS 档。
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeepBookPerformance {
+    private static final long MID_PRICE = 10_000L;
+    private static final int LEVELS_PER_SIDE = 5_000;
+    private static final int LIVE_ORDERS = 10_000;
+    private static final int DEPTH_LEVELS = 20;
+
+    @Param({"java", "ladder", "kotlin"})
+    private String impl;
+
+    @Param({"1000000"})
+    private int restingOrders;
+
+    private OrderBook orderBook;
+    private OrderFlow flow;
+    private final long[] liveIds = new long[LIVE_ORDERS];
+    private long nextId;
+    private final long[] prices = new long[DEPTH_LEVELS];
+    private final long[] qtys = new long[DEPTH_LEVELS];
+
+    @Setup
+    public void prepare() {
+        orderBook = OrderFlow.createOrderBook(impl);
+        final int ordersPerLevel = Math.max(1, restingOrders / (LEVELS_PER_SIDE * 2));
+        for (int j = 0; j < ordersPerLevel; j++) {
+            for (int i = 1; i <= LEVELS_PER_SIDE; i++) {
+                orderBook.place(new Order(++nextId, true, MID_PRICE - i, 100L, 0L));
+                orderBook.place(new Order(++nextId, false, MID_PRICE + i, 100L, 0L));
+            }
+        }
+        flow = new OrderFlow(42L, MID_PRICE, 10, LEVELS_PER_SIDE, 0, 100L);
+        for (int i = 0; i < LIVE_ORDERS; i++) {
+            liveIds[i] = ++nextId;
+            orderBook.place(flow.order(flow.next(), nextId));
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    public void placeAndCancel() {
+        final int i = flow.next();
+        final int slot = flow.pick(i, LIVE_ORDERS);
+        orderBook.cancel(liveIds[slot]);
+        liveIds[slot] = ++nextId;
+        orderBook.place(flow.order(i, nextId));
+    }
+
+    @Benchmark
+    public void tradeAtTouch() {
+        final int i = flow.next();
+        final boolean isBuy = flow.isBuy(i);
+        final long qty = flow.qty(i);
+        orderBook.place(new Order(++nextId, !isBuy, isBuy ? MID_PRICE + 1 : MID_PRICE - 1, qty, 0L));
+        orderBook.place(new Order(++nextId, isBuy, isBuy ? MID_PRICE + LEVELS_PER_SIDE : MID_PRICE - LEVELS_PER_SIDE, qty, 0L));
+    }
+
+    @Benchmark
+    public void placeCancelAndReadDepth(Blackhole blackhole) {
+        placeAndCancel();
+        blackhole.consume(orderBook.getBidsDepth().copyTopLevels(prices, qtys, DEPTH_LEVELS));
+        blackhole.consume(orderBook.getAsksDepth().copyTopLevels(prices, qtys, DEPTH_LEVELS));
+    }
+}
@@ -0,0 +1,71 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 深度校验和的开销。校验和总是随深度一起增量维护，没有开关，所以分三项对比：
+ * levelChecksum 是一档 CRC-32 的耗时，增量维护每次档位变化算两次（新建或删除档位时再多一两次）；
+ * place 是挂一个不会成交的单再撤掉，包含增量维护；placeAndRecompute 在 place 之后再对两方前 100 档
+ * 整体重算一次，相当于不做增量、每次变化都全量计算的开销。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DepthChecksumPerformance {
+    private static final int LEVELS = Depth.DEFAULT_MAX_LEVEL;
+    private static final long MID_PRICE = 1_000L;
+
+    private OrderBook orderBook;
+    private Random random;
+    private long nextId;
+    private final long[] prices = new long[LEVELS];
+    private final long[] qtys = new long[LEVELS];
+
+    @Setup
+    public void prepare() {
+        orderBook = new OrderBookLadderImpl("simple", new OrderBookListener() {
+        });
+        // 买卖双方各铺满 200 档，前 100 档之外也有档位
+        for (int i = 1; i <= LEVELS * 2; i++) {
+            orderBook.place(new Order(++nextId, true, MID_PRICE - i, 100L));
+            orderBook.place(new Order(++nextId, false, MID_PRICE + i, 100L));
+        }
+        random = new Random(42L);
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    public int levelChecksum() {
+        return Depth.levelChecksum(MID_PRICE + random.nextInt(LEVELS), 1L + random.nextInt(100));
+    }
+
+    @Benchmark
+    public long place() {
+        final boolean isBuy = random.nextBoolean();
+        final long offset = 1 + random.nextInt(LEVELS);
+        final long id = ++nextId;
+        orderBook.place(new Order(id, isBuy, isBuy ? MID_PRICE - offset : MID_PRICE + offset, 10L));
+        orderBook.cancel(id);
+        return orderBook.getDepthChecksum();
+    }
+
+    @Benchmark
+    public long placeAndRecompute() {
+        return place() + recompute(orderBook.getBidsDepth()) + recompute(orderBook.getAsksDepth());
+    }
+
+    private int recompute(Depth depth) {
+        final int levels = depth.copyTopLevels(prices, qtys, LEVELS);
+        int checksum = 0;
+        for (int i = 0; i < levels; i++) checksum += Depth.levelChecksum(prices[i], qtys[i]);
+        return checksum;
+    }
+}
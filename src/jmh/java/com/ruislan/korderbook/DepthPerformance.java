@@ -0,0 +1,78 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookJavaImpl;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import com.ruislan.korderbook.kotlin.OrderBookKotlinImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次下单之后读取一次完整的 100 档深度，读取的耗时应该和档位数成线性关系
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DepthPerformance {
+    private static final int LEVELS = Depth.DEFAULT_MAX_LEVEL;
+
+    @Param({"java", "ladder", "kotlin"})
+    private String impl;
+
+    private OrderBook orderBook;
+    private Random random;
+    private long nextId;
+    private final long[] prices = new long[LEVELS];
+    private final long[] qtys = new long[LEVELS];
+
+    @Setup
+    public void prepare() {
+        final OrderBookListener listener = new OrderBookListener() {
+        };
+        orderBook = switch (impl) {
+            case "ladder" -> new OrderBookLadderImpl("simple", listener);
+            case "kotlin" -> new OrderBookKotlinImpl("simple", listener);
+            default -> new OrderBookJavaImpl("simple", listener);
+        };
+        // 买卖双方各铺满 200 档，中间价 1000
+        for (int i = 1; i <= LEVELS * 2; i++) {
+            orderBook.place(new Order(++nextId, true, 1_000L - i, 100L));
+            orderBook.place(new Order(++nextId, false, 1_000L + i, 100L));
+        }
+        random = new Random();
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    /**
+     * 在最优价附近挂一个不会成交的单
+     */
+    private void placeNearTouch() {
+        final boolean isBuy = random.nextBoolean();
+        final long offset = 1 + random.nextInt(LEVELS);
+        orderBook.place(new Order(++nextId, isBuy, isBuy ? 1_000L - offset : 1_000L + offset, 10L));
+    }
+
+    @Benchmark
+    public void placeAndCopyTopLevels(Blackhole blackhole) {
+        placeNearTouch();
+        blackhole.consume(orderBook.getBidsDepth().copyTopLevels(prices, qtys, LEVELS));
+        blackhole.consume(orderBook.getAsksDepth().copyTopLevels(prices, qtys, LEVELS));
+    }
+
+    @Benchmark
+    public void placeAndReadEachLevel(Blackhole blackhole) {
+        placeNearTouch();
+        final Depth bids = orderBook.getBidsDepth();
+        final Depth asks = orderBook.getAsksDepth();
+        for (int level = 1; level <= LEVELS; level++) {
+            blackhole.consume(bids.getDepthLevel(level).getTotalQty());
+            blackhole.consume(asks.getDepthLevel(level).getTotalQty());
+        }
+    }
+}
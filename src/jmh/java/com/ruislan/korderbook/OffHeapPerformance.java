@@ -0,0 +1,80 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookOffHeapImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 挂单在堆上（ladder）和在堆外（offheap）的对比，订单簿里预先挂着 restingOrders 个订单：
+ * 准备好之后打印 GC 之后的堆占用和堆外占用，两个基准的 p99.9 看 SampleTime 的结果。
+ * placeAndCancel 和 tradeAtTouch 和 DeepBookPerformance 里的一样。
+ * 1000 万挂单需要足够大的堆，用 -Xmx 和 -XX:MaxDirectMemorySize 放在 fork 的参数里。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "-XX:MaxDirectMemorySize=4g"})
+public class OffHeapPerformance {
+    private static final long MID_PRICE = 10_000L;
+    private static final int LEVELS_PER_SIDE = 5_000;
+    private static final int LIVE_ORDERS = 10_000;
+
+    @Param({"ladder", "offheap"})
+    private String impl;
+
+    @Param({"1000000", "10000000"})
+    private int restingOrders;
+
+    private OrderBook orderBook;
+    private OrderFlow flow;
+    private final long[] liveIds = new long[LIVE_ORDERS];
+    private long nextId;
+
+    @Setup
+    public void prepare() {
+        orderBook = OrderFlow.createOrderBook(impl);
+        final int ordersPerLevel = Math.max(1, restingOrders / (LEVELS_PER_SIDE * 2));
+        for (int j = 0; j < ordersPerLevel; j++) {
+            for (int i = 1; i <= LEVELS_PER_SIDE; i++) {
+                orderBook.place(new Order(++nextId, true, MID_PRICE - i, 100L, 0L));
+                orderBook.place(new Order(++nextId, false, MID_PRICE + i, 100L, 0L));
+            }
+        }
+        flow = new OrderFlow(42L, MID_PRICE, 10, LEVELS_PER_SIDE, 0, 100L);
+        for (int i = 0; i < LIVE_ORDERS; i++) {
+            liveIds[i] = ++nextId;
+            orderBook.place(flow.order(flow.next(), nextId));
+        }
+
+        System.gc();
+        final long heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        final long offHeapBytes = orderBook instanceof OrderBookOffHeapImpl offHeap ? offHeap.getOffHeapBytes() : 0L;
+        System.out.printf("%n%s, %d resting orders: heap used %d MB, off-heap %d MB%n",
+                impl, restingOrders, heapBytes >> 20, offHeapBytes >> 20);
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    public void placeAndCancel() {
+        final int i = flow.next();
+        final int slot = flow.pick(i, LIVE_ORDERS);
+        orderBook.cancel(liveIds[slot]);
+        liveIds[slot] = ++nextId;
+        orderBook.place(flow.order(i, nextId));
+    }
+
+    @Benchmark
+    public void tradeAtTouch() {
+        final int i = flow.next();
+        final boolean isBuy = flow.isBuy(i);
+        final long qty = flow.qty(i);
+        orderBook.place(new Order(++nextId, !isBuy, isBuy ? MID_PRICE + 1 : MID_PRICE - 1, qty, 0L));
+        orderBook.place(new Order(++nextId, isBuy, isBuy ? MID_PRICE + LEVELS_PER_SIDE : MID_PRICE - LEVELS_PER_SIDE, qty, 0L));
+    }
+}
@@ -0,0 +1,60 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookJavaImpl;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import com.ruislan.korderbook.kotlin.OrderBookKotlinImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一价位上挂着 levelDepth 个订单，随机撤掉其中一个再补一个新单，撤单耗时应该和 levelDepth 无关
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrderBookCancelPerformance {
+    private static final long PRICE = 50L;
+
+    @Param({"java", "ladder", "kotlin"})
+    private String impl;
+
+    @Param({"10", "1000", "100000"})
+    private int levelDepth;
+
+    private OrderBook orderBook;
+    private long[] orderIds;
+    private Random random;
+    private long nextId;
+
+    @Setup
+    public void prepare() {
+        final OrderBookListener listener = new OrderBookListener() {
+        };
+        orderBook = switch (impl) {
+            case "ladder" -> new OrderBookLadderImpl("simple", listener);
+            case "kotlin" -> new OrderBookKotlinImpl("simple", listener);
+            default -> new OrderBookJavaImpl("simple", listener);
+        };
+        orderIds = new long[levelDepth];
+        for (int i = 0; i < levelDepth; i++) {
+            orderIds[i] = ++nextId;
+            orderBook.place(new Order(orderIds[i], true, PRICE, 100L));
+        }
+        random = new Random();
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    public void cancelById() {
+        final int i = random.nextInt(levelDepth);
+        orderBook.cancel(orderIds[i]);
+        orderIds[i] = ++nextId;
+        orderBook.place(new Order(orderIds[i], true, PRICE, 100L));
+    }
+}
@@ -0,0 +1,79 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookJavaImpl;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import com.ruislan.korderbook.java.OrderBookOffHeapImpl;
+import com.ruislan.korderbook.kotlin.OrderBookKotlinImpl;
+
+import java.util.Random;
+
+/**
+ * 预先生成好的订单流，基准测试里只按下标读数组，不调用 Random 和时钟
+ * <p>
+ * 价格集中在中间价附近：离中间价的档数服从均值为 meanOffset 的几何分布，最远 maxOffset 档。
+ * 被动单挂在自己这一方，aggressivePercent 的订单越过中间价挂到对手方的价格上，成为吃单。
+ */
+final class OrderFlow {
+    static final int SIZE = 1 << 20;
+    private static final int MASK = SIZE - 1;
+
+    private final boolean[] sides = new boolean[SIZE];
+    private final long[] prices = new long[SIZE];
+    private final long[] qtys = new long[SIZE];
+    private final int[] picks = new int[SIZE]; // 撤单时用来挑选订单的随机数
+    private int cursor = -1;
+
+    OrderFlow(long seed, long midPrice, int meanOffset, int maxOffset, int aggressivePercent, long maxQty) {
+        final Random random = new Random(seed);
+        for (int i = 0; i < SIZE; i++) {
+            final boolean isBuy = random.nextBoolean();
+            final long offset = 1L + Math.min(maxOffset - 1, (long) (-Math.log(1.0 - random.nextDouble()) * meanOffset));
+            final boolean aggressive = random.nextInt(100) < aggressivePercent;
+            sides[i] = isBuy;
+            prices[i] = isBuy == aggressive ? midPrice + offset : midPrice - offset;
+            qtys[i] = 1L + random.nextInt((int) maxQty);
+            picks[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 下一笔订单的下标，用完一轮之后从头开始
+     */
+    int next() {
+        return cursor = (cursor + 1) & MASK;
+    }
+
+    boolean isBuy(int i) {
+        return sides[i];
+    }
+
+    long price(int i) {
+        return prices[i];
+    }
+
+    long qty(int i) {
+        return qtys[i];
+    }
+
+    /**
+     * [0, bound) 之间的一个随机数
+     */
+    int pick(int i, int bound) {
+        return picks[i] % bound;
+    }
+
+    Order order(int i, long id) {
+        return new Order(id, sides[i], prices[i], qtys[i], 0L);
+    }
+
+    static OrderBook createOrderBook(String impl) {
+        final OrderBookListener listener = new OrderBookListener() {
+        };
+        return switch (impl) {
+            case "ladder" -> new OrderBookLadderImpl("simple", listener);
+            case "kotlin" -> new OrderBookKotlinImpl("simple", listener);
+            case "offheap" -> new OrderBookOffHeapImpl("simple", listener);
+            default -> new OrderBookJavaImpl("simple", listener);
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookJavaImpl;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import com.ruislan.korderbook.kotlin.OrderBookKotlinImpl;
+import com.ruislan.korderbook.replay.OrderFlowReplay;
+import com.ruislan.korderbook.replay.OrderFlowWriter;
+import com.ruislan.korderbook.replay.ReplayReport;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全速重放一个订单流文件，每次迭代用一个新的订单簿从头放到尾，迭代结束时打印吞吐、延迟百分位和事件流校验和。
+ * <p>
+ * 用 -p flowFile=... 指定录制的文件（先用 OrderFlowCsv 从 CSV 转换），不指定时用 OrderFlow 生成
+ * 100 万条撤单为主、价格集中在最优价附近的命令。比较不同实现时校验和应该一样。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReplayPerformance {
+    private static final int GENERATED_COMMANDS = 1_000_000;
+    private static final long MID_PRICE = 10_000L;
+
+    @Param({"java", "ladder", "kotlin"})
+    private String impl;
+
+    @Param({""})
+    private String flowFile;
+
+    private Path file;
+    private boolean generated;
+    private ReplayReport report;
+
+    @Setup
+    public void prepare() throws IOException {
+        if (!flowFile.isEmpty()) {
+            file = Path.of(flowFile);
+            return;
+        }
+        file = Files.createTempFile("korderbook", ".kof");
+        generated = true;
+        final OrderFlow flow = new OrderFlow(42L, MID_PRICE, 5, 100, 5, 100L);
+        final long[] liveIds = new long[10_000];
+        long nextId = 0L;
+        try (OrderFlowWriter writer = new OrderFlowWriter(file)) {
+            for (int n = 0; n < GENERATED_COMMANDS; n++) {
+                final int i = flow.next();
+                final int slot = flow.pick(i, liveIds.length);
+                if (liveIds[slot] != 0L && (n & 1) == 0) {
+                    writer.cancel(n, liveIds[slot]);
+                    liveIds[slot] = 0L;
+                } else {
+                    liveIds[slot] = ++nextId;
+                    writer.place(n, nextId, 0L, flow.isBuy(i), flow.price(i), flow.qty(i), 0L, TimeInForce.GTC, false);
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        if (generated) Files.deleteIfExists(file);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printReport() {
+        if (report != null) System.out.println(impl + ": " + report);
+    }
+
+    @Benchmark
+    public long replay() throws IOException {
+        report = OrderFlowReplay.run(file, listener -> switch (impl) {
+            case "ladder" -> new OrderBookLadderImpl("replay", listener);
+            case "kotlin" -> new OrderBookKotlinImpl("replay", listener);
+            default -> new OrderBookJavaImpl("replay", listener);
+        });
+        return report.getChecksum();
+    }
+}
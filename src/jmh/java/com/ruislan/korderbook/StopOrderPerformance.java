@@ -0,0 +1,63 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookJavaImpl;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import com.ruislan.korderbook.kotlin.OrderBookKotlinImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10 万个等待触发的买方止损单，止损价分布在 1101 到 2000 之间：
+ * tradeBelowStops 在止损价下方来回成交，每次成交都要检查止损单，耗时不应该随止损单的数量增长；
+ * sweep 一笔大单从 1001 扫到 2000，一次触发全部止损单，每个止损单按止损价挂成买单
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StopOrderPerformance {
+    private static final int STOPS = 100_000;
+    private static final int ASK_LEVELS = 1_000;
+    private static final long MID_PRICE = 1_000L;
+    private static final long QTY_PER_ASK_LEVEL = 100L;
+
+    @Param({"java", "ladder", "kotlin"})
+    private String impl;
+
+    private OrderBook orderBook;
+    private long nextId;
+
+    @Setup(Level.Iteration)
+    public void prepare() {
+        final OrderBookListener listener = new OrderBookListener() {
+        };
+        orderBook = switch (impl) {
+            case "ladder" -> new OrderBookLadderImpl("simple", listener);
+            case "kotlin" -> new OrderBookKotlinImpl("simple", listener);
+            default -> new OrderBookJavaImpl("simple", listener);
+        };
+        nextId = 0L;
+        for (int i = 1; i <= ASK_LEVELS; i++) orderBook.place(new Order(++nextId, false, MID_PRICE + i, QTY_PER_ASK_LEVEL));
+        for (int i = 0; i < STOPS; i++) {
+            final long stopPrice = MID_PRICE + 101 + i % (ASK_LEVELS - 100);
+            orderBook.place(new Order(++nextId, 0L, true, stopPrice, 1L, stopPrice, TimeInForce.GTC, false, 0L));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public void tradeBelowStops() {
+        orderBook.place(new Order(++nextId, false, MID_PRICE, 1L));
+        orderBook.place(new Order(++nextId, true, MID_PRICE, 1L));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void sweep() {
+        orderBook.place(new Order(++nextId, true, MID_PRICE + ASK_LEVELS, ASK_LEVELS * QTY_PER_ASK_LEVEL));
+    }
+}
@@ -0,0 +1,48 @@
+package com.ruislan.korderbook;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一笔买单扫掉卖方的 levels 档，每档 ORDERS_PER_LEVEL 个订单。
+ * 每次扫单之前先把这些档位重新挂满，所以结果里包含 levels * ORDERS_PER_LEVEL 次挂单，
+ * 可以减去 CancelHeavyPerformance 里单次下单的耗时来估算扫单本身。
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SweepPerformance {
+    private static final long MID_PRICE = 10_000L;
+    private static final int ORDERS_PER_LEVEL = 10;
+    private static final long QTY = 10L;
+
+    @Param({"java", "ladder", "kotlin"})
+    private String impl;
+
+    @Param({"1", "10", "100"})
+    private int levels;
+
+    private OrderBook orderBook;
+    private long nextId;
+
+    @Setup
+    public void prepare() {
+        orderBook = OrderFlow.createOrderBook(impl);
+        // 买方留一些不会被碰到的深度
+        for (int i = 1; i <= 100; i++) orderBook.place(new Order(++nextId, true, MID_PRICE - i, QTY, 0L));
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    public void sweep() {
+        for (int level = 1; level <= levels; level++) {
+            for (int j = 0; j < ORDERS_PER_LEVEL; j++) orderBook.place(new Order(++nextId, false, MID_PRICE + level, QTY, 0L));
+        }
+        orderBook.place(new Order(++nextId, true, MID_PRICE + levels, levels * ORDERS_PER_LEVEL * QTY, 0L));
+    }
+}
@@ -0,0 +1,50 @@
+package com.ruislan.korderbook.engine;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 品种数和分片数分别变化时引擎的吞吐量，生产者线程数用 -PjmhThreads 指定
+ */
+@State(Scope.Benchmark)
+public class MatchingEnginePerformance {
+    @Param({"1", "100", "1000", "10000"})
+    private int symbolCount;
+
+    @Param({"1", "2", "4", "8"})
+    private int shardCount;
+
+    private MatchingEngine engine;
+    private String[] symbols;
+
+    @Setup
+    public void prepare() {
+        engine = new MatchingEngine(symbol -> new OrderBookLadderImpl(symbol, new OrderBookListener() {
+        }, 1L, 1_000L, 1L), shardCount, OrderSequencer.DEFAULT_BUFFER_SIZE, WaitStrategy.YIELD);
+        engine.start();
+        symbols = new String[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = "S" + i;
+            engine.addBook(symbols[i]);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public long placeLimitOrders() {
+        final var random = ThreadLocalRandom.current();
+        final String symbol = symbols[random.nextInt(symbols.length)];
+        boolean isBuy = random.nextBoolean();
+        long price = random.nextLong(1, 100);
+        long qty = random.nextLong(1, 1000);
+        return engine.place(symbol, new Order(isBuy, price, qty));
+    }
+}
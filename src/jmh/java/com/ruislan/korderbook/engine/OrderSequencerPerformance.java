@@ -0,0 +1,74 @@
+package com.ruislan.korderbook.engine;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 锁保护的订单簿和定序器的对比，生产者线程数用 -PjmhThreads 指定，例如 1、10、100、200
+ * <p>
+ * sequencedPlace 只计算发布命令的耗时，sequencedRoundTrip 等待命令在撮合线程上执行完，是端到端的延迟。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderSequencerPerformance {
+    @Param({"BUSY_SPIN", "YIELD", "PARK"})
+    private WaitStrategy waitStrategy;
+
+    private OrderBook lockedOrderBook;
+    private Lock lock;
+    private OrderSequencer sequencer;
+
+    @Setup
+    public void prepare() {
+        lockedOrderBook = new OrderBookLadderImpl("locked", new OrderBookListener() {
+        });
+        lock = new ReentrantLock();
+        sequencer = new OrderSequencer(new OrderBookLadderImpl("sequenced", new OrderBookListener() {
+        }), OrderSequencer.DEFAULT_BUFFER_SIZE, waitStrategy);
+        sequencer.start();
+    }
+
+    @TearDown
+    public void teardown() {
+        sequencer.close();
+        lockedOrderBook.close();
+    }
+
+    @Benchmark
+    public void lockGuardedPlace() {
+        final Order order = nextRandomLimitOrder();
+        lock.lock();
+        try {
+            lockedOrderBook.place(order);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    public long sequencedPlace() {
+        return sequencer.place(nextRandomLimitOrder());
+    }
+
+    @Benchmark
+    public void sequencedRoundTrip() {
+        sequencer.awaitProcessed(sequencer.place(nextRandomLimitOrder()));
+    }
+
+    private Order nextRandomLimitOrder() {
+        final var random = ThreadLocalRandom.current();
+        boolean isBuy = random.nextBoolean();
+        long price = random.nextLong(1, 100);
+        long qty = random.nextLong(1, 1000);
+        return new Order(isBuy, price, qty);
+    }
+}
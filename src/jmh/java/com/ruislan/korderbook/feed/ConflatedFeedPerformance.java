@@ -0,0 +1,91 @@
+package com.ruislan.korderbook.feed;
+
+import com.ruislan.korderbook.DepthChanges;
+import com.ruislan.korderbook.DepthListener;
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 挂着一个很慢的行情订阅者（每次更新耗时 SLOW_TOKENS 个 consumeCPU）时的撮合吞吐：
+ * none 没有订阅者；synchronous 订阅者作为深度监听器在撮合线程上同步处理，拖慢撮合；
+ * conflated 订阅者在自己的线程上通过 TopOfBookPublisher 读最新盘口，撮合吞吐应该和 none 差不多。
+ * 每一轮结束时打印订阅者读到的更新数和被合并掉的版本数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConflatedFeedPerformance {
+    private static final long MID_PRICE = 1_000L;
+    private static final int LEVELS_PER_SIDE = 100;
+    private static final long SLOW_TOKENS = 10_000L;
+
+    @Param({"none", "synchronous", "conflated"})
+    private String consumer;
+
+    private OrderBookLadderImpl orderBook;
+    private Thread reader;
+    private volatile boolean running;
+    private volatile TopOfBookSubscriber subscriber;
+    private long nextId;
+    private boolean isBuy;
+
+    @Setup(Level.Iteration)
+    public void prepare() {
+        orderBook = new OrderBookLadderImpl("simple", new OrderBookListener() {
+        });
+        for (int i = 1; i <= LEVELS_PER_SIDE; i++) {
+            orderBook.place(new Order(++nextId, true, MID_PRICE - i, 100L, 0L));
+            orderBook.place(new Order(++nextId, false, MID_PRICE + i, 100L, 0L));
+        }
+        if (consumer.equals("synchronous")) {
+            final DepthListener slow = new DepthListener() {
+                @Override
+                public void onLevelsChanged(DepthChanges changes) {
+                    Blackhole.consumeCPU(SLOW_TOKENS);
+                }
+            };
+            orderBook.getBidsDepth().setListener(slow, true);
+            orderBook.getAsksDepth().setListener(slow, true);
+        } else if (consumer.equals("conflated")) {
+            final TopOfBookPublisher publisher = new TopOfBookPublisher(orderBook);
+            subscriber = publisher.subscribe();
+            running = true;
+            reader = new Thread(() -> {
+                final TopOfBookSubscriber subscriber = this.subscriber;
+                while (running) {
+                    if (subscriber.poll()) Blackhole.consumeCPU(SLOW_TOKENS);
+                    else Thread.onSpinWait();
+                }
+            }, "slow-subscriber");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws InterruptedException {
+        if (reader != null) {
+            running = false;
+            reader.join();
+            reader = null;
+            System.out.printf("%nsubscriber read %d updates, %d conflated%n",
+                    subscriber.getUpdateCount(), subscriber.getConflatedCount());
+        }
+        orderBook.close();
+    }
+
+    /**
+     * 在最优价补一笔被动单再从对手方吃掉，每次都改变最优档的数量
+     */
+    @Benchmark
+    public void tradeAtTouch() {
+        isBuy = !isBuy;
+        orderBook.place(new Order(++nextId, !isBuy, isBuy ? MID_PRICE + 1 : MID_PRICE - 1, 10L, 0L));
+        orderBook.place(new Order(++nextId, isBuy, isBuy ? MID_PRICE + 1 : MID_PRICE - 1, 10L, 0L));
+    }
+}
@@ -0,0 +1,89 @@
+package com.ruislan.korderbook.java;
+
+import com.ruislan.korderbook.DepthChanges;
+import com.ruislan.korderbook.DepthListener;
+import com.ruislan.korderbook.EventBatch;
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 做市商一次刷新 1000 个报价：撤掉上一轮的全部报价再挂新的一轮，比较批量接口和逐个调用
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BulkQuotePerformance {
+    private static final int QUOTES = 1000;
+    private static final long MID_PRICE = 10_000L;
+
+    @Param({"false", "true"})
+    private boolean bulk;
+
+    private OrderBookLadderImpl orderBook;
+    private final Order[] quotes = new Order[QUOTES];
+    private final long[] quoteIds = new long[QUOTES];
+    private long nextId;
+    private long shift;
+
+    @Setup
+    public void prepare(Blackhole blackhole) {
+        orderBook = new OrderBookLadderImpl("simple", new OrderBookListener() {
+            @Override
+            public void onEvents(EventBatch events) {
+                blackhole.consume(events.size());
+            }
+
+            @Override
+            public void onBestBidAskChanged(long bidPrice, long bidQty, long askPrice, long askQty) {
+                blackhole.consume(bidPrice);
+            }
+        });
+        orderBook.setEventBatching(true);
+        final var depthListener = new DepthListener() {
+            @Override
+            public void onLevelsChanged(DepthChanges changes) {
+                blackhole.consume(changes.size());
+            }
+        };
+        orderBook.getBidsDepth().setListener(depthListener, true);
+        orderBook.getAsksDepth().setListener(depthListener, true);
+        refresh();
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    public void refreshQuotes() {
+        if (bulk) {
+            orderBook.cancelAll(quoteIds);
+        } else {
+            for (long quoteId : quoteIds) orderBook.cancel(quoteId);
+        }
+        refresh();
+    }
+
+    /**
+     * 买卖各 500 档，每档一个报价，整体价格每轮上下摆动一个价位
+     */
+    private void refresh() {
+        shift = shift == 0L ? 1L : 0L;
+        for (int i = 0; i < QUOTES; i++) {
+            final boolean isBuy = i % 2 == 0;
+            final long offset = 1L + i / 2;
+            quotes[i] = new Order(++nextId, isBuy, (isBuy ? MID_PRICE - offset : MID_PRICE + offset) + shift, 100L);
+            quoteIds[i] = nextId;
+        }
+        if (bulk) {
+            orderBook.placeAll(quotes);
+        } else {
+            for (Order quote : quotes) orderBook.place(quote);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.ruislan.korderbook.java;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在 5 个价位上各挂 10 个卖单，再用一个买单全部扫掉，比较逐个回调和批量事件
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventBatchPerformance {
+    private static final int LEVELS = 5;
+    private static final int ORDERS_PER_LEVEL = 10;
+
+    @Param({"false", "true"})
+    private boolean batching;
+
+    private OrderBookLadderImpl orderBook;
+    private long nextId;
+
+    @Setup
+    public void prepare(Blackhole blackhole) {
+        orderBook = new OrderBookLadderImpl("simple", new OrderBookListener() {
+            @Override
+            public void onMatched(Order o1, Order o2, long price, long qty) {
+                blackhole.consume(qty);
+            }
+
+            @Override
+            public void onFullFilled(Order order) {
+                blackhole.consume(order);
+            }
+        });
+        orderBook.setEventBatching(batching);
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+    }
+
+    @Benchmark
+    public void sweep() {
+        for (int level = 1; level <= LEVELS; level++) {
+            for (int i = 0; i < ORDERS_PER_LEVEL; i++) orderBook.place(new Order(++nextId, false, 100L + level, 10L));
+        }
+        orderBook.place(new Order(++nextId, true, 100L + LEVELS, 10L * LEVELS * ORDERS_PER_LEVEL));
+    }
+}
@@ -0,0 +1,73 @@
+package com.ruislan.korderbook.java;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.OrderClock;
+import com.ruislan.korderbook.OrderPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * placePooledLimitOrders 从对象池取订单，用 -prof gc 运行时 gc.alloc.rate.norm 应该接近 0
+ */
+@State(Scope.Benchmark)
+public class OrderBookLadderPerformance {
+    private OrderBook orderBook;
+    private OrderBook pooledOrderBook;
+    private OrderPool pool;
+    private Lock lock;
+    private Random random;
+    private long nextId;
+
+    @Setup
+    public void prepare() {
+        orderBook = new OrderBookLadderImpl("simple", new OrderBookListener() {
+        });
+        pool = new OrderPool(1 << 16, OrderClock.NANO_TIME);
+        pooledOrderBook = new OrderBookLadderImpl("pooled", new OrderBookListener() {
+        }, OrderBookLadderImpl.DEFAULT_MIN_PRICE, OrderBookLadderImpl.DEFAULT_MAX_PRICE,
+                OrderBookLadderImpl.DEFAULT_TICK_SIZE, OrderClock.NANO_TIME, pool);
+        lock = new ReentrantLock();
+        random = new Random();
+    }
+
+    @TearDown
+    public void teardown() {
+        orderBook.close();
+        pooledOrderBook.close();
+    }
+
+    @Benchmark
+    public void placeLimitOrders() {
+        lock.lock();
+        try {
+            orderBook.place(nextRandomLimitOrder());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    public void placePooledLimitOrders() {
+        lock.lock();
+        try {
+            boolean isBuy = random.nextBoolean();
+            long price = random.nextLong(1, 100);
+            long qty = random.nextLong(1, 1000);
+            pooledOrderBook.place(pool.acquire(++nextId, isBuy, price, qty));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Order nextRandomLimitOrder() {
+        boolean isBuy = random.nextBoolean();
+        long price = random.nextLong(1, 100);
+        long qty = random.nextLong(1, 1000);
+        return new Order(isBuy, price, qty);
+    }
+}
@@ -0,0 +1,62 @@
+package com.ruislan.korderbook.journal;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * 不写日志、异步刷盘、批量刷盘和每条都刷盘时的下单吞吐量
+ */
+@State(Scope.Benchmark)
+public class JournalPerformance {
+    @Param({"OFF", "ASYNC", "BATCH", "SYNC"})
+    private String journaling;
+
+    private Path file;
+    private OrderJournal journal;
+    private OrderBook orderBook;
+    private Random random;
+
+    @Setup
+    public void prepare() throws IOException {
+        final OrderBook book = new OrderBookLadderImpl("simple", new OrderBookListener() {
+        });
+        if ("OFF".equals(journaling)) {
+            orderBook = book;
+        } else {
+            file = Files.createTempFile("korderbook", ".journal");
+            journal = new OrderJournal(file, FsyncPolicy.valueOf(journaling));
+            orderBook = new JournaledOrderBook(book, journal);
+        }
+        orderBook.open();
+        random = new Random();
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        orderBook.close();
+        if (journal != null) {
+            journal.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public void placeLimitOrders() {
+        orderBook.place(nextRandomLimitOrder());
+    }
+
+    private Order nextRandomLimitOrder() {
+        boolean isBuy = random.nextBoolean();
+        long price = random.nextLong(1, 100);
+        long qty = random.nextLong(1, 1000);
+        return new Order(isBuy, price, qty);
+    }
+}
@@ -0,0 +1,78 @@
+package com.ruislan.korderbook.snapshot;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1M 挂单的订单簿：撮合线程做快照的停顿时间，以及从快照恢复的时间
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class SnapshotPerformance {
+    @Param({"1000000"})
+    private int restingOrders;
+
+    private OrderBook orderBook;
+    private SnapshotWriter writer;
+    private Path file;
+    private CompletableFuture<Void> pending;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        orderBook = newBook();
+        final var random = new Random();
+        for (int i = 0; i < restingOrders; i++) {
+            final boolean isBuy = random.nextBoolean();
+            final long price = isBuy ? random.nextLong(1, 500) : random.nextLong(501, 1000); // 买卖不交叉，全部挂单
+            orderBook.place(new Order(isBuy, price, random.nextLong(1, 1000)));
+        }
+        file = Files.createTempFile("korderbook", ".snapshot");
+        writer = new SnapshotWriter();
+        writer.write(orderBook, 0L, file).join();
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitWrite() {
+        if (pending != null) pending.join(); // 后台写文件不计入停顿时间
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        writer.close();
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * 撮合线程上的停顿，不包含后台写文件
+     */
+    @Benchmark
+    public Object snapshotPause() {
+        pending = writer.write(orderBook, 0L, file);
+        return pending;
+    }
+
+    @Benchmark
+    public OrderBook restore() throws IOException {
+        final OrderBook book = newBook();
+        SnapshotReader.restore(file, book);
+        return book;
+    }
+
+    private static OrderBook newBook() {
+        return new OrderBookLadderImpl("simple", new OrderBookListener() {
+        }, 1L, 1_000L, 1L);
+    }
+}
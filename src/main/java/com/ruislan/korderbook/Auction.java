@@ -0,0 +1,113 @@
+package com.ruislan.korderbook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 集合竞价的成交价（均衡价）计算
+ * <p>
+ * 价格 p 上买方的需求是买价不低于 p 的数量加上市价买单，卖方的供给是卖价不高于 p 的数量加上市价卖单，
+ * 能成交的数量是两者的较小值。候选价格是两边在交叉区间里的所有限价档位，按价格从低到高把两边的档位归并着走一遍，
+ * 需求和供给都是累计出来的，不需要对每个候选价重新求和。
+ * <p>
+ * 选价规则：成交量最大；其次未成交的剩余量（需求减供给的绝对值）最小；再其次离参考价（通常是最新价）最近；
+ * 还相同时取较低的价格。只有市价单、没有限价档位时用参考价成交。
+ */
+@NotThreadSafe
+public final class Auction {
+    private long price;
+    private long volume;
+    private long imbalance;
+
+    /**
+     * 根据两边的深度计算成交价，结果通过 getPrice/getVolume/getImbalance 读取
+     *
+     * @param referencePrice 参考价，没有时传 0
+     * @return 能成交时返回 true
+     */
+    public boolean compute(Depth bidsDepth, Depth asksDepth, long referencePrice) {
+        price = 0L;
+        volume = 0L;
+        imbalance = 0L;
+
+        // 买方按价格从低到高排列，市价档（0 元）在最前面；卖方从高到低，市价档在最后面
+        final int bidSize = bidsDepth.size();
+        final int bidStart = bidSize > 0 && bidsDepth.priceAt(0) == 0L ? 1 : 0;
+        final long marketBidQty = bidStart == 1 ? bidsDepth.qtyAt(0) : 0L;
+        int ask = asksDepth.size() - 1;
+        long marketAskQty = 0L;
+        if (ask >= 0 && asksDepth.priceAt(ask) == 0L) marketAskQty = asksDepth.qtyAt(ask--);
+
+        // 交叉区间：有市价卖单时所有买价都可能成交，否则从最低卖价开始；上限同理
+        final long lowestAsk = ask >= 0 ? asksDepth.priceAt(ask) : Long.MAX_VALUE;
+        final long highestBid = bidSize > bidStart ? bidsDepth.priceAt(bidSize - 1) : 0L;
+        final long lower = marketAskQty > 0L ? 0L : lowestAsk;
+        final long upper = marketBidQty > 0L ? Long.MAX_VALUE : highestBid;
+
+        // 从最高买价往下累计区间里的需求，停下的位置就是从低到高归并的起点
+        long demand = marketBidQty;
+        int bid = bidSize - 1;
+        while (bid >= bidStart && bidsDepth.priceAt(bid) >= lower) demand += bidsDepth.qtyAt(bid--);
+        ++bid;
+        long supply = marketAskQty;
+
+        while (true) {
+            final boolean hasBid = bid < bidSize;
+            final boolean hasAsk = ask >= 0 && asksDepth.priceAt(ask) <= upper;
+            if (!hasBid && !hasAsk) break;
+            final long p = !hasAsk ? bidsDepth.priceAt(bid)
+                    : !hasBid ? asksDepth.priceAt(ask)
+                    : Math.min(bidsDepth.priceAt(bid), asksDepth.priceAt(ask));
+            while (ask >= 0 && asksDepth.priceAt(ask) <= p) supply += asksDepth.qtyAt(ask--);
+            consider(p, demand, supply, referencePrice);
+            while (bid < bidSize && bidsDepth.priceAt(bid) <= p) demand -= bidsDepth.qtyAt(bid++);
+        }
+
+        if (volume == 0L && marketBidQty > 0L && marketAskQty > 0L && referencePrice > 0L) {
+            price = referencePrice;
+            volume = Math.min(marketBidQty, marketAskQty);
+            imbalance = marketBidQty - marketAskQty;
+        }
+        return volume > 0L;
+    }
+
+    private void consider(long p, long demand, long supply, long referencePrice) {
+        final long v = Math.min(demand, supply);
+        if (v == 0L) return;
+        final long imbalance = demand - supply;
+        if (volume > 0L) {
+            if (v < volume) return;
+            if (v == volume) {
+                final long surplus = Math.abs(imbalance);
+                final long bestSurplus = Math.abs(this.imbalance);
+                if (surplus > bestSurplus) return;
+                // 候选价从低到高，同样好的时候只在离参考价更近时才换
+                if (surplus == bestSurplus && (referencePrice <= 0L
+                        || Math.abs(p - referencePrice) >= Math.abs(price - referencePrice))) return;
+            }
+        }
+        price = p;
+        volume = v;
+        this.imbalance = imbalance;
+    }
+
+    /**
+     * 成交价
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    /**
+     * 在成交价上能成交的数量
+     */
+    public long getVolume() {
+        return volume;
+    }
+
+    /**
+     * 成交价上需求减去供给，正数是买方剩余，负数是卖方剩余
+     */
+    public long getImbalance() {
+        return imbalance;
+    }
+}
@@ -0,0 +1,51 @@
+package com.ruislan.korderbook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 订单簿最后一次通知出去的最优买卖价
+ * <p>
+ * 订单簿在每次下单或撤单结束时和两边深度的最优档比较一次，有变化才通知 onBestBidAskChanged，
+ * 中间扫过多少档都只比较这一次。没有挂单的一方价格和数量都是 0。
+ */
+@NotThreadSafe
+public final class BestBidAsk {
+    private long bidPrice;
+    private long bidQty;
+    private long askPrice;
+    private long askQty;
+
+    /**
+     * @return 和上一次相比是否有变化
+     */
+    public boolean update(Depth bidsDepth, Depth asksDepth) {
+        final long bidPrice = bidsDepth.getBestPrice();
+        final long bidQty = bidsDepth.getBestQty();
+        final long askPrice = asksDepth.getBestPrice();
+        final long askQty = asksDepth.getBestQty();
+        if (bidPrice == this.bidPrice && bidQty == this.bidQty && askPrice == this.askPrice && askQty == this.askQty) {
+            return false;
+        }
+        this.bidPrice = bidPrice;
+        this.bidQty = bidQty;
+        this.askPrice = askPrice;
+        this.askQty = askQty;
+        return true;
+    }
+
+    public long getBidPrice() {
+        return bidPrice;
+    }
+
+    public long getBidQty() {
+        return bidQty;
+    }
+
+    public long getAskPrice() {
+        return askPrice;
+    }
+
+    public long getAskQty() {
+        return askQty;
+    }
+}
@@ -0,0 +1,46 @@
+package com.ruislan.korderbook;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 缓存的时钟
+ * <p>
+ * 由一个后台线程按固定周期刷新时间，撮合线程读取时只是读一个 volatile 字段，精度就是刷新周期。
+ */
+public final class CachedClock implements OrderClock, AutoCloseable {
+    private final OrderClock source;
+    private final long periodNanos;
+    private final Thread ticker;
+    private volatile long now;
+    private volatile boolean running;
+
+    public CachedClock(OrderClock source, long period, TimeUnit unit) {
+        if (period <= 0L) throw new IllegalArgumentException("period must be positive");
+        this.source = source;
+        this.periodNanos = unit.toNanos(period);
+        this.now = source.now();
+        this.running = true;
+        this.ticker = new Thread(this::tick, "cached-clock");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    private void tick() {
+        while (running) {
+            now = source.now();
+            LockSupport.parkNanos(periodNanos);
+        }
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(ticker);
+    }
+}
@@ -0,0 +1,57 @@
+package com.ruislan.korderbook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * 批量撤单时按档位累计撤掉的数量和订单数，最后每个档位只更新一次深度
+ * <p>
+ * 比如按用户撤单，一个用户的挂单散落在各个档位上，逐个更新深度的话同一档位会被改很多次。
+ * 价格到累计位置的索引用 SlotIndex，数组在多次撤单之间复用。
+ */
+@NotThreadSafe
+public final class CanceledLevels {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final SlotIndex index = new SlotIndex(INITIAL_CAPACITY);
+    private long[] prices = new long[INITIAL_CAPACITY];
+    private long[] qtys = new long[INITIAL_CAPACITY];
+    private long[] orderCounts = new long[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * 记下一个从 price 档位上撤掉的订单
+     */
+    public void add(long price, long qty) {
+        int i = index.get(price);
+        if (i == SlotIndex.MISSING) {
+            if (size == prices.length) {
+                prices = Arrays.copyOf(prices, size * 2);
+                qtys = Arrays.copyOf(qtys, size * 2);
+                orderCounts = Arrays.copyOf(orderCounts, size * 2);
+            }
+            i = size++;
+            index.put(price, i);
+            prices[i] = price;
+            qtys[i] = 0L;
+            orderCounts[i] = 0L;
+        }
+        qtys[i] += qty;
+        ++orderCounts[i];
+    }
+
+    /**
+     * 把累计的撤单一次更新到深度上，然后清空
+     */
+    public void applyTo(Depth depth) {
+        for (int i = 0; i < size; i++) {
+            depth.onOrdersCancelled(prices[i], qtys[i], orderCounts[i]);
+            index.remove(prices[i]);
+        }
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -1,16 +1,55 @@
 package com.ruislan.korderbook;
 
-import com.google.common.collect.Ordering;
-
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
+/**
+ * 一方的深度
+ * <p>
+ * 所有档位按价格排好序放在几个并列的 long 数组里，最优价在数组的末尾：
+ * 成交和撤单大多发生在最优价附近，插入或删除时只需要挪动末尾少量元素；
+ * 取前 N 档就是从末尾往前读，每一档都是常数时间，也没有装箱和对象分配。
+ * <p>
+ * 同时维护前 maxLevel 档的校验和：每一档按 levelChecksum 算一个 CRC-32，校验和是这些值的和（int 溢出回绕）。
+ * 和档位的顺序无关，所以一档变化时只需要减去旧值、加上新值，档位挤进或挤出前 maxLevel 档时再加减一档，
+ * 不需要重新遍历。下游按增量重建深度之后对自己的前 maxLevel 档做同样的计算，和 getChecksum 比较就知道有没有丢消息。
+ * <p>
+ * 原地修改，没有任何同步，只能在撮合线程上读写；其它线程读盘口请用 TopOfBookSlot。
+ */
 public class Depth {
     public static final int DEFAULT_MAX_LEVEL = 100;
     public static final int TOP_LEVEL = 1;
+    private static final int INITIAL_CAPACITY = 64;
 
     private final boolean isBuy;
     private final int maxLevel;
-    private final TreeMap<Long, DepthLevel> levels;
+    // 按照从差到优排序，prices[size - 1] 是最优价
+    private long[] prices;
+    private long[] totalQtys;
+    private long[] orderCounts;
+    private long[] lastChangeQtys;
+    private int size;
+    private final DepthLevel[] views; // getDepthLevel 返回的对象，每一档一个，反复使用
+    private DepthListener listener;
+    private DepthChanges changes; // 合并模式下还没发出的变化
+    private OrderBookMetrics metrics; // 档位的新建和删除计数，为 null 时不统计
+    private long changeCount; // 档位变化的次数，用来判断需不需要重新发布盘口
+    private int checksum; // 前 maxLevel 档的校验和
+
+    // CRC-32（IEEE 802.3，和 java.util.zip.CRC32 相同）slicing-by-8 的 8 张查找表，第 k 张在 [k * 256, k * 256 + 256)
+    private static final int[] CRC_TABLE = new int[8 * 256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int c = n;
+            for (int k = 0; k < 8; k++) c = (c & 1) != 0 ? 0xEDB88320 ^ (c >>> 1) : c >>> 1;
+            CRC_TABLE[n] = c;
+        }
+        for (int n = 256; n < CRC_TABLE.length; n++) {
+            final int c = CRC_TABLE[n - 256];
+            CRC_TABLE[n] = (c >>> 8) ^ CRC_TABLE[c & 0xFF];
+        }
+    }
 
     public Depth(boolean isBuy) {
         this(isBuy, DEFAULT_MAX_LEVEL);
@@ -19,40 +58,279 @@ public class Depth {
     public Depth(boolean isBuy, int maxLevel) {
         this.isBuy = isBuy;
         this.maxLevel = maxLevel > 0 ? maxLevel : DEFAULT_MAX_LEVEL;
-        this.levels = new TreeMap<>(this.isBuy ? Ordering.natural().reverse() : Ordering.natural());
+        this.prices = new long[INITIAL_CAPACITY];
+        this.totalQtys = new long[INITIAL_CAPACITY];
+        this.orderCounts = new long[INITIAL_CAPACITY];
+        this.lastChangeQtys = new long[INITIAL_CAPACITY];
+        this.views = new DepthLevel[this.maxLevel];
+    }
+
+    /**
+     * 设置深度变化的监听器
+     *
+     * @param coalesce 是否合并，合并时订单簿在每次下单或撤单结束时调用 flushChanges 发出这一批变化
+     */
+    public void setListener(DepthListener listener, boolean coalesce) {
+        this.listener = listener;
+        this.changes = listener != null && coalesce ? new DepthChanges(isBuy) : null;
+    }
+
+    /**
+     * 由订单簿在设置统计时调用，传 null 关闭
+     */
+    public void setMetrics(OrderBookMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 发出合并的变化，没有变化时什么也不做
+     */
+    public void flushChanges() {
+        final DepthChanges changes = this.changes;
+        if (changes == null || changes.size() == 0) return;
+        changes.setChecksum(checksum);
+        try {
+            listener.onLevelsChanged(changes);
+        } finally {
+            changes.clear();
+        }
+    }
+
+    private void fireLevelChanged(long price, long totalQty, long orderCount) {
+        ++changeCount;
+        if (listener == null) return;
+        if (changes != null) changes.record(price, totalQty, orderCount);
+        else listener.onLevelChanged(isBuy, price, totalQty, orderCount, checksum);
     }
 
     public void onOrderPlaced(long price, long qty) {
-        this.levels.computeIfAbsent(price, DepthLevel::new).addOrder(qty);
+        int index = indexOf(price);
+        if (index < 0) index = insert(-index - 1, price);
+        ++orderCounts[index];
+        changeQty(index, totalQtys[index] + qty);
+        lastChangeQtys[index] = qty;
+        fireLevelChanged(price, totalQtys[index], orderCounts[index]);
     }
 
     public void onOrderCancelled(long price, long qty) {
-        internalCloseOrder(price, qty);
+        internalCloseOrders(price, qty, 1L);
     }
 
     public void onOrderFullFilled(long price, long qty) {
-        internalCloseOrder(price, qty);
+        internalCloseOrders(price, qty, 1L);
+    }
+
+    /**
+     * 一次撤掉同一档位上的 orderCount 个订单，数量合计为 qty，只更新和通知一次
+     */
+    public void onOrdersCancelled(long price, long qty, long orderCount) {
+        internalCloseOrders(price, qty, orderCount);
+    }
+
+    private void internalCloseOrders(long price, long qty, long count) {
+        final int index = indexOf(price);
+        if (index < 0) return;
+        final long totalQty = totalQtys[index] - qty;
+        final long orderCount = orderCounts[index] -= count;
+        lastChangeQtys[index] = -qty;
+        if (totalQty == 0L) remove(index);
+        else changeQty(index, totalQty);
+        fireLevelChanged(price, totalQty, orderCount);
+    }
+
+    public void onOrderPartialFilled(long price, long qty) {
+        final int index = indexOf(price);
+        if (index < 0) return;
+        changeQty(index, totalQtys[index] - qty);
+        fireLevelChanged(price, totalQtys[index], orderCounts[index]);
+    }
+
+    /**
+     * 原地改单减少了数量，订单数不变
+     */
+    public void onOrderReduced(long price, long qty) {
+        final int index = indexOf(price);
+        if (index < 0) return;
+        changeQty(index, totalQtys[index] - qty);
+        lastChangeQtys[index] = -qty;
+        fireLevelChanged(price, totalQtys[index], orderCounts[index]);
+    }
+
+    /**
+     * 批量撤单时一次删掉 [fromPrice, toPrice] 之间的所有档位，每个被删掉的档位通知一次数量为 0
+     *
+     * @return 删掉的档位数
+     */
+    public int removeLevels(long fromPrice, long toPrice) {
+        if (fromPrice > toPrice || size == 0) return 0;
+        // 档位从差到优排列，价格区间对应数组里连续的一段 [from, to)；直接比较价格，开放的区间取反会溢出
+        final int from = firstNotWorse(isBuy ? fromPrice : toPrice);
+        final int to = firstBetter(isBuy ? toPrice : fromPrice);
+        if (from >= to) return 0;
+        fireLevelsRemoved(from, to);
+        final int moved = size - to;
+        if (moved > 0) {
+            System.arraycopy(prices, to, prices, from, moved);
+            System.arraycopy(totalQtys, to, totalQtys, from, moved);
+            System.arraycopy(orderCounts, to, orderCounts, from, moved);
+            System.arraycopy(lastChangeQtys, to, lastChangeQtys, from, moved);
+        }
+        size -= to - from;
+        if (!isPerLevel()) recomputeChecksum();
+        if (metrics != null) metrics.onLevelsRemoved(to - from);
+        return to - from;
+    }
+
+    /**
+     * 删掉所有档位
+     */
+    public int clear() {
+        final int removed = size;
+        fireLevelsRemoved(0, size);
+        size = 0;
+        checksum = 0;
+        if (metrics != null && removed > 0) metrics.onLevelsRemoved(removed);
+        return removed;
+    }
+
+    /**
+     * 恢复快照时直接还原一个深度档位
+     */
+    public void restoreLevel(long price, long totalQty, long orderCount) {
+        int index = indexOf(price);
+        if (index < 0) index = insert(-index - 1, price);
+        changeQty(index, totalQty);
+        orderCounts[index] = orderCount;
+        lastChangeQtys[index] = 0L;
+        ++changeCount;
+    }
+
+    /**
+     * 从最优价开始遍历所有档位，传给 action 的对象会被复用
+     */
+    public void forEach(Consumer<DepthLevel> action) {
+        final DepthLevel level = new DepthLevel(0L);
+        for (int i = size - 1; i >= 0; i--) {
+            action.accept(level.set(prices[i], totalQtys[i], orderCounts[i], lastChangeQtys[i]));
+        }
+    }
+
+    /**
+     * 从最优价开始复制前 n 档，n 不超过 maxLevel
+     *
+     * @return 实际复制的档数
+     */
+    public int copyTopLevels(long[] prices, long[] qtys, int n) {
+        return copyTopLevels(prices, qtys, null, n);
+    }
+
+    /**
+     * @param counts 每一档的订单数，不需要可以传 null
+     */
+    public int copyTopLevels(long[] prices, long[] qtys, long[] counts, int n) {
+        final int count = Math.min(Math.min(n, maxLevel), size);
+        for (int i = 0, j = size - 1; i < count; i++, j--) {
+            prices[i] = this.prices[j];
+            qtys[i] = this.totalQtys[j];
+            if (counts != null) counts[i] = this.orderCounts[j];
+        }
+        return count;
+    }
+
+    /**
+     * 最优的限价档位价格，市价单的 0 元档不算，没有限价档时返回 0
+     */
+    public long getBestPrice() {
+        final int index = bestLimitIndex();
+        return index < 0 ? 0L : prices[index];
+    }
+
+    /**
+     * 最优的限价档位数量，没有限价档时返回 0
+     */
+    public long getBestQty() {
+        final int index = bestLimitIndex();
+        return index < 0 ? 0L : totalQtys[index];
+    }
+
+    /**
+     * 对手方以 limitPrice 进单时，这一方从最优价开始能成交的数量，只看深度不碰订单
+     * <p>
+     * 限价进单可以和市价档成交；市价进单（limitPrice 为 0）可以和所有限价档成交，
+     * 和市价档成交要有市场价。累计到 targetQty 就停下，最多扫描到 limitPrice 为止。
+     */
+    public long getExecutableQty(long limitPrice, long marketPrice, long targetQty) {
+        long qty = 0L;
+        if (limitPrice > 0L || marketPrice > 0L) {
+            final int market = indexOf(0L);
+            if (market >= 0) qty = totalQtys[market];
+        }
+        final long limitRank = rank(limitPrice);
+        for (int i = size - 1; i >= 0 && qty < targetQty; i--) {
+            final long price = prices[i];
+            if (price == 0L) continue;
+            if (limitPrice > 0L && rank(price) < limitRank) break;
+            qty += totalQtys[i];
+        }
+        return qty;
+    }
+
+    private int bestLimitIndex() {
+        // 卖方的市价档排在最后，买方的市价档排在最前，只有买方全是市价单时才会退到 -1
+        final int index = size - 1;
+        return index >= 0 && prices[index] == 0L ? index - 1 : index;
+    }
+
+    /**
+     * 按 rank 从差到优的第 index 档的价格，集合竞价计算时按数组顺序遍历使用
+     */
+    long priceAt(int index) {
+        return prices[index];
     }
 
-    private void internalCloseOrder(long price, long qty) {
-        final DepthLevel depthLevel = this.levels.get(price);
-        if (depthLevel == null) return;
-        depthLevel.closeOrder(qty);
-        if (depthLevel.isEmpty()) this.levels.remove(price);
+    long qtyAt(int index) {
+        return totalQtys[index];
     }
 
-    public void onOrderPartialFilled(Long price, Long qty) {
-        final DepthLevel depthLevel = this.levels.get(price);
-        if (depthLevel == null) return;
-        depthLevel.decrease(qty);
+    /**
+     * 档位变化的累计次数，只增不减，两次读到的值相同说明中间深度没有变过
+     */
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * 前 maxLevel 档（和 copyTopLevels 给出的档位相同）的校验和，没有档位时为 0
+     */
+    public int getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * 一档的 CRC-32：按大端字节序依次写入价格和数量的 16 个字节，结果和 java.util.zip.CRC32 相同
+     */
+    public static int levelChecksum(long price, long qty) {
+        return ~crc8(crc8(0xFFFFFFFF, price), qty);
+    }
+
+    /**
+     * 一次处理 8 个字节，value 的最高字节最先进入
+     */
+    private static int crc8(int crc, long value) {
+        final int high = crc ^ Integer.reverseBytes((int) (value >>> 32));
+        final int low = (int) value;
+        return CRC_TABLE[7 * 256 + (high & 0xFF)] ^ CRC_TABLE[6 * 256 + ((high >>> 8) & 0xFF)]
+                ^ CRC_TABLE[5 * 256 + ((high >>> 16) & 0xFF)] ^ CRC_TABLE[4 * 256 + (high >>> 24)]
+                ^ CRC_TABLE[3 * 256 + (low >>> 24)] ^ CRC_TABLE[2 * 256 + ((low >>> 16) & 0xFF)]
+                ^ CRC_TABLE[256 + ((low >>> 8) & 0xFF)] ^ CRC_TABLE[low & 0xFF];
     }
 
     public Boolean isEmpty() {
-        return this.levels.isEmpty();
+        return size == 0;
     }
 
     public int size() {
-        return this.levels.size();
+        return size;
     }
 
     public boolean isBuy() {
@@ -69,13 +347,164 @@ public class Depth {
 
     /**
      * 获取某一层深度
+     * <p>
+     * 每一层返回的都是同一个对象，只代表调用时的状态，下次调用时会被刷新。
+     * 只能在撮合线程上调用，其它线程读盘口请用 OrderBook.setTopOfBookSlot 发布的 TopOfBookSlot
      */
-    public DepthLevel getDepthLevel(Integer level) {
-        int skip;
-        if (level < TOP_LEVEL) skip = TOP_LEVEL;
-        else if (level > maxLevel) skip = maxLevel;
-        else skip = level;
-        return this.levels.values().stream().skip((skip - 1)).findFirst().orElse(null);
+    public DepthLevel getDepthLevel(int level) {
+        if (level < TOP_LEVEL) level = TOP_LEVEL;
+        else if (level > maxLevel) level = maxLevel;
+        final int index = size - level;
+        if (index < 0) return null;
+        DepthLevel view = views[level - 1];
+        if (view == null) view = views[level - 1] = new DepthLevel(0L);
+        return view.set(prices[index], totalQtys[index], orderCounts[index], lastChangeQtys[index]);
+    }
+
+    /**
+     * 二分查找，找不到时返回 -(插入位置) - 1
+     */
+    private int indexOf(long price) {
+        // 大部分变化都发生在最优价上
+        if (size > 0 && prices[size - 1] == price) return size - 1;
+        final long key = rank(price);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midKey = rank(prices[mid]);
+            if (midKey < key) low = mid + 1;
+            else if (midKey > key) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * 第一个不比 price 差的位置
+     */
+    private int firstNotWorse(long price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (isBetter(price, prices[mid])) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * 第一个比 price 优的位置
+     */
+    private int firstBetter(long price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (isBetter(prices[mid], price)) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+
+    private boolean isBetter(long price, long than) {
+        return isBuy ? price > than : price < than;
+    }
+
+    /**
+     * 越优的价格 rank 越大，买方价格越高越优，卖方价格越低越优（市价单价格为 0，排在卖方最前面）
+     */
+    private long rank(long price) {
+        return isBuy ? price : -price;
+    }
+
+    /**
+     * 数组里的第 index 档是不是在前 maxLevel 档里
+     */
+    private boolean isTop(int index) {
+        return index >= size - maxLevel;
+    }
+
+    private void changeQty(int index, long totalQty) {
+        if (isTop(index)) checksum += levelChecksum(prices[index], totalQty) - levelChecksum(prices[index], totalQtys[index]);
+        totalQtys[index] = totalQty;
+    }
+
+    private boolean isPerLevel() {
+        return listener != null && changes == null;
+    }
+
+    /**
+     * 从好到坏依次通知 [from, to) 之间的档位被删掉，还没有真正移动数组。
+     * 不合并时每次通知都要带上删掉这一档之后的校验和，所以像 remove 一样逐档增量更新：
+     * 补进前 maxLevel 档的总是这一段下面的档位，数组里的位置不变。
+     */
+    private void fireLevelsRemoved(int from, int to) {
+        final boolean perLevel = isPerLevel();
+        for (int i = to - 1; i >= from; i--) {
+            final int remaining = size - (to - 1 - i); // 删掉这一档之前还剩的档数
+            if (perLevel && i >= remaining - maxLevel) {
+                checksum -= levelChecksum(prices[i], totalQtys[i]);
+                final int in = remaining - maxLevel - 1;
+                if (in >= 0) checksum += levelChecksum(prices[in], totalQtys[in]);
+            }
+            fireLevelChanged(prices[i], 0L, 0L);
+        }
+    }
+
+    private void recomputeChecksum() {
+        int checksum = 0;
+        for (int i = Math.max(0, size - maxLevel); i < size; i++) checksum += levelChecksum(prices[i], totalQtys[i]);
+        this.checksum = checksum;
+    }
+
+    private int insert(int index, long price) {
+        if (size == prices.length) {
+            final int capacity = size * 2;
+            prices = Arrays.copyOf(prices, capacity);
+            totalQtys = Arrays.copyOf(totalQtys, capacity);
+            orderCounts = Arrays.copyOf(orderCounts, capacity);
+            lastChangeQtys = Arrays.copyOf(lastChangeQtys, capacity);
+        }
+        final int moved = size - index;
+        if (moved > 0) {
+            System.arraycopy(prices, index, prices, index + 1, moved);
+            System.arraycopy(totalQtys, index, totalQtys, index + 1, moved);
+            System.arraycopy(orderCounts, index, orderCounts, index + 1, moved);
+            System.arraycopy(lastChangeQtys, index, lastChangeQtys, index + 1, moved);
+        }
+        prices[index] = price;
+        totalQtys[index] = 0L;
+        orderCounts[index] = 0L;
+        lastChangeQtys[index] = 0L;
+        ++size;
+        if (isTop(index)) {
+            // 新的一档先按数量 0 算进来，原来的第 maxLevel 档被挤出去
+            checksum += levelChecksum(price, 0L);
+            final int out = size - maxLevel - 1;
+            if (out >= 0) checksum -= levelChecksum(prices[out], totalQtys[out]);
+        }
+        if (metrics != null) metrics.onLevelCreated();
+        return index;
+    }
+
+    private void remove(int index) {
+        if (isTop(index)) {
+            // 删掉的一档按现在的数量减掉，原来的第 maxLevel + 1 档补进来
+            checksum -= levelChecksum(prices[index], totalQtys[index]);
+            final int in = size - maxLevel - 1;
+            if (in >= 0) checksum += levelChecksum(prices[in], totalQtys[in]);
+        }
+        final int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(prices, index + 1, prices, index, moved);
+            System.arraycopy(totalQtys, index + 1, totalQtys, index, moved);
+            System.arraycopy(orderCounts, index + 1, orderCounts, index, moved);
+            System.arraycopy(lastChangeQtys, index + 1, lastChangeQtys, index, moved);
+        }
+        --size;
+        if (metrics != null) metrics.onLevelsRemoved(1);
     }
 
 }
@@ -0,0 +1,102 @@
+package com.ruislan.korderbook;
+
+import java.util.Arrays;
+
+/**
+ * 一批合并过的深度变化，按第一次变化的先后排列，同一价格只有一条
+ * <p>
+ * 数组会被复用，只在 DepthListener.onLevelsChanged 回调期间有效。
+ * <p>
+ * 一批里只有几档时从后往前找同一价格；档位多了（批量撤单一次删掉很多档）改用价格索引，
+ * 每一档都是常数时间，整批是线性的。
+ */
+public final class DepthChanges {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int LINEAR_SCAN = 8; // 超过这么多档之后用索引
+
+    private final boolean isBuy;
+    private long[] prices;
+    private long[] totalQtys;
+    private long[] orderCounts;
+    private int size;
+    private int checksum;
+    private final SlotIndex index = new SlotIndex(INITIAL_CAPACITY); // 价格 -> 位置，size 超过 LINEAR_SCAN 之后才维护
+
+    DepthChanges(boolean isBuy) {
+        this.isBuy = isBuy;
+        this.prices = new long[INITIAL_CAPACITY];
+        this.totalQtys = new long[INITIAL_CAPACITY];
+        this.orderCounts = new long[INITIAL_CAPACITY];
+    }
+
+    void record(long price, long totalQty, long orderCount) {
+        final int found = indexOf(price);
+        if (found >= 0) {
+            totalQtys[found] = totalQty;
+            orderCounts[found] = orderCount;
+            return;
+        }
+        if (size == prices.length) {
+            prices = Arrays.copyOf(prices, size * 2);
+            totalQtys = Arrays.copyOf(totalQtys, size * 2);
+            orderCounts = Arrays.copyOf(orderCounts, size * 2);
+        }
+        prices[size] = price;
+        totalQtys[size] = totalQty;
+        orderCounts[size] = orderCount;
+        ++size;
+        if (size > LINEAR_SCAN) {
+            if (size == LINEAR_SCAN + 1) {
+                for (int i = 0; i < LINEAR_SCAN; i++) index.put(prices[i], i);
+            }
+            index.put(price, size - 1);
+        }
+    }
+
+    private int indexOf(long price) {
+        if (size > LINEAR_SCAN) return index.get(price);
+        // 连续成交通常落在同一个价格上，所以从后往前找
+        for (int i = size - 1; i >= 0; i--) {
+            if (prices[i] == price) return i;
+        }
+        return -1;
+    }
+
+    void clear() {
+        if (size > LINEAR_SCAN) {
+            for (int i = 0; i < size; i++) index.remove(prices[i]);
+        }
+        size = 0;
+    }
+
+    void setChecksum(int checksum) {
+        this.checksum = checksum;
+    }
+
+    public boolean isBuy() {
+        return isBuy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getPrice(int index) {
+        return prices[index];
+    }
+
+    public long getTotalQty(int index) {
+        return totalQtys[index];
+    }
+
+    public long getOrderCount(int index) {
+        return orderCounts[index];
+    }
+
+    /**
+     * 这一批变化之后这一方前 N 档的校验和，见 Depth.getChecksum
+     */
+    public int getChecksum() {
+        return checksum;
+    }
+}
@@ -3,7 +3,7 @@ package com.ruislan.korderbook;
 import java.util.Objects;
 
 public class DepthLevel implements Comparable<DepthLevel> {
-    private final long price;
+    private long price;
     private long orderCount;
     private long totalQty;
     private long lastChangeQty;
@@ -40,6 +40,17 @@ public class DepthLevel implements Comparable<DepthLevel> {
         lastChangeQty = -qty;
     }
 
+    /**
+     * Depth 读取某一档时复用同一个对象
+     */
+    DepthLevel set(long price, long totalQty, long orderCount, long lastChangeQty) {
+        this.price = price;
+        this.totalQty = totalQty;
+        this.orderCount = orderCount;
+        this.lastChangeQty = lastChangeQty;
+        return this;
+    }
+
     public long getPrice() {
         return price;
     }
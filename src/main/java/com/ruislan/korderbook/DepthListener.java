@@ -0,0 +1,32 @@
+package com.ruislan.korderbook;
+
+import java.util.EventListener;
+
+/**
+ * 深度变化的监听器
+ * <p>
+ * 不合并时每个档位每次变化都会调用 onLevelChanged；合并时一次下单或撤单里同一方的所有变化
+ * 会合并成一批（同一价格只保留最后的状态），在操作结束时通过 onLevelsChanged 一次性发出。
+ * 数量为 0 表示这个档位被删除了。
+ * <p>
+ * 两种方式都带着变化之后的校验和（见 Depth.getChecksum）：不合并时是每次变化之后的，合并时是整批之后的。
+ */
+public abstract class DepthListener implements EventListener {
+    public void onLevelChanged(boolean isBuy, long price, long totalQty, long orderCount) {}
+
+    /**
+     * 不合并时 Depth 调用这个方法，checksum 是这次变化之后的校验和，默认丢掉校验和转给上面的方法
+     */
+    public void onLevelChanged(boolean isBuy, long price, long totalQty, long orderCount, int checksum) {
+        onLevelChanged(isBuy, price, totalQty, orderCount);
+    }
+
+    /**
+     * 默认逐个转给 onLevelChanged，changes 只在回调期间有效
+     */
+    public void onLevelsChanged(DepthChanges changes) {
+        for (int i = 0; i < changes.size(); i++) {
+            onLevelChanged(changes.isBuy(), changes.getPrice(i), changes.getTotalQty(i), changes.getOrderCount(i));
+        }
+    }
+}
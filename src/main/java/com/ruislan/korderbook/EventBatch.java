@@ -0,0 +1,319 @@
+package com.ruislan.korderbook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * 一次下单或撤单过程中产生的订单事件
+ * <p>
+ * 按列存放（struct of arrays），订单簿在撮合循环里只往数组末尾追加，结束时通过
+ * OrderBookListener.onEvents 一次交出去。数组会被复用，只在回调期间有效。
+ * 没有用到的列是 0 或者 null：
+ * <pre>
+ * ACCEPTED / FULL_FILLED / CANCELED   order, price
+ * TRIGGERED / AMENDED                order, price
+ * REJECTED / CANCEL_REJECTED          order（按订单号撤单时为 null）, orderId, reason
+ * AMEND_REJECTED                      orderId, reason
+ * MATCHED                             order, counterOrder, price（成交价）, qty（成交数量）, counterOpenQty, counterUpdatedAt
+ * LAST_PRICE_CHANGED                  price
+ * </pre>
+ * 订单在同一批里还会继续变化，所以有订单的事件在追加时记下订单会变的所有字段：价格、originQty、openQty、
+ * updatedAt 和 triggered，MATCHED 的对手单也一样。getOrder 返回的是活的订单，读当时的状态请用这些列；
+ * dispatch 在每个单个回调期间把两个订单临时还原成当时的状态，回调结束再换回来，
+ * 所以单个回调看到的和不打开批量时一样。
+ */
+@NotThreadSafe
+public final class EventBatch {
+    public static final byte ACCEPTED = 1;
+    public static final byte REJECTED = 2;
+    public static final byte MATCHED = 3;
+    public static final byte LAST_PRICE_CHANGED = 4;
+    public static final byte FULL_FILLED = 5;
+    public static final byte CANCELED = 6;
+    public static final byte CANCEL_REJECTED = 7;
+    public static final byte TRIGGERED = 8;
+    public static final byte AMENDED = 9;
+    public static final byte AMEND_REJECTED = 10;
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private byte[] types;
+    private Order[] orders;
+    private Order[] counterOrders;
+    private long[] orderIds;
+    private long[] prices;
+    private long[] qtys;
+    // 事件发生时订单的状态
+    private long[] orderPrices;
+    private long[] originQtys;
+    private long[] openQtys;
+    private long[] updatedAts;
+    private boolean[] triggereds;
+    // 事件发生时对手单的状态
+    private long[] counterPrices;
+    private long[] counterOriginQtys;
+    private long[] counterOpenQtys;
+    private long[] counterUpdatedAts;
+    private boolean[] counterTriggereds;
+    private String[] reasons;
+    private int size;
+
+    public EventBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 初始容量，一次扫单超过容量时翻倍
+     */
+    public EventBatch(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.types = new byte[capacity];
+        this.orders = new Order[capacity];
+        this.counterOrders = new Order[capacity];
+        this.orderIds = new long[capacity];
+        this.prices = new long[capacity];
+        this.qtys = new long[capacity];
+        this.orderPrices = new long[capacity];
+        this.originQtys = new long[capacity];
+        this.openQtys = new long[capacity];
+        this.updatedAts = new long[capacity];
+        this.triggereds = new boolean[capacity];
+        this.counterPrices = new long[capacity];
+        this.counterOriginQtys = new long[capacity];
+        this.counterOpenQtys = new long[capacity];
+        this.counterUpdatedAts = new long[capacity];
+        this.counterTriggereds = new boolean[capacity];
+        this.reasons = new String[capacity];
+    }
+
+    public void addAccepted(Order order) {
+        append(ACCEPTED, order, null, order.getId(), order.getPrice(), 0L, null);
+    }
+
+    public void addRejected(Order order, String reason) {
+        append(REJECTED, order, null, order.getId(), order.getPrice(), 0L, reason);
+    }
+
+    public void addMatched(Order order, Order counterOrder, long price, long qty) {
+        append(MATCHED, order, counterOrder, order.getId(), price, qty, null);
+    }
+
+    public void addLastPriceChanged(long price) {
+        append(LAST_PRICE_CHANGED, null, null, 0L, price, 0L, null);
+    }
+
+    public void addFullFilled(Order order) {
+        append(FULL_FILLED, order, null, order.getId(), order.getPrice(), 0L, null);
+    }
+
+    public void addCanceled(Order order) {
+        append(CANCELED, order, null, order.getId(), order.getPrice(), 0L, null);
+    }
+
+    public void addCancelRejected(Order order, String reason) {
+        append(CANCEL_REJECTED, order, null, order.getId(), 0L, 0L, reason);
+    }
+
+    public void addCancelRejected(long orderId, String reason) {
+        append(CANCEL_REJECTED, null, null, orderId, 0L, 0L, reason);
+    }
+
+    public void addTriggered(Order order) {
+        append(TRIGGERED, order, null, order.getId(), order.getPrice(), 0L, null);
+    }
+
+    public void addAmended(Order order) {
+        append(AMENDED, order, null, order.getId(), order.getPrice(), order.getOpenQty(), null);
+    }
+
+    public void addAmendRejected(long orderId, String reason) {
+        append(AMEND_REJECTED, null, null, orderId, 0L, 0L, reason);
+    }
+
+    private void append(byte type, Order order, Order counterOrder, long orderId, long price, long qty, String reason) {
+        if (size == types.length) grow();
+        types[size] = type;
+        orders[size] = order;
+        counterOrders[size] = counterOrder;
+        orderIds[size] = orderId;
+        prices[size] = price;
+        qtys[size] = qty;
+        reasons[size] = reason;
+        if (order != null) {
+            orderPrices[size] = order.getPrice();
+            originQtys[size] = order.getOriginQty();
+            openQtys[size] = order.getOpenQty();
+            updatedAts[size] = order.getUpdatedAt();
+            triggereds[size] = order.triggered;
+        }
+        if (counterOrder != null) {
+            counterPrices[size] = counterOrder.getPrice();
+            counterOriginQtys[size] = counterOrder.getOriginQty();
+            counterOpenQtys[size] = counterOrder.getOpenQty();
+            counterUpdatedAts[size] = counterOrder.getUpdatedAt();
+            counterTriggereds[size] = counterOrder.triggered;
+        }
+        ++size;
+    }
+
+    private void grow() {
+        final int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        orders = Arrays.copyOf(orders, capacity);
+        counterOrders = Arrays.copyOf(counterOrders, capacity);
+        orderIds = Arrays.copyOf(orderIds, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        qtys = Arrays.copyOf(qtys, capacity);
+        orderPrices = Arrays.copyOf(orderPrices, capacity);
+        originQtys = Arrays.copyOf(originQtys, capacity);
+        openQtys = Arrays.copyOf(openQtys, capacity);
+        updatedAts = Arrays.copyOf(updatedAts, capacity);
+        triggereds = Arrays.copyOf(triggereds, capacity);
+        counterPrices = Arrays.copyOf(counterPrices, capacity);
+        counterOriginQtys = Arrays.copyOf(counterOriginQtys, capacity);
+        counterOpenQtys = Arrays.copyOf(counterOpenQtys, capacity);
+        counterUpdatedAts = Arrays.copyOf(counterUpdatedAts, capacity);
+        counterTriggereds = Arrays.copyOf(counterTriggereds, capacity);
+        reasons = Arrays.copyOf(reasons, capacity);
+    }
+
+    /**
+     * 按顺序把每个事件转给对应的单个回调，回调期间订单是事件发生时的状态
+     */
+    public void dispatch(OrderBookListener listener) {
+        for (int i = 0; i < size; i++) {
+            final Order order = orders[i];
+            if (order == null) {
+                dispatch(listener, i);
+                continue;
+            }
+            // 先记下现在的状态，回调之后换回来
+            final long price = order.getPrice();
+            final long originQty = order.getOriginQty();
+            final long openQty = order.getOpenQty();
+            final long updatedAt = order.getUpdatedAt();
+            final boolean triggered = order.triggered;
+            final Order counterOrder = counterOrders[i];
+            final long counterPrice = counterOrder != null ? counterOrder.getPrice() : 0L;
+            final long counterOriginQty = counterOrder != null ? counterOrder.getOriginQty() : 0L;
+            final long counterOpenQty = counterOrder != null ? counterOrder.getOpenQty() : 0L;
+            final long counterUpdatedAt = counterOrder != null ? counterOrder.getUpdatedAt() : 0L;
+            final boolean counterTriggered = counterOrder != null && counterOrder.triggered;
+            order.setState(orderPrices[i], originQtys[i], openQtys[i], updatedAts[i], triggereds[i]);
+            if (counterOrder != null) counterOrder.setState(counterPrices[i], counterOriginQtys[i], counterOpenQtys[i], counterUpdatedAts[i], counterTriggereds[i]);
+            try {
+                dispatch(listener, i);
+            } finally {
+                order.setState(price, originQty, openQty, updatedAt, triggered);
+                if (counterOrder != null) counterOrder.setState(counterPrice, counterOriginQty, counterOpenQty, counterUpdatedAt, counterTriggered);
+            }
+        }
+    }
+
+    private void dispatch(OrderBookListener listener, int i) {
+        switch (types[i]) {
+            case ACCEPTED -> listener.onAccepted(orders[i]);
+            case REJECTED -> listener.onRejected(orders[i], reasons[i]);
+            case MATCHED -> listener.onMatched(orders[i], counterOrders[i], prices[i], qtys[i]);
+            case LAST_PRICE_CHANGED -> listener.onLastPriceChanged(prices[i]);
+            case FULL_FILLED -> listener.onFullFilled(orders[i]);
+            case CANCELED -> listener.onCanceled(orders[i]);
+            case TRIGGERED -> listener.onTriggered(orders[i]);
+            case AMENDED -> listener.onAmended(orders[i]);
+            case AMEND_REJECTED -> listener.onAmendRejected(orderIds[i], reasons[i]);
+            case CANCEL_REJECTED -> {
+                if (orders[i] != null) listener.onCancelRejected(orders[i], reasons[i]);
+                else listener.onCancelRejected(orderIds[i], reasons[i]);
+            }
+            default -> throw new IllegalStateException("unknown event type: " + types[i]);
+        }
+    }
+
+    /**
+     * 清空这一批，同时放掉对订单的引用，免得池子里的订单被拖住
+     */
+    public void clear() {
+        Arrays.fill(orders, 0, size, null);
+        Arrays.fill(counterOrders, 0, size, null);
+        Arrays.fill(reasons, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    public Order getOrder(int index) {
+        return orders[index];
+    }
+
+    public Order getCounterOrder(int index) {
+        return counterOrders[index];
+    }
+
+    public long getOrderId(int index) {
+        return orderIds[index];
+    }
+
+    public long getPrice(int index) {
+        return prices[index];
+    }
+
+    public long getQty(int index) {
+        return qtys[index];
+    }
+
+    /**
+     * 事件发生时订单的总数量，改单会改变它
+     */
+    public long getOriginQty(int index) {
+        return originQtys[index];
+    }
+
+    /**
+     * 事件发生时订单的剩余数量
+     */
+    public long getOpenQty(int index) {
+        return openQtys[index];
+    }
+
+    /**
+     * MATCHED 事件成交之后对手单的剩余数量
+     */
+    public long getCounterOpenQty(int index) {
+        return counterOpenQtys[index];
+    }
+
+    /**
+     * MATCHED 事件成交之后对手单的更新时间
+     */
+    public long getCounterUpdatedAt(int index) {
+        return counterUpdatedAts[index];
+    }
+
+    /**
+     * 事件发生时订单的更新时间
+     */
+    public long getUpdatedAt(int index) {
+        return updatedAts[index];
+    }
+
+    /**
+     * 事件发生时止损单是否已经触发
+     */
+    public boolean isTriggered(int index) {
+        return triggereds[index];
+    }
+
+    public String getReason(int index) {
+        return reasons[index];
+    }
+}
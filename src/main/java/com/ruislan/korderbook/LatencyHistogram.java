@@ -0,0 +1,108 @@
+package com.ruislan.korderbook;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 固定内存的延迟直方图，单位纳秒
+ * <p>
+ * 小于 32 的值每个值一个桶；之后每个 2 的幂区间平均分成 32 个桶，相对误差不超过 1/32。
+ * 超过 2^40 纳秒（约 18 分钟）的值记在最后一个桶里。一共 1152 个桶，创建之后不再分配内存。
+ * <p>
+ * 只有一个线程写，写的时候用 setOpaque，不加锁也不用 CAS；其它线程可以随时读，
+ * 读到的是写线程某个时刻附近的状态，各个桶之间不保证是同一时刻。
+ */
+public final class LatencyHistogram {
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1L;
+    static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+
+    /**
+     * 记录一个值，只能由写线程调用
+     */
+    public void record(long nanos) {
+        final int index = indexOf(Math.max(0L, Math.min(nanos, MAX_VALUE)));
+        COUNTS.setOpaque(counts, index, counts[index] + 1L);
+    }
+
+    /**
+     * 把每个桶的计数复制出来，之后的统计都基于这一份
+     */
+    public long[] copyCounts() {
+        final long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) copy[i] = (long) COUNTS.getOpaque(counts, i);
+        return copy;
+    }
+
+    public long getCount() {
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++) count += (long) COUNTS.getOpaque(counts, i);
+        return count;
+    }
+
+    /**
+     * 记录过的最大值所在桶的上界，没有记录时返回 0
+     */
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if ((long) COUNTS.getOpaque(counts, i) > 0L) return highestValueAt(i);
+        }
+        return 0L;
+    }
+
+    /**
+     * 按桶的中间值估算的平均值，没有记录时返回 0
+     */
+    public double getMean() {
+        final long[] copy = copyCounts();
+        long count = 0L;
+        double total = 0.0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (copy[i] == 0L) continue;
+            count += copy[i];
+            total += copy[i] * ((lowestValueAt(i) + highestValueAt(i)) / 2.0);
+        }
+        return count == 0L ? 0.0 : total / count;
+    }
+
+    /**
+     * 百分位数，返回所在桶的上界，没有记录时返回 0
+     *
+     * @param percentile 0 到 100，比如 99.9
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long[] copy = copyCounts();
+        long count = 0L;
+        for (long c : copy) count += c;
+        if (count == 0L) return 0L;
+        final long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += copy[i];
+            if (seen >= rank) return highestValueAt(i);
+        }
+        return highestValueAt(BUCKETS - 1);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        // value >>> shift 落在 [32, 64)，每多一个 2 的幂往后挪 32 个桶
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    static long lowestValueAt(int index) {
+        if (index < SUB_BUCKETS) return index;
+        final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        return (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) return index;
+        return lowestValueAt(index) + (1L << ((index >>> SUB_BUCKET_BITS) - 1)) - 1L;
+    }
+}
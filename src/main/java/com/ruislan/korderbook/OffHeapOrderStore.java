@@ -0,0 +1,235 @@
+package com.ruislan.korderbook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 堆外的订单槽位
+ * <p>
+ * 每个挂单占一个固定大小的槽位，字段按固定偏移写在堆外内存里，槽位号就是订单的引用；
+ * 价格队列和用户链表的前后指针也是槽位号，整个订单簿的挂单对 GC 来说只是几个 DirectByteBuffer。
+ * 内存按块（每块 65536 个槽位）申请，释放的槽位串成空闲链表优先复用，块本身不还给系统。
+ * <p>
+ * 槽位布局（字节偏移）：
+ * <pre>
+ *   0 id          8 ownerId    16 price      24 originQty
+ *  32 openQty    40 stopPrice  48 createdAt  56 updatedAt
+ *  64 prev       68 next       72 ownerPrev  76 ownerNext   (int 槽位号)
+ *  80 flags      (bit0 买单，bit1-2 timeInForce，bit3 post-only，bit4 还没触发的止损单)
+ * </pre>
+ */
+@NotThreadSafe
+public final class OffHeapOrderStore {
+    public static final int NULL = -1;
+    public static final int SLOT_SIZE = 88;
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+    private static final TimeInForce[] TIME_IN_FORCES = TimeInForce.values();
+
+    private static final int ID = 0;
+    private static final int OWNER_ID = 8;
+    private static final int PRICE = 16;
+    private static final int ORIGIN_QTY = 24;
+    private static final int OPEN_QTY = 32;
+    private static final int STOP_PRICE = 40;
+    private static final int CREATED_AT = 48;
+    private static final int UPDATED_AT = 56;
+    private static final int PREV = 64;
+    private static final int NEXT = 68;
+    private static final int OWNER_PREV = 72;
+    private static final int OWNER_NEXT = 76;
+    private static final int FLAGS = 80;
+
+    private static final int BUY = 1;
+    private static final int TIF_SHIFT = 1;
+    private static final int POST_ONLY = 1 << 3;
+    private static final int PENDING_STOP = 1 << 4;
+
+    private ByteBuffer[] chunks = new ByteBuffer[8];
+    private int chunkCount;
+    private int highWater; // 从没用过的第一个槽位
+    private int freeHead = NULL; // 空闲链表，通过 next 串起来
+    private int size;
+
+    /**
+     * 把订单的字段复制到一个新槽位里，前后指针都是 NULL
+     *
+     * @return 槽位号
+     */
+    public int add(Order order) {
+        final int slot = allocate();
+        final ByteBuffer chunk = chunk(slot);
+        final int base = offset(slot);
+        chunk.putLong(base + ID, order.getId());
+        chunk.putLong(base + OWNER_ID, order.getOwnerId());
+        chunk.putLong(base + PRICE, order.getPrice());
+        chunk.putLong(base + ORIGIN_QTY, order.getOriginQty());
+        chunk.putLong(base + OPEN_QTY, order.getOpenQty());
+        chunk.putLong(base + STOP_PRICE, order.getStopPrice());
+        chunk.putLong(base + CREATED_AT, order.getCreatedAt());
+        chunk.putLong(base + UPDATED_AT, order.getUpdatedAt());
+        chunk.putInt(base + PREV, NULL);
+        chunk.putInt(base + NEXT, NULL);
+        chunk.putInt(base + OWNER_PREV, NULL);
+        chunk.putInt(base + OWNER_NEXT, NULL);
+        int flags = order.getTimeInForce().ordinal() << TIF_SHIFT;
+        if (order.isBuy()) flags |= BUY;
+        if (order.isPostOnly()) flags |= POST_ONLY;
+        if (order.isPendingStop()) flags |= PENDING_STOP;
+        chunk.put(base + FLAGS, (byte) flags);
+        ++size;
+        return slot;
+    }
+
+    public void free(int slot) {
+        setNext(slot, freeHead);
+        freeHead = slot;
+        --size;
+    }
+
+    /**
+     * 把槽位里的字段填进 view 并返回它，view 只代表调用时的状态
+     */
+    public Order load(int slot, Order view) {
+        final ByteBuffer chunk = chunk(slot);
+        final int base = offset(slot);
+        final int flags = chunk.get(base + FLAGS);
+        final long stopPrice = chunk.getLong(base + STOP_PRICE);
+        view.load(chunk.getLong(base + ID), chunk.getLong(base + OWNER_ID), (flags & BUY) != 0,
+                chunk.getLong(base + PRICE), chunk.getLong(base + ORIGIN_QTY), chunk.getLong(base + OPEN_QTY), stopPrice,
+                TIME_IN_FORCES[(flags >>> TIF_SHIFT) & 3], (flags & POST_ONLY) != 0,
+                chunk.getLong(base + CREATED_AT), chunk.getLong(base + UPDATED_AT));
+        view.triggered = stopPrice > 0L && (flags & PENDING_STOP) == 0;
+        return view;
+    }
+
+    /**
+     * 成交，和 Order.fill 一样
+     */
+    public void fill(int slot, long qty, long now) {
+        final ByteBuffer chunk = chunk(slot);
+        final int base = offset(slot);
+        chunk.putLong(base + OPEN_QTY, chunk.getLong(base + OPEN_QTY) - qty);
+        chunk.putLong(base + UPDATED_AT, now);
+    }
+
+    /**
+     * 改单，和 Order.amend 一样
+     */
+    public void amend(int slot, long price, long openQty, long now) {
+        final ByteBuffer chunk = chunk(slot);
+        final int base = offset(slot);
+        chunk.putLong(base + ORIGIN_QTY, chunk.getLong(base + ORIGIN_QTY) + openQty - chunk.getLong(base + OPEN_QTY));
+        chunk.putLong(base + OPEN_QTY, openQty);
+        chunk.putLong(base + PRICE, price);
+        chunk.putLong(base + UPDATED_AT, now);
+    }
+
+    public long getId(int slot) {
+        return chunk(slot).getLong(offset(slot) + ID);
+    }
+
+    public long getOwnerId(int slot) {
+        return chunk(slot).getLong(offset(slot) + OWNER_ID);
+    }
+
+    public boolean isBuy(int slot) {
+        return (chunk(slot).get(offset(slot) + FLAGS) & BUY) != 0;
+    }
+
+    public boolean isPostOnly(int slot) {
+        return (chunk(slot).get(offset(slot) + FLAGS) & POST_ONLY) != 0;
+    }
+
+    public boolean isPendingStop(int slot) {
+        return (chunk(slot).get(offset(slot) + FLAGS) & PENDING_STOP) != 0;
+    }
+
+    public long getPrice(int slot) {
+        return chunk(slot).getLong(offset(slot) + PRICE);
+    }
+
+    public long getOpenQty(int slot) {
+        return chunk(slot).getLong(offset(slot) + OPEN_QTY);
+    }
+
+    public int getPrev(int slot) {
+        return chunk(slot).getInt(offset(slot) + PREV);
+    }
+
+    public void setPrev(int slot, int prev) {
+        chunk(slot).putInt(offset(slot) + PREV, prev);
+    }
+
+    public int getNext(int slot) {
+        return chunk(slot).getInt(offset(slot) + NEXT);
+    }
+
+    public void setNext(int slot, int next) {
+        chunk(slot).putInt(offset(slot) + NEXT, next);
+    }
+
+    public int getOwnerPrev(int slot) {
+        return chunk(slot).getInt(offset(slot) + OWNER_PREV);
+    }
+
+    public void setOwnerPrev(int slot, int prev) {
+        chunk(slot).putInt(offset(slot) + OWNER_PREV, prev);
+    }
+
+    public int getOwnerNext(int slot) {
+        return chunk(slot).getInt(offset(slot) + OWNER_NEXT);
+    }
+
+    public void setOwnerNext(int slot, int next) {
+        chunk(slot).putInt(offset(slot) + OWNER_NEXT, next);
+    }
+
+    /**
+     * 正在使用的槽位数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 已经申请的堆外内存字节数
+     */
+    public long getAllocatedBytes() {
+        return (long) chunkCount * CHUNK_SLOTS * SLOT_SIZE;
+    }
+
+    /**
+     * 丢掉所有槽位，已经申请的内存留着复用
+     */
+    public void clear() {
+        highWater = 0;
+        freeHead = NULL;
+        size = 0;
+    }
+
+    private int allocate() {
+        final int slot = freeHead;
+        if (slot != NULL) {
+            freeHead = getNext(slot);
+            return slot;
+        }
+        if (highWater == chunkCount << CHUNK_SHIFT) {
+            if (chunkCount == Integer.MAX_VALUE >>> CHUNK_SHIFT) throw new IllegalStateException("order store is full");
+            if (chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            chunks[chunkCount++] = ByteBuffer.allocateDirect(CHUNK_SLOTS * SLOT_SIZE).order(ByteOrder.nativeOrder());
+        }
+        return highWater++;
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> CHUNK_SHIFT];
+    }
+
+    private static int offset(int slot) {
+        return (slot & CHUNK_MASK) * SLOT_SIZE;
+    }
+}
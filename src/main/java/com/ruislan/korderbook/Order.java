@@ -1,32 +1,147 @@
 package com.ruislan.korderbook;
 
-import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class Order {
-    private final boolean isBuy;
-    private final long price;
-    private final long originQty;
+public final class Order {
+    private static final AtomicLong ID_GENERATOR = new AtomicLong(0L);
+
+    // 除了 openQty 和 updatedAt 之外的字段只有 OrderPool 回收订单时才会改
+    private long id;
+    private long ownerId;
+    private boolean isBuy;
+    private long price;
+    private long originQty;
     private long openQty;
-    private final long createdAt;
+    private long createdAt;
     private long updatedAt;
+    private TimeInForce timeInForce;
+    private boolean postOnly;
+    private long stopPrice;
+    boolean triggered; // 止损单是否已经触发，由 StopIndex 设置
+
+    // 侵入式双向链表的节点，由所在的 OrderQueue 维护
+    OrderQueue queue;
+    Order prev;
+    Order next;
+
+    // 同一个用户的挂单串成的双向链表，由 OwnerIndex 维护
+    Order ownerPrev;
+    Order ownerNext;
 
     /**
+     * 自动分配订单号
+     *
      * @param isBuy  是否是买单
      * @param price 请使用最小单位，整数形式，如8.88->888， 8.888 -> 8888
      * @param qty   请使用最小单位，以整数形式，同上
      */
     public Order(boolean isBuy, long price, long qty) {
+        this(ID_GENERATOR.incrementAndGet(), isBuy, price, qty);
+    }
+
+    /**
+     * @param id 订单号，在同一个订单簿中必须唯一
+     */
+    public Order(long id, boolean isBuy, long price, long qty) {
+        this(id, isBuy, price, qty, OrderClock.EPOCH_SECONDS.now());
+    }
+
+    /**
+     * @param createdAt 创建时间，单位由使用的 OrderClock 决定
+     */
+    public Order(long id, boolean isBuy, long price, long qty, long createdAt) {
+        this(id, 0L, isBuy, price, qty, createdAt);
+    }
+
+    /**
+     * @param ownerId 下单的用户或账户，0 表示不区分用户，可以按用户批量撤单
+     */
+    public Order(long id, long ownerId, boolean isBuy, long price, long qty, long createdAt) {
+        this(id, ownerId, isBuy, price, qty, TimeInForce.GTC, false, createdAt);
+    }
+
+    /**
+     * @param timeInForce 有效期，IOC 和 FOK 没有成交的部分不会挂在订单簿上
+     * @param postOnly    只做挂单方，下单时会和对手方成交的话直接拒绝
+     */
+    public Order(long id, long ownerId, boolean isBuy, long price, long qty, TimeInForce timeInForce, boolean postOnly, long createdAt) {
+        this(id, ownerId, isBuy, price, qty, 0L, timeInForce, postOnly, createdAt);
+    }
+
+    /**
+     * @param stopPrice 止损价，大于 0 时是止损单：买单在最新价涨到止损价及以上、卖单在跌到止损价及以下时才进入撮合，
+     *                  price 为 0 是止损市价单，大于 0 是止损限价单
+     */
+    public Order(long id, long ownerId, boolean isBuy, long price, long qty, long stopPrice, TimeInForce timeInForce, boolean postOnly, long createdAt) {
+        reset(id, ownerId, isBuy, price, qty, stopPrice, timeInForce, postOnly, createdAt);
+    }
+
+    /**
+     * 恢复快照时使用，还原部分成交之后的订单或者还没触发的止损单
+     */
+    public Order(long id, long ownerId, boolean isBuy, long price, long originQty, long openQty, long stopPrice,
+                 TimeInForce timeInForce, boolean postOnly, long createdAt, long updatedAt) {
+        load(id, ownerId, isBuy, price, originQty, openQty, stopPrice, timeInForce, postOnly, createdAt, updatedAt);
+    }
+
+    /**
+     * 一次填好所有字段，恢复快照和 OffHeapOrderStore 的视图对象使用
+     */
+    void load(long id, long ownerId, boolean isBuy, long price, long originQty, long openQty, long stopPrice,
+              TimeInForce timeInForce, boolean postOnly, long createdAt, long updatedAt) {
+        reset(id, ownerId, isBuy, price, originQty, stopPrice, timeInForce, postOnly, createdAt);
+        this.openQty = openQty;
+        this.updatedAt = updatedAt;
+    }
+
+    void reset(long id, long ownerId, boolean isBuy, long price, long qty, long stopPrice, TimeInForce timeInForce, boolean postOnly, long createdAt) {
+        this.id = id;
+        this.ownerId = ownerId;
         this.isBuy = isBuy;
         this.price = price;
         this.originQty = qty;
         this.openQty = qty;
-        createdAt = Instant.now().getEpochSecond();
-        updatedAt = Instant.now().getEpochSecond();
+        this.createdAt = createdAt;
+        this.updatedAt = createdAt;
+        this.timeInForce = timeInForce;
+        this.postOnly = postOnly;
+        this.stopPrice = stopPrice;
+        this.triggered = false;
     }
 
     public void fill(long qty) {
+        fill(qty, OrderClock.EPOCH_SECONDS.now());
+    }
+
+    /**
+     * @param now 成交时间，由订单簿的时钟给出
+     */
+    public void fill(long qty, long now) {
         openQty -= qty;
-        updatedAt = Instant.now().getEpochSecond();
+        updatedAt = now;
+    }
+
+    /**
+     * 改单，由订单簿调用：已经成交的数量不变，originQty 跟着 openQty 一起增减
+     *
+     * @param now 改单时间，由订单簿的时钟给出
+     */
+    public void amend(long price, long openQty, long now) {
+        this.originQty += openQty - this.openQty;
+        this.openQty = openQty;
+        this.price = price;
+        this.updatedAt = now;
+    }
+
+    /**
+     * EventBatch 回调单个事件时临时把订单换成事件发生时的状态，回调结束再换回来
+     */
+    void setState(long price, long originQty, long openQty, long updatedAt, boolean triggered) {
+        this.price = price;
+        this.originQty = originQty;
+        this.openQty = openQty;
+        this.updatedAt = updatedAt;
+        this.triggered = triggered;
     }
 
     /**
@@ -36,10 +151,39 @@ public class Order {
         return price > 0;
     }
 
+    /**
+     * 带止损价的订单，触发之后仍然是止损单
+     */
+    public boolean isStop() {
+        return stopPrice > 0;
+    }
+
+    /**
+     * 止损单已经触发，进入了撮合
+     */
+    public boolean isTriggered() {
+        return triggered;
+    }
+
+    /**
+     * 还在等待触发的止损单
+     */
+    public boolean isPendingStop() {
+        return stopPrice > 0 && !triggered;
+    }
+
     public boolean isFullFilled() {
         return openQty == 0L;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+
     public boolean isBuy() {
         return isBuy;
     }
@@ -56,6 +200,18 @@ public class Order {
         return openQty;
     }
 
+    public long getStopPrice() {
+        return stopPrice;
+    }
+
+    public TimeInForce getTimeInForce() {
+        return timeInForce;
+    }
+
+    public boolean isPostOnly() {
+        return postOnly;
+    }
+
     public long getCreatedAt() {
         return createdAt;
     }
@@ -1,5 +1,7 @@
 package com.ruislan.korderbook;
 
+import com.ruislan.korderbook.feed.TopOfBookSlot;
+
 public interface OrderBook {
     void open();
 
@@ -7,15 +9,77 @@ public interface OrderBook {
 
     String getSymbol(); //账簿标记,它是识别账簿的唯一标识
 
-    void place(Order order); // 下单,下单之后会立刻进行匹配,如果没有完全把订单填满则放入order book，等待后面的市价或者限价单进行匹配
+    void place(Order order); // 下单,下单之后会立刻进行匹配,如果没有完全把订单填满则放入order book，等待后面的市价或者限价单进行匹配；止损单先等待最新价触发
 
     void cancel(Order order); //取消订单
 
-    long getSpread(); // 最低卖价减去最高买价
+    void cancel(long orderId); //按订单号取消订单
+
+    void amend(long orderId, long price, long qty); //改单，qty 是新的未成交数量：同价减量原地修改、保持排队位置；改价或者加量排到新价位的队尾，能成交的先成交
+
+    default void placeAll(Order[] orders) { //批量下单，按数组顺序逐个下单，实现可以把整批的深度和事件合并在最后发出
+        for (Order order : orders) place(order);
+    }
+
+    default void cancelAll(long[] orderIds) { //按订单号批量取消订单
+        for (long orderId : orderIds) cancel(orderId);
+    }
+
+    int cancelByOwner(long ownerId); //撤掉某个用户的全部挂单（比如断线时），返回撤掉的订单数
+
+    int cancelBySide(boolean isBuy); //撤掉一方的全部挂单，包括市价单和还没触发的止损单
+
+    int cancelByPriceRange(boolean isBuy, long fromPrice, long toPrice); //撤掉一方价格在 [fromPrice, toPrice] 之间的挂单，市价单的价格是 0，不包括还没触发的止损单
+
+    default int cancelAll() { //撤掉全部挂单
+        return cancelBySide(true) + cancelBySide(false);
+    }
+
+    default void beginAuction() { //进入集合竞价阶段，下单只挂单不撮合，不支持集合竞价的实现抛出 UnsupportedOperationException
+        throw new UnsupportedOperationException("call auction is not supported");
+    }
+
+    default boolean isInAuction() { //是不是在集合竞价阶段
+        return false;
+    }
+
+    default boolean computeAuction(Auction result) { //计算集合竞价的指示价，不成交，能成交时返回 true
+        throw new UnsupportedOperationException("call auction is not supported");
+    }
+
+    default long uncross() { //结束集合竞价，在单一价格上一次成交所有交叉的订单，返回成交的数量
+        throw new UnsupportedOperationException("call auction is not supported");
+    }
+
+    long getSpread(); // 最低卖价减去最高买价，只看限价档位
+
+    default long getBestBid() { //最高买价，没有限价买单时为 0
+        return getBidsDepth().getBestPrice();
+    }
+
+    default long getBestBidQty() { //最高买价上的数量
+        return getBidsDepth().getBestQty();
+    }
+
+    default long getBestAsk() { //最低卖价，没有限价卖单时为 0
+        return getAsksDepth().getBestPrice();
+    }
+
+    default long getBestAskQty() { //最低卖价上的数量
+        return getAsksDepth().getBestQty();
+    }
 
     long getMarketPrice(); //市场价，通常是最后一次成交价格
 
     Depth getBidsDepth(); //买方深度
 
     Depth getAsksDepth(); //卖方深度
+
+    default long getDepthChecksum() { //两方前 N 档的校验和，高 32 位是买方、低 32 位是卖方，见 Depth.getChecksum
+        return ((long) getBidsDepth().getChecksum() << 32) | (getAsksDepth().getChecksum() & 0xFFFFFFFFL);
+    }
+
+    void setMetrics(OrderBookMetrics metrics); //打开内置的延迟和计数统计，传 null 关闭；统计只由撮合线程写，其它线程可以随时读
+
+    void setTopOfBookSlot(TopOfBookSlot slot); //每次下单或撤单结束、深度有变化时把前 N 档和市场价发布到 slot，其它线程通过 slot.read 无锁读到一致的盘口；在撮合线程上调用，传 null 关闭
 }
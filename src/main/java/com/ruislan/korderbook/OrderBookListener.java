@@ -5,9 +5,21 @@ import java.util.EventListener;
 public abstract class OrderBookListener implements EventListener {
     public void onCanceled(Order order) {}
     public void  onCancelRejected(Order order, String reason) {}
+    public void onCancelRejected(long orderId, String reason) {}
     public void onLastPriceChanged(long price) {}
+    public void onBestBidAskChanged(long bidPrice, long bidQty, long askPrice, long askQty) {}
     public void onMatched(Order o1, Order o2, long price, long qty) {}
     public void onAccepted(Order order) {}
     public void onFullFilled(Order order) {}
     public void onRejected(Order order, String reason) {}
+    public void onTriggered(Order order) {} // 止损单被最新价触发，接下来进入撮合
+    public void onAmended(Order order) {} // 改单成功，订单上已经是新的价格和数量
+    public void onAmendRejected(long orderId, String reason) {}
+
+    /**
+     * 批量模式下一次下单或撤单的全部订单事件，默认逐个转给上面的回调
+     */
+    public void onEvents(EventBatch events) {
+        events.dispatch(this);
+    }
 }
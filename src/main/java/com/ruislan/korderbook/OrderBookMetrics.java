@@ -0,0 +1,118 @@
+package com.ruislan.korderbook;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 订单簿内置的统计：下单、撤单、撮合的延迟直方图和几个计数器
+ * <p>
+ * 只由撮合线程写，和 {@link LatencyHistogram} 一样用 setOpaque 发布，不加锁也不用 CAS，
+ * 其它线程随时读取，不会阻塞撮合线程。订单簿没有设置统计时只多一次 null 判断，也不读时钟。
+ * <p>
+ * 延迟用 System.nanoTime 计时：下单和撤单是一次调用的总耗时，包括回调监听器；
+ * 撮合是一笔进单（包括改单重新撮合和触发的止损单）从开始吃单到挂单或撤掉剩余部分的耗时。
+ * 扫单深度是一笔进单成交过的价位数。
+ */
+public final class OrderBookMetrics {
+    private static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int ACCEPTED = 0;
+    private static final int MATCHES = 1;
+    private static final int LEVELS_CREATED = 2;
+    private static final int LEVELS_REMOVED = 3;
+    private static final int MAX_SWEEP_DEPTH = 4;
+
+    private final long[] counters = new long[5];
+    private final LatencyHistogram placeLatency = new LatencyHistogram();
+    private final LatencyHistogram cancelLatency = new LatencyHistogram();
+    private final LatencyHistogram matchLatency = new LatencyHistogram();
+    // 正在撮合的这一笔进单，只有撮合线程用
+    private long fills;
+    private long sweepDepth;
+    private long lastFillPrice = -1L;
+
+    public void onPlaced(long nanos) {
+        placeLatency.record(nanos);
+    }
+
+    public void onCanceled(long nanos) {
+        cancelLatency.record(nanos);
+    }
+
+    public void onAccepted() {
+        add(ACCEPTED, 1L);
+    }
+
+    /**
+     * 进单和价格为 price 的挂单成交了一次
+     */
+    public void onFill(long price) {
+        ++fills;
+        if (price != lastFillPrice) {
+            ++sweepDepth;
+            lastFillPrice = price;
+        }
+    }
+
+    /**
+     * 一笔进单撮合结束
+     */
+    public void onMatchFinished(long nanos) {
+        matchLatency.record(nanos);
+        if (fills > 0L) add(MATCHES, fills);
+        if (sweepDepth > counters[MAX_SWEEP_DEPTH]) COUNTERS.setOpaque(counters, MAX_SWEEP_DEPTH, sweepDepth);
+        fills = 0L;
+        sweepDepth = 0L;
+        lastFillPrice = -1L;
+    }
+
+    public void onLevelCreated() {
+        add(LEVELS_CREATED, 1L);
+    }
+
+    public void onLevelsRemoved(int count) {
+        add(LEVELS_REMOVED, count);
+    }
+
+    private void add(int counter, long delta) {
+        COUNTERS.setOpaque(counters, counter, counters[counter] + delta);
+    }
+
+    private long get(int counter) {
+        return (long) COUNTERS.getOpaque(counters, counter);
+    }
+
+    public long getOrdersAccepted() {
+        return get(ACCEPTED);
+    }
+
+    /**
+     * 成交笔数，一笔进单和一个挂单成交一次算一笔
+     */
+    public long getMatches() {
+        return get(MATCHES);
+    }
+
+    public long getLevelsCreated() {
+        return get(LEVELS_CREATED);
+    }
+
+    public long getLevelsRemoved() {
+        return get(LEVELS_REMOVED);
+    }
+
+    public long getMaxSweepDepth() {
+        return get(MAX_SWEEP_DEPTH);
+    }
+
+    public LatencyHistogram getPlaceLatency() {
+        return placeLatency;
+    }
+
+    public LatencyHistogram getCancelLatency() {
+        return cancelLatency;
+    }
+
+    public LatencyHistogram getMatchLatency() {
+        return matchLatency;
+    }
+}
@@ -0,0 +1,26 @@
+package com.ruislan.korderbook;
+
+/**
+ * 订单簿使用的时钟，用来记录订单的创建和更新时间
+ * <p>
+ * 实现不能在每次调用时分配对象，它处在下单和成交的热路径上。
+ */
+@FunctionalInterface
+public interface OrderClock {
+    /**
+     * 秒级的 Unix 时间，和以前的 Instant.now().getEpochSecond() 一致
+     */
+    OrderClock EPOCH_SECONDS = () -> System.currentTimeMillis() / 1000L;
+
+    /**
+     * 毫秒级的 Unix 时间
+     */
+    OrderClock EPOCH_MILLIS = System::currentTimeMillis;
+
+    /**
+     * 单调递增的纳秒时间，只能用来比较先后和计算间隔，不是日历时间
+     */
+    OrderClock NANO_TIME = System::nanoTime;
+
+    long now();
+}
@@ -0,0 +1,136 @@
+package com.ruislan.korderbook;
+
+import java.util.Arrays;
+
+/**
+ * 订单号到订单的索引
+ * <p>
+ * 开放寻址（线性探测）的哈希表，键是原始类型的 long，避免 Long 装箱和链表节点分配；
+ * 删除时回移后续元素，不留墓碑。
+ * 也可以用 put(key, order) 当作任意 long 到订单的映射，比如 OwnerIndex 里用户到订单链表的表头。
+ */
+public final class OrderIndex {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Order[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+
+    public OrderIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public OrderIndex(int expectedSize) {
+        final int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public Order get(long id) {
+        int i = slot(id);
+        Order value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == id) return value;
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean contains(long id) {
+        return get(id) != null;
+    }
+
+    /**
+     * @return 订单号原来对应的订单，没有则为 null
+     */
+    public Order put(Order order) {
+        return put(order.getId(), order);
+    }
+
+    public Order put(long id, Order order) {
+        int i = slot(id);
+        Order value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == id) {
+                values[i] = order;
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = id;
+        values[i] = order;
+        if (++size > threshold) rehash(values.length << 1);
+        return null;
+    }
+
+    public Order remove(long id) {
+        int i = slot(id);
+        Order value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == id) {
+                shiftBack(i);
+                --size;
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void shiftBack(int hole) {
+        int i = (hole + 1) & mask;
+        Order value;
+        while ((value = values[i]) != null) {
+            final int home = slot(keys[i]);
+            // 如果 i 的理想位置不在 (hole, i] 之间，就把它挪到空洞上
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = value;
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        values[hole] = null;
+    }
+
+    private int slot(long id) {
+        final long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Order[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = keys;
+        final Order[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            final Order value = oldValues[i];
+            if (value == null) continue;
+            int j = slot(oldKeys[i]);
+            while (values[j] != null) j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = value;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.ruislan.korderbook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 订单对象池
+ * <p>
+ * 订单簿在订单完全成交或者撤单、并且相关的回调都结束之后把订单还回池子，
+ * 所以监听器不能在回调之外继续持有订单对象。池子空了会新建订单，满了会丢弃还回来的订单。
+ * 它和订单簿一样只能在撮合线程上使用。
+ */
+@NotThreadSafe
+public final class OrderPool {
+    private final OrderClock clock;
+    private final Order[] free;
+    private int size;
+    private long misses;
+
+    public OrderPool(int capacity) {
+        this(capacity, OrderClock.EPOCH_SECONDS);
+    }
+
+    public OrderPool(int capacity, OrderClock clock) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.clock = clock;
+        this.free = new Order[capacity];
+        for (int i = 0; i < capacity; i++) free[i] = new Order(0L, false, 0L, 0L, 0L);
+        this.size = capacity;
+    }
+
+    public Order acquire(long id, boolean isBuy, long price, long qty) {
+        return acquire(id, 0L, isBuy, price, qty);
+    }
+
+    public Order acquire(long id, long ownerId, boolean isBuy, long price, long qty) {
+        return acquire(id, ownerId, isBuy, price, qty, TimeInForce.GTC, false);
+    }
+
+    public Order acquire(long id, long ownerId, boolean isBuy, long price, long qty, TimeInForce timeInForce, boolean postOnly) {
+        return acquire(id, ownerId, isBuy, price, qty, 0L, timeInForce, postOnly);
+    }
+
+    public Order acquire(long id, long ownerId, boolean isBuy, long price, long qty, long stopPrice, TimeInForce timeInForce, boolean postOnly) {
+        final long now = clock.now();
+        if (size == 0) {
+            ++misses;
+            return new Order(id, ownerId, isBuy, price, qty, stopPrice, timeInForce, postOnly, now);
+        }
+        final Order order = free[--size];
+        free[size] = null;
+        order.reset(id, ownerId, isBuy, price, qty, stopPrice, timeInForce, postOnly, now);
+        return order;
+    }
+
+    public void release(Order order) {
+        if (order.queue != null) throw new IllegalStateException("order is still queued");
+        if (size < free.length) free[size++] = order;
+    }
+
+    /**
+     * 池子里空闲的订单数
+     */
+    public int available() {
+        return size;
+    }
+
+    /**
+     * 池子空了而不得不新建订单的次数，稳定运行时应该不再增长
+     */
+    public long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,77 @@
+package com.ruislan.korderbook;
+
+import java.util.function.Consumer;
+
+/**
+ * 同一价格档位上的订单队列，先进先出
+ * <p>
+ * 订单自身就是链表节点（侵入式双向链表），入队、出队和撤单都是 O(1)，也不会为节点分配内存。
+ * 一个订单同一时间只能在一个队列里。
+ */
+public final class OrderQueue {
+    private Order head;
+    private Order tail;
+    private int size;
+
+    public void add(Order order) {
+        if (order.queue != null) throw new IllegalStateException("order is already queued");
+        order.queue = this;
+        order.prev = tail;
+        order.next = null;
+        if (tail == null) head = order;
+        else tail.next = order;
+        tail = order;
+        ++size;
+    }
+
+    public Order peek() {
+        return head;
+    }
+
+    public Order poll() {
+        final Order order = head;
+        if (order != null) unlink(order);
+        return order;
+    }
+
+    /**
+     * @return 订单不在这个队列里时返回 false
+     */
+    public boolean remove(Order order) {
+        if (order.queue != this) return false;
+        unlink(order);
+        return true;
+    }
+
+    public boolean contains(Order order) {
+        return order.queue == this;
+    }
+
+    /**
+     * 从队头到队尾遍历，遍历时不能修改队列
+     */
+    public void forEach(Consumer<Order> action) {
+        for (Order order = head; order != null; order = order.next) action.accept(order);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void unlink(Order order) {
+        final Order prev = order.prev;
+        final Order next = order.next;
+        if (prev == null) head = next;
+        else prev.next = next;
+        if (next == null) tail = prev;
+        else next.prev = prev;
+        order.queue = null;
+        order.prev = null;
+        order.next = null;
+        --size;
+    }
+}
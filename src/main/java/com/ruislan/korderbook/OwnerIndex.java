@@ -0,0 +1,55 @@
+package com.ruislan.korderbook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 用户到挂单的索引
+ * <p>
+ * 同一个用户的挂单通过订单里的 ownerPrev/ownerNext 串成一个侵入式双向链表，这里只记录每个用户的表头，
+ * 加入和删除都是 O(1)，不分配节点。ownerId 为 0 的订单不进索引。
+ * 按用户撤单时反复取 first 撤掉，直到返回 null。
+ */
+@NotThreadSafe
+public final class OwnerIndex {
+    private final OrderIndex heads = new OrderIndex();
+
+    public void add(Order order) {
+        final long ownerId = order.getOwnerId();
+        if (ownerId == 0L) return;
+        final Order head = heads.put(ownerId, order);
+        order.ownerPrev = null;
+        order.ownerNext = head;
+        if (head != null) head.ownerPrev = order;
+    }
+
+    public void remove(Order order) {
+        final long ownerId = order.getOwnerId();
+        if (ownerId == 0L) return;
+        final Order prev = order.ownerPrev;
+        final Order next = order.ownerNext;
+        if (next != null) next.ownerPrev = prev;
+        if (prev != null) prev.ownerNext = next;
+        else if (next != null) heads.put(ownerId, next);
+        else heads.remove(ownerId);
+        order.ownerPrev = null;
+        order.ownerNext = null;
+    }
+
+    /**
+     * 这个用户最近加入的一个挂单，没有时返回 null
+     */
+    public Order first(long ownerId) {
+        return ownerId == 0L ? null : heads.get(ownerId);
+    }
+
+    /**
+     * 有挂单的用户数
+     */
+    public int size() {
+        return heads.size();
+    }
+
+    public void clear() {
+        heads.clear();
+    }
+}
@@ -0,0 +1,138 @@
+package com.ruislan.korderbook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * long 到槽位号的索引，比如订单号到 OffHeapOrderStore 的槽位
+ * <p>
+ * 和 OrderIndex 一样是开放寻址（线性探测）的哈希表，但只有两个原始类型数组，不装箱、不分配节点，
+ * GC 不需要扫描里面的内容。槽位号不能是负数。
+ */
+@NotThreadSafe
+public final class SlotIndex {
+    public static final int MISSING = -1;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+
+    public SlotIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SlotIndex(int expectedSize) {
+        final int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return 没有时返回 MISSING
+     */
+    public int get(long key) {
+        int i = slot(key);
+        int value;
+        while ((value = values[i]) != MISSING) {
+            if (keys[i] == key) return value;
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    public boolean contains(long key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * @return 原来的值，没有则为 MISSING
+     */
+    public int put(long key, int value) {
+        int i = slot(key);
+        int old;
+        while ((old = values[i]) != MISSING) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) rehash(values.length << 1);
+        return MISSING;
+    }
+
+    public int remove(long key) {
+        int i = slot(key);
+        int value;
+        while ((value = values[i]) != MISSING) {
+            if (keys[i] == key) {
+                shiftBack(i);
+                --size;
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, MISSING);
+        size = 0;
+    }
+
+    private void shiftBack(int hole) {
+        int i = (hole + 1) & mask;
+        int value;
+        while ((value = values[i]) != MISSING) {
+            final int home = slot(keys[i]);
+            // 如果 i 的理想位置不在 (hole, i] 之间，就把它挪到空洞上
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = value;
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        values[hole] = MISSING;
+    }
+
+    private int slot(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            final int value = oldValues[i];
+            if (value == MISSING) continue;
+            int j = slot(oldKeys[i]);
+            while (values[j] != MISSING) j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = value;
+        }
+    }
+}
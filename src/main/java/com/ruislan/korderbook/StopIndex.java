@@ -0,0 +1,156 @@
+package com.ruislan.korderbook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 一方还没触发的止损单
+ * <p>
+ * 买方止损单在最新价涨到止损价及以上时触发，止损价越低越先触发；卖方在跌到止损价及以下时触发，止损价越高越先触发。
+ * 止损价排好序放在 long 数组里，最先触发的在数组末尾，每个止损价一个先进先出的订单队列。
+ * 加入和撤单是二分查找加上挪动少量元素；最新价变化时只从末尾取出被穿过的那一段，O(log n + k)。
+ */
+@NotThreadSafe
+public final class StopIndex {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final boolean isBuy;
+    // 按照从晚到早触发的顺序排序，stopPrices[size - 1] 最先触发
+    private long[] stopPrices;
+    private OrderQueue[] queues;
+    private int size;
+    private int orderCount;
+    private OrderQueue[] spareQueues; // 清空的队列留着复用
+    private int spareCount;
+
+    public StopIndex(boolean isBuy) {
+        this.isBuy = isBuy;
+        this.stopPrices = new long[INITIAL_CAPACITY];
+        this.queues = new OrderQueue[INITIAL_CAPACITY];
+        this.spareQueues = new OrderQueue[INITIAL_CAPACITY];
+    }
+
+    public void add(Order order) {
+        final long stopPrice = order.getStopPrice();
+        int index = indexOf(stopPrice);
+        if (index < 0) index = insert(-index - 1, stopPrice);
+        queues[index].add(order);
+        ++orderCount;
+    }
+
+    /**
+     * @return 订单不在这里时返回 false
+     */
+    public boolean remove(Order order) {
+        final int index = indexOf(order.getStopPrice());
+        if (index < 0 || !queues[index].remove(order)) return false;
+        if (queues[index].isEmpty()) removeAt(index);
+        --orderCount;
+        return true;
+    }
+
+    /**
+     * 取出一个被最新价穿过的止损单并标记为已触发，按止损价从先到后、同价按先来后到；没有时返回 null
+     */
+    public Order pollTriggered(long lastPrice) {
+        if (size == 0 || lastPrice <= 0L) return null;
+        final long stopPrice = stopPrices[size - 1];
+        if (isBuy ? lastPrice < stopPrice : lastPrice > stopPrice) return null;
+        final Order order = pollLast();
+        order.triggered = true;
+        return order;
+    }
+
+    /**
+     * 取出任意一个止损单，批量撤单时使用
+     */
+    public Order poll() {
+        return size == 0 ? null : pollLast();
+    }
+
+    private Order pollLast() {
+        final OrderQueue queue = queues[size - 1];
+        final Order order = queue.poll();
+        if (queue.isEmpty()) removeAt(size - 1);
+        --orderCount;
+        return order;
+    }
+
+    /**
+     * 按触发顺序遍历，遍历时不能修改
+     */
+    public void forEach(Consumer<Order> action) {
+        for (int i = size - 1; i >= 0; i--) queues[i].forEach(action);
+    }
+
+    /**
+     * 最先触发的止损价，没有止损单时返回 0
+     */
+    public long getNextStopPrice() {
+        return size == 0 ? 0L : stopPrices[size - 1];
+    }
+
+    public int size() {
+        return orderCount;
+    }
+
+    public boolean isEmpty() {
+        return orderCount == 0;
+    }
+
+    public boolean isBuy() {
+        return isBuy;
+    }
+
+    /**
+     * 二分查找，找不到时返回 -(插入位置) - 1
+     */
+    private int indexOf(long stopPrice) {
+        final long key = rank(stopPrice);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midKey = rank(stopPrices[mid]);
+            if (midKey < key) low = mid + 1;
+            else if (midKey > key) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * 越先触发 rank 越大
+     */
+    private long rank(long stopPrice) {
+        return isBuy ? -stopPrice : stopPrice;
+    }
+
+    private int insert(int index, long stopPrice) {
+        if (size == stopPrices.length) {
+            stopPrices = Arrays.copyOf(stopPrices, size * 2);
+            queues = Arrays.copyOf(queues, size * 2);
+        }
+        final int moved = size - index;
+        if (moved > 0) {
+            System.arraycopy(stopPrices, index, stopPrices, index + 1, moved);
+            System.arraycopy(queues, index, queues, index + 1, moved);
+        }
+        stopPrices[index] = stopPrice;
+        queues[index] = spareCount > 0 ? spareQueues[--spareCount] : new OrderQueue();
+        ++size;
+        return index;
+    }
+
+    private void removeAt(int index) {
+        if (spareCount == spareQueues.length) spareQueues = Arrays.copyOf(spareQueues, spareCount * 2);
+        spareQueues[spareCount++] = queues[index];
+        final int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(stopPrices, index + 1, stopPrices, index, moved);
+            System.arraycopy(queues, index + 1, queues, index, moved);
+        }
+        queues[--size] = null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.ruislan.korderbook;
+
+/**
+ * 订单的有效期
+ */
+public enum TimeInForce {
+    /**
+     * 一直有效直到成交或者撤单，没有成交的部分挂在订单簿上
+     */
+    GTC,
+    /**
+     * 立即成交，剩下的部分马上撤掉，不进订单簿
+     */
+    IOC,
+    /**
+     * 全部成交或者全部不成交，下单前先看对手方的深度够不够，不够直接拒绝
+     */
+    FOK
+}
@@ -0,0 +1,94 @@
+package com.ruislan.korderbook.codec;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.ruislan.korderbook.codec.MarketDataSchema.*;
+
+/**
+ * 行情消息的解码器
+ * <p>
+ * 一个可以反复使用的 flyweight：next 移到下一条消息，字段的 getter 直接从 buffer 里读，不分配对象。
+ * 用法：
+ * <pre>
+ * decoder.wrap(buffer, 0, length);
+ * while (decoder.next()) {
+ *     switch (decoder.templateId()) { ... }
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+public final class MarketDataDecoder {
+    private ByteBuffer buffer;
+    private int limit;
+    private int next; // 下一条消息的位置
+    private int body = -1; // 当前消息体的位置
+
+    /**
+     * 读取 [offset, limit) 之间的消息，buffer 会被设置成小端字节序
+     */
+    public MarketDataDecoder wrap(ByteBuffer buffer, int offset, int limit) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.limit = limit;
+        this.next = offset;
+        this.body = -1;
+        return this;
+    }
+
+    /**
+     * @return 还有没有下一条完整的消息
+     */
+    public boolean next() {
+        if (limit - next < HEADER_LENGTH) return false;
+        final int blockLength = Short.toUnsignedInt(buffer.getShort(next + BLOCK_LENGTH_OFFSET));
+        if (buffer.getShort(next + SCHEMA_ID_OFFSET) != SCHEMA_ID) throw new IllegalStateException("unknown schema at " + next);
+        if (blockLength < BLOCK_LENGTH) throw new IllegalStateException("message too short at " + next);
+        if (limit - next - HEADER_LENGTH < blockLength) return false;
+        body = next + HEADER_LENGTH;
+        next = body + blockLength;
+        return true;
+    }
+
+    /**
+     * 已经读完的位置
+     */
+    public int getOffset() {
+        return next;
+    }
+
+    public short templateId() {
+        return buffer.getShort(body - HEADER_LENGTH + TEMPLATE_ID_OFFSET);
+    }
+
+    public short version() {
+        return buffer.getShort(body - HEADER_LENGTH + VERSION_OFFSET);
+    }
+
+    public long orderId() {
+        return buffer.getLong(body + ORDER_ID_OFFSET);
+    }
+
+    public long counterOrderId() {
+        return buffer.getLong(body + COUNTER_ORDER_ID_OFFSET);
+    }
+
+    public long price() {
+        return buffer.getLong(body + PRICE_OFFSET);
+    }
+
+    public long qty() {
+        return buffer.getLong(body + QTY_OFFSET);
+    }
+
+    /**
+     * ACCEPTED 的下单时间，DEPTH_CHANGED 的订单数
+     */
+    public long value() {
+        return buffer.getLong(body + VALUE_OFFSET);
+    }
+
+    public boolean isBuy() {
+        return buffer.get(body + SIDE_OFFSET) == SIDE_BUY;
+    }
+}
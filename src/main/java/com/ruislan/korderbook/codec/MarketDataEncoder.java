@@ -0,0 +1,111 @@
+package com.ruislan.korderbook.codec;
+
+import com.ruislan.korderbook.Order;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.ruislan.korderbook.codec.MarketDataSchema.*;
+
+/**
+ * 行情消息的编码器
+ * <p>
+ * 包在一块 ByteBuffer（通常是堆外内存）上，用绝对位置直接写字段，不分配对象，也不改动 buffer 的 position。
+ * 每次编码在当前位置追加一条消息，放不下时抛出 BufferOverflowException，调用方发出已经写好的部分后
+ * 可以用 wrap 或 reset 重新开始。
+ */
+@NotThreadSafe
+public final class MarketDataEncoder {
+    private ByteBuffer buffer;
+    private int offset;
+    private int limit;
+
+    /**
+     * 从 offset 开始写，buffer 会被设置成小端字节序
+     */
+    public MarketDataEncoder wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        this.limit = buffer.capacity();
+        return this;
+    }
+
+    /**
+     * 回到 offset 重新写
+     */
+    public MarketDataEncoder reset(int offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * 下一条消息开始的位置，也就是已经写好的部分的结束位置
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int remaining() {
+        return limit - offset;
+    }
+
+    public MarketDataEncoder accepted(Order order) {
+        return accepted(order.getId(), order.isBuy(), order.getPrice(), order.getOpenQty(), order.getCreatedAt());
+    }
+
+    /**
+     * 直接传字段，从 EventBatch 里记下的事件发生时的数量编码时使用，下同
+     */
+    public MarketDataEncoder accepted(long orderId, boolean isBuy, long price, long openQty, long createdAt) {
+        return encode(ACCEPTED, orderId, 0L, price, openQty, createdAt, isBuy);
+    }
+
+    public MarketDataEncoder matched(Order incomingOrder, Order counterOrder, long price, long qty) {
+        return matched(incomingOrder.getId(), counterOrder.getId(), incomingOrder.isBuy(), price, qty);
+    }
+
+    public MarketDataEncoder matched(long orderId, long counterOrderId, boolean isBuy, long price, long qty) {
+        return encode(MATCHED, orderId, counterOrderId, price, qty, 0L, isBuy);
+    }
+
+    public MarketDataEncoder canceled(Order order) {
+        return canceled(order.getId(), order.isBuy(), order.getPrice(), order.getOpenQty());
+    }
+
+    public MarketDataEncoder canceled(long orderId, boolean isBuy, long price, long openQty) {
+        return encode(CANCELED, orderId, 0L, price, openQty, 0L, isBuy);
+    }
+
+    public MarketDataEncoder fullFilled(Order order) {
+        return fullFilled(order.getId(), order.isBuy(), order.getPrice(), order.getOriginQty());
+    }
+
+    public MarketDataEncoder fullFilled(long orderId, boolean isBuy, long price, long originQty) {
+        return encode(FULL_FILLED, orderId, 0L, price, originQty, 0L, isBuy);
+    }
+
+    public MarketDataEncoder depthChanged(boolean isBuy, long price, long totalQty, long orderCount) {
+        return encode(DEPTH_CHANGED, 0L, 0L, price, totalQty, orderCount, isBuy);
+    }
+
+    private MarketDataEncoder encode(short templateId, long orderId, long counterOrderId, long price, long qty, long value, boolean isBuy) {
+        if (limit - offset < MESSAGE_LENGTH) throw new BufferOverflowException();
+        final ByteBuffer buffer = this.buffer;
+        final int header = offset;
+        buffer.putShort(header + BLOCK_LENGTH_OFFSET, (short) BLOCK_LENGTH);
+        buffer.putShort(header + TEMPLATE_ID_OFFSET, templateId);
+        buffer.putShort(header + SCHEMA_ID_OFFSET, SCHEMA_ID);
+        buffer.putShort(header + VERSION_OFFSET, VERSION);
+        final int body = header + HEADER_LENGTH;
+        buffer.putLong(body + ORDER_ID_OFFSET, orderId);
+        buffer.putLong(body + COUNTER_ORDER_ID_OFFSET, counterOrderId);
+        buffer.putLong(body + PRICE_OFFSET, price);
+        buffer.putLong(body + QTY_OFFSET, qty);
+        buffer.putLong(body + VALUE_OFFSET, value);
+        buffer.put(body + SIDE_OFFSET, isBuy ? SIDE_BUY : SIDE_SELL);
+        offset = body + BLOCK_LENGTH;
+        return this;
+    }
+}
@@ -0,0 +1,119 @@
+package com.ruislan.korderbook.codec;
+
+import com.ruislan.korderbook.DepthListener;
+import com.ruislan.korderbook.EventBatch;
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * 在撮合线程上把订单簿的事件直接编码进一块缓冲区
+ * <p>
+ * 缓冲区写满或者调用 flush 时，把已经编码的消息交给 MarketDataSink，然后从头开始写。
+ * 打开了批量事件的订单簿在每一批 onEvents 结束时自动 flush；否则由调用方在合适的时候 flush。
+ * 批量时直接从 EventBatch 的列里读事件发生时的价格和数量编码，不再经过单个回调。
+ * 深度变化通过 getDepthListener 返回的监听器编码进同一块缓冲区。
+ */
+@NotThreadSafe
+public class MarketDataPublisher extends OrderBookListener {
+    /**
+     * 接收编码好的消息，buffer 中 [offset, offset + length) 只在回调期间有效
+     */
+    @FunctionalInterface
+    public interface MarketDataSink {
+        void onMessages(ByteBuffer buffer, int offset, int length);
+    }
+
+    private final ByteBuffer buffer;
+    private final MarketDataEncoder encoder;
+    private final MarketDataSink sink;
+    private final DepthListener depthListener;
+
+    public MarketDataPublisher(ByteBuffer buffer, MarketDataSink sink) {
+        if (buffer.capacity() < MarketDataSchema.MESSAGE_LENGTH) throw new IllegalArgumentException("buffer is too small");
+        this.buffer = buffer;
+        this.encoder = new MarketDataEncoder().wrap(buffer, 0);
+        this.sink = sink;
+        this.depthListener = new DepthListener() {
+            @Override
+            public void onLevelChanged(boolean isBuy, long price, long totalQty, long orderCount) {
+                ensureCapacity();
+                encoder.depthChanged(isBuy, price, totalQty, orderCount);
+            }
+        };
+    }
+
+    public DepthListener getDepthListener() {
+        return depthListener;
+    }
+
+    /**
+     * 把已经编码的消息交给 sink
+     */
+    public void flush() {
+        if (encoder.getOffset() == 0) return;
+        try {
+            sink.onMessages(buffer, 0, encoder.getOffset());
+        } finally {
+            encoder.reset(0);
+        }
+    }
+
+    private void ensureCapacity() {
+        if (encoder.remaining() < MarketDataSchema.MESSAGE_LENGTH) flush();
+    }
+
+    @Override
+    public void onAccepted(Order order) {
+        ensureCapacity();
+        encoder.accepted(order);
+    }
+
+    @Override
+    public void onMatched(Order o1, Order o2, long price, long qty) {
+        ensureCapacity();
+        encoder.matched(o1, o2, price, qty);
+    }
+
+    @Override
+    public void onCanceled(Order order) {
+        ensureCapacity();
+        encoder.canceled(order);
+    }
+
+    @Override
+    public void onFullFilled(Order order) {
+        ensureCapacity();
+        encoder.fullFilled(order);
+    }
+
+    @Override
+    public void onEvents(EventBatch events) {
+        for (int i = 0; i < events.size(); i++) {
+            final Order order = events.getOrder(i);
+            switch (events.getType(i)) {
+                case EventBatch.ACCEPTED -> {
+                    ensureCapacity();
+                    encoder.accepted(order.getId(), order.isBuy(), events.getPrice(i), events.getOpenQty(i), order.getCreatedAt());
+                }
+                case EventBatch.MATCHED -> {
+                    ensureCapacity();
+                    encoder.matched(order.getId(), events.getCounterOrder(i).getId(), order.isBuy(), events.getPrice(i), events.getQty(i));
+                }
+                case EventBatch.CANCELED -> {
+                    ensureCapacity();
+                    encoder.canceled(order.getId(), order.isBuy(), events.getPrice(i), events.getOpenQty(i));
+                }
+                case EventBatch.FULL_FILLED -> {
+                    ensureCapacity();
+                    encoder.fullFilled(order.getId(), order.isBuy(), events.getPrice(i), order.getOriginQty());
+                }
+                default -> {
+                }
+            }
+        }
+        flush();
+    }
+}
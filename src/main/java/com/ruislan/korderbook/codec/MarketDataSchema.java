@@ -0,0 +1,54 @@
+package com.ruislan.korderbook.codec;
+
+/**
+ * 行情消息的二进制格式，小端字节序
+ * <p>
+ * 每条消息是 8 字节的消息头 [short blockLength][short templateId][short schemaId][short version]
+ * 加上一个定长的消息体，所有模板共用同一个消息体布局，用不到的字段写 0：
+ * <pre>
+ * [long orderId][long counterOrderId][long price][long qty][long value][byte side]
+ * </pre>
+ * <ul>
+ * <li>ACCEPTED：qty 是挂单数量，value 是下单时间</li>
+ * <li>MATCHED：orderId 是进单，counterOrderId 是对手单，side 是进单的方向</li>
+ * <li>CANCELED：qty 是撤掉的剩余数量</li>
+ * <li>FULL_FILLED：qty 是原始数量</li>
+ * <li>DEPTH_CHANGED：qty 是这一档的总数量，value 是订单数，数量为 0 表示档位被删除</li>
+ * </ul>
+ * 读的时候按消息头里的 blockLength 跳到下一条，以后在消息体末尾追加字段不影响旧的读取方。
+ */
+public final class MarketDataSchema {
+    public static final short SCHEMA_ID = 0x4B4F; // "KO"
+    public static final short VERSION = 1;
+
+    public static final short ACCEPTED = 1;
+    public static final short MATCHED = 2;
+    public static final short CANCELED = 3;
+    public static final short FULL_FILLED = 4;
+    public static final short DEPTH_CHANGED = 5;
+
+    public static final byte SIDE_BUY = 0;
+    public static final byte SIDE_SELL = 1;
+
+    static final int HEADER_LENGTH = 8;
+    static final int BLOCK_LENGTH_OFFSET = 0;
+    static final int TEMPLATE_ID_OFFSET = 2;
+    static final int SCHEMA_ID_OFFSET = 4;
+    static final int VERSION_OFFSET = 6;
+
+    static final int ORDER_ID_OFFSET = 0;
+    static final int COUNTER_ORDER_ID_OFFSET = 8;
+    static final int PRICE_OFFSET = 16;
+    static final int QTY_OFFSET = 24;
+    static final int VALUE_OFFSET = 32;
+    static final int SIDE_OFFSET = 40;
+    static final int BLOCK_LENGTH = 41;
+
+    /**
+     * 一条消息的长度
+     */
+    public static final int MESSAGE_LENGTH = HEADER_LENGTH + BLOCK_LENGTH;
+
+    private MarketDataSchema() {
+    }
+}
@@ -0,0 +1,23 @@
+package com.ruislan.korderbook.engine;
+
+import com.ruislan.korderbook.OrderBook;
+
+/**
+ * 撮合线程执行一条命令时订单簿或者监听器抛出的异常
+ * <p>
+ * 在撮合线程上调用。调用之后这条命令算作执行完，撮合线程接着执行下一条，不会因为一个异常停下来。
+ */
+@FunctionalInterface
+public interface CommandExceptionHandler {
+    /**
+     * 默认的处理：什么也不做，失败的次数和最后一个异常已经由 OrderSequencer 记下
+     */
+    CommandExceptionHandler IGNORE = (book, sequence, e) -> {
+    };
+
+    /**
+     * @param book     执行命令的订单簿
+     * @param sequence 命令的序号
+     */
+    void onException(OrderBook book, long sequence, Throwable e);
+}
@@ -0,0 +1,63 @@
+package com.ruislan.korderbook.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 撮合引擎的一个分片，一个撮合线程负责哈希到这个分片上的所有订单簿
+ */
+public final class EngineShard {
+    private final int id;
+    private final OrderSequencer sequencer;
+    private final AtomicInteger bookCount;
+    private long lastSampleCount;
+    private long lastSampleNanos;
+
+    EngineShard(int id, int bufferSize, WaitStrategy waitStrategy) {
+        this.id = id;
+        this.sequencer = new OrderSequencer(null, bufferSize, waitStrategy, "matching-shard-" + id);
+        this.bookCount = new AtomicInteger();
+        this.lastSampleNanos = System.nanoTime();
+    }
+
+    OrderSequencer sequencer() {
+        return sequencer;
+    }
+
+    void onBookAdded() {
+        bookCount.incrementAndGet();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getBookCount() {
+        return bookCount.get();
+    }
+
+    /**
+     * 排队等待撮合线程执行的命令数
+     */
+    public long getQueueDepth() {
+        return sequencer.getQueueDepth();
+    }
+
+    /**
+     * 已经执行的命令总数
+     */
+    public long getProcessedCount() {
+        return sequencer.getProcessedCount();
+    }
+
+    /**
+     * 从上一次采样到现在每秒执行的命令数，供监控线程定期调用
+     */
+    public synchronized double sampleThroughput() {
+        final long count = sequencer.getProcessedCount();
+        final long nanos = System.nanoTime();
+        final double throughput = nanos == lastSampleNanos ? 0.0 : (count - lastSampleCount) * 1e9 / (nanos - lastSampleNanos);
+        lastSampleCount = count;
+        lastSampleNanos = nanos;
+        return throughput;
+    }
+}
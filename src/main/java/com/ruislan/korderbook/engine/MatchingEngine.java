@@ -0,0 +1,141 @@
+package com.ruislan.korderbook.engine;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 多品种撮合引擎
+ * <p>
+ * 品种按哈希固定分配到若干个分片上，每个分片一个撮合线程（通常一个 CPU 核一个分片），
+ * 一个订单簿只会被它所在分片的线程访问，所以订单簿不需要锁。
+ * 任何线程都可以调用 place/cancel，命令会被路由到对应分片的环形队列里。
+ * 撮合线程是守护线程，退出前要调用 close，否则还没执行的命令会丢掉。
+ */
+public final class MatchingEngine implements AutoCloseable {
+    private final Function<String, OrderBook> bookFactory;
+    private final EngineShard[] shards;
+    private final ConcurrentHashMap<String, OrderBook> books;
+
+    public MatchingEngine(Function<String, OrderBook> bookFactory) {
+        this(bookFactory, Runtime.getRuntime().availableProcessors(), OrderSequencer.DEFAULT_BUFFER_SIZE, WaitStrategy.YIELD);
+    }
+
+    /**
+     * @param bookFactory  根据品种创建订单簿
+     * @param shardCount   分片数，也就是撮合线程数
+     * @param bufferSize   每个分片的环形队列大小，必须是 2 的幂
+     * @param waitStrategy 撮合线程和生产者的等待策略
+     */
+    public MatchingEngine(Function<String, OrderBook> bookFactory, int shardCount, int bufferSize, WaitStrategy waitStrategy) {
+        if (shardCount <= 0) throw new IllegalArgumentException("shardCount must be positive");
+        this.bookFactory = bookFactory;
+        this.shards = new EngineShard[shardCount];
+        for (int i = 0; i < shardCount; i++) shards[i] = new EngineShard(i, bufferSize, waitStrategy);
+        this.books = new ConcurrentHashMap<>();
+    }
+
+    public void start() {
+        for (EngineShard shard : shards) shard.sequencer().start();
+    }
+
+    /**
+     * 所有分片上命令抛出异常时的处理，默认不做处理，失败次数见 getFailedCount
+     */
+    public void setExceptionHandler(CommandExceptionHandler exceptionHandler) {
+        for (EngineShard shard : shards) shard.sequencer().setExceptionHandler(exceptionHandler);
+    }
+
+    /**
+     * 关闭所有订单簿，等待所有分片把已经发布的命令执行完；等待时被中断的话保留中断标记直接返回
+     */
+    @Override
+    public void close() {
+        books.forEach((symbol, book) -> shards[shardOf(symbol)].sequencer().publish(book, OrderCommand.CLOSE, null, 0L));
+        for (EngineShard shard : shards) shard.sequencer().close();
+    }
+
+    /**
+     * 添加一个品种，订单簿的 open 在它所在分片的撮合线程上执行
+     */
+    public OrderBook addBook(String symbol) {
+        final OrderBook book = bookFactory.apply(symbol);
+        if (books.putIfAbsent(symbol, book) != null) throw new IllegalArgumentException("duplicate symbol: " + symbol);
+        final EngineShard shard = shards[shardOf(symbol)];
+        shard.onBookAdded();
+        shard.sequencer().publish(book, OrderCommand.OPEN, null, 0L);
+        return book;
+    }
+
+    /**
+     * @return 命令在它所在分片上的序号
+     */
+    public long place(String symbol, Order order) {
+        return shards[shardOf(symbol)].sequencer().publish(bookOf(symbol), OrderCommand.PLACE, order, 0L);
+    }
+
+    public long cancel(String symbol, Order order) {
+        return shards[shardOf(symbol)].sequencer().publish(bookOf(symbol), OrderCommand.CANCEL, order, 0L);
+    }
+
+    public long cancel(String symbol, long orderId) {
+        return shards[shardOf(symbol)].sequencer().publish(bookOf(symbol), OrderCommand.CANCEL, null, orderId);
+    }
+
+    public long amend(String symbol, long orderId, long price, long qty) {
+        return shards[shardOf(symbol)].sequencer().publish(bookOf(symbol), OrderCommand.AMEND, null, orderId, price, qty);
+    }
+
+    /**
+     * 在所有品种上撤掉某个用户的挂单，比如用户断线时；每个订单簿在自己的分片上按顺序执行
+     */
+    public void cancelByOwner(long ownerId) {
+        books.forEach((symbol, book) -> shards[shardOf(symbol)].sequencer().publish(book, OrderCommand.CANCEL_BY_OWNER, null, ownerId));
+    }
+
+    /**
+     * 等待某个品种上序号为 sequence 的命令执行完
+     */
+    public void awaitProcessed(String symbol, long sequence) {
+        shards[shardOf(symbol)].sequencer().awaitProcessed(sequence);
+    }
+
+    public int shardOf(String symbol) {
+        final int h = symbol.hashCode();
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % shards.length;
+    }
+
+    public EngineShard getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * 所有分片上执行时抛出异常的命令数
+     */
+    public long getFailedCount() {
+        long count = 0L;
+        for (EngineShard shard : shards) count += shard.sequencer().getFailedCount();
+        return count;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 订单簿只能在它的分片线程上访问，读也一样：Depth 和 getDepthLevel 返回的 DepthLevel 都是原地修改、反复使用的，
+     * 其它线程读到的可能是写了一半的状态。其它线程读盘口请在 bookFactory 里给订单簿设置 TopOfBookSlot
+     * （OrderBook.setTopOfBookSlot），再通过 TopOfBookSlot.read 按顺序锁读到一致的前几档。
+     */
+    public OrderBook getBook(String symbol) {
+        return books.get(symbol);
+    }
+
+    private OrderBook bookOf(String symbol) {
+        final OrderBook book = books.get(symbol);
+        if (book == null) throw new IllegalArgumentException("unknown symbol: " + symbol);
+        return book;
+    }
+}
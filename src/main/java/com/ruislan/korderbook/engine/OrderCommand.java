@@ -0,0 +1,43 @@
+package com.ruislan.korderbook.engine;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+
+/**
+ * 环形队列里预先分配好的命令槽，生产者填好之后交给撮合线程执行
+ */
+final class OrderCommand {
+    static final int PLACE = 1;
+    static final int CANCEL = 2;
+    static final int OPEN = 3;
+    static final int CLOSE = 4;
+    static final int CANCEL_BY_OWNER = 5;
+    static final int AMEND = 6;
+
+    int type;
+    OrderBook book;
+    Order order;
+    long orderId; // CANCEL_BY_OWNER 时是用户
+    long price; // AMEND 的新价格和数量
+    long qty;
+
+    void execute() {
+        switch (type) {
+            case PLACE -> book.place(order);
+            case CANCEL -> {
+                if (order != null) book.cancel(order);
+                else book.cancel(orderId);
+            }
+            case OPEN -> book.open();
+            case CLOSE -> book.close();
+            case CANCEL_BY_OWNER -> book.cancelByOwner(orderId);
+            case AMEND -> book.amend(orderId, price, qty);
+            default -> throw new IllegalStateException("unknown command type: " + type);
+        }
+    }
+
+    void clear() {
+        book = null;
+        order = null;
+    }
+}
@@ -0,0 +1,219 @@
+package com.ruislan.korderbook.engine;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单簿前面的定序器
+ * <p>
+ * 多个生产者线程把下单和撤单命令写进预先分配好的环形队列，由一个专门的撮合线程按序号顺序取出并执行，
+ * 订单簿只会被这个线程访问，所以不需要锁。队列满了之后生产者按照等待策略等待撮合线程腾出空位。
+ * <p>
+ * 生产者用 getAndIncrement 抢占序号，填好槽位后把序号写进 published 数组发布；
+ * 撮合线程按序号检查 published，连续可用的命令批量执行之后再推进 consumed。
+ * 一条命令抛出的异常记进 getFailedCount 和 getLastFailure，再交给 CommandExceptionHandler，不会让撮合线程停下来。
+ * <p>
+ * 撮合线程是守护线程，忘了 close 也不会让 JVM 退不出去，但那时还没执行的命令就丢了，所以退出前要调用 close。
+ */
+public final class OrderSequencer implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final OrderBook book;
+    private final WaitStrategy waitStrategy;
+    private final OrderCommand[] ring;
+    private final long[] published; // 每个槽位最后发布的序号
+    private final int mask;
+    private final AtomicLong claimed; // 生产者已经抢占的最大序号
+    private final AtomicLong consumed; // 撮合线程已经执行完的最大序号
+    private final Thread matchingThread;
+    private volatile boolean running;
+    private volatile CommandExceptionHandler exceptionHandler = CommandExceptionHandler.IGNORE;
+    private volatile long failedCount; // 只由撮合线程写
+    private volatile Throwable lastFailure;
+
+    public OrderSequencer(OrderBook book) {
+        this(book, DEFAULT_BUFFER_SIZE, WaitStrategy.YIELD);
+    }
+
+    /**
+     * @param book         撮合线程独占的订单簿
+     * @param bufferSize   环形队列大小，必须是 2 的幂
+     * @param waitStrategy 撮合线程和生产者的等待策略
+     */
+    public OrderSequencer(OrderBook book, int bufferSize, WaitStrategy waitStrategy) {
+        this(book, bufferSize, waitStrategy, "order-sequencer-" + book.getSymbol());
+    }
+
+    OrderSequencer(OrderBook book, int bufferSize, WaitStrategy waitStrategy, String threadName) {
+        if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1)
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        this.book = book;
+        this.waitStrategy = waitStrategy;
+        this.ring = new OrderCommand[bufferSize];
+        for (int i = 0; i < bufferSize; i++) ring[i] = new OrderCommand();
+        this.published = new long[bufferSize];
+        Arrays.fill(published, -1L);
+        this.mask = bufferSize - 1;
+        this.claimed = new AtomicLong(-1L);
+        this.consumed = new AtomicLong(-1L);
+        this.matchingThread = new Thread(this::run, threadName);
+        this.matchingThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        matchingThread.start();
+    }
+
+    /**
+     * 设置命令抛出异常时的处理，默认不做处理，只记下失败次数和最后一个异常
+     */
+    public void setExceptionHandler(CommandExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    /**
+     * 停止接收处理，已经发布的命令会先执行完；等待时被中断的话保留中断标记直接返回
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            matchingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return 命令的序号，可以用 awaitProcessed 等待它执行完
+     */
+    public long place(Order order) {
+        return publish(book, OrderCommand.PLACE, order, 0L);
+    }
+
+    public long cancel(Order order) {
+        return publish(book, OrderCommand.CANCEL, order, 0L);
+    }
+
+    public long cancel(long orderId) {
+        return publish(book, OrderCommand.CANCEL, null, orderId);
+    }
+
+    public long cancelByOwner(long ownerId) {
+        return publish(book, OrderCommand.CANCEL_BY_OWNER, null, ownerId);
+    }
+
+    public long amend(long orderId, long price, long qty) {
+        return publish(book, OrderCommand.AMEND, null, orderId, price, qty);
+    }
+
+    long publish(OrderBook target, int type, Order order, long orderId) {
+        return publish(target, type, order, orderId, 0L, 0L);
+    }
+
+    long publish(OrderBook target, int type, Order order, long orderId, long price, long qty) {
+        final long sequence = claimed.getAndIncrement() + 1;
+        final long wrapPoint = sequence - ring.length;
+        int counter = 0;
+        while (wrapPoint > consumed.get()) waitStrategy.idle(counter++); // 队列满了，等撮合线程腾出这个槽位
+
+        final OrderCommand command = ring[(int) sequence & mask];
+        command.type = type;
+        command.book = target;
+        command.order = order;
+        command.orderId = orderId;
+        command.price = price;
+        command.qty = qty;
+        PUBLISHED.setRelease(published, (int) sequence & mask, sequence);
+        return sequence;
+    }
+
+    private void run() {
+        long next = consumed.get() + 1;
+        int counter = 0;
+        while (true) {
+            long available = next;
+            while (isPublished(available)) ++available;
+            if (available == next) {
+                if (!running && claimed.get() < next) break; // 停止了并且没有还在写的命令
+                waitStrategy.idle(counter++);
+                continue;
+            }
+            for (long sequence = next; sequence < available; sequence++) {
+                final OrderCommand command = ring[(int) sequence & mask];
+                try {
+                    command.execute();
+                } catch (Throwable e) {
+                    onException(command.book, sequence, e);
+                } finally {
+                    command.clear();
+                }
+            }
+            consumed.lazySet(available - 1);
+            next = available;
+            counter = 0;
+        }
+    }
+
+    private void onException(OrderBook book, long sequence, Throwable e) {
+        lastFailure = e;
+        failedCount = failedCount + 1L;
+        try {
+            exceptionHandler.onException(book, sequence, e);
+        } catch (Throwable ignored) {
+            // 处理异常的代码自己出错也不能让撮合线程停下来
+        }
+    }
+
+    private boolean isPublished(long sequence) {
+        return (long) PUBLISHED.getAcquire(published, (int) sequence & mask) == sequence;
+    }
+
+    /**
+     * 等待某个序号的命令执行完
+     */
+    public void awaitProcessed(long sequence) {
+        int counter = 0;
+        while (consumed.get() < sequence) waitStrategy.idle(counter++);
+    }
+
+    /**
+     * 已经发布但还没有执行的命令数
+     */
+    public long getQueueDepth() {
+        return Math.max(0L, claimed.get() - consumed.get());
+    }
+
+    /**
+     * 已经执行的命令总数
+     */
+    public long getProcessedCount() {
+        return consumed.get() + 1;
+    }
+
+    /**
+     * 执行时抛出异常的命令数
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * 最近一条失败的命令抛出的异常，没有失败过时返回 null
+     */
+    public Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    public int getBufferSize() {
+        return ring.length;
+    }
+}
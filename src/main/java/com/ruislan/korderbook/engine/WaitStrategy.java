@@ -0,0 +1,47 @@
+package com.ruislan.korderbook.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 等待策略，撮合线程没有命令可做、或者生产者等待环形队列腾出空位时使用
+ * <p>
+ * counter 是连续空等的次数，有命令到达时归零。
+ */
+public enum WaitStrategy {
+    /**
+     * 一直自旋，延迟最低，但会占满一个 CPU 核
+     */
+    BUSY_SPIN {
+        @Override
+        public void idle(int counter) {
+            Thread.onSpinWait();
+        }
+    },
+    /**
+     * 先自旋一会，然后让出 CPU
+     */
+    YIELD {
+        @Override
+        public void idle(int counter) {
+            if (counter < SPIN_TRIES) Thread.onSpinWait();
+            else Thread.yield();
+        }
+    },
+    /**
+     * 先自旋、再让出 CPU，最后短暂休眠，空闲时几乎不占用 CPU，但唤醒延迟最高
+     */
+    PARK {
+        @Override
+        public void idle(int counter) {
+            if (counter < SPIN_TRIES) Thread.onSpinWait();
+            else if (counter < SPIN_TRIES + YIELD_TRIES) Thread.yield();
+            else LockSupport.parkNanos(PARK_NANOS);
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 50_000L;
+
+    public abstract void idle(int counter);
+}
@@ -0,0 +1,103 @@
+package com.ruislan.korderbook.feed;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 某一时刻的盘口：最优买卖价、双方前 N 档和市场价
+ * <p>
+ * 由 TopOfBookSlot.read 填写，属于读取它的那个订阅者，数组反复使用，不会在读的过程中被撮合线程修改。
+ * 档位从最优价开始，和 Depth 一样包括市价单的 0 元档；getBestBid/getBestAsk 只看限价档。
+ */
+@NotThreadSafe
+public final class TopOfBook {
+    final long[] bidPrices;
+    final long[] bidQtys;
+    final long[] bidCounts;
+    final long[] askPrices;
+    final long[] askQtys;
+    final long[] askCounts;
+    int bidLevels;
+    int askLevels;
+    long bestBid;
+    long bestBidQty;
+    long bestAsk;
+    long bestAskQty;
+    long marketPrice;
+    long version;
+
+    public TopOfBook(int maxLevels) {
+        if (maxLevels <= 0) throw new IllegalArgumentException("maxLevels must be positive");
+        this.bidPrices = new long[maxLevels];
+        this.bidQtys = new long[maxLevels];
+        this.bidCounts = new long[maxLevels];
+        this.askPrices = new long[maxLevels];
+        this.askQtys = new long[maxLevels];
+        this.askCounts = new long[maxLevels];
+    }
+
+    /**
+     * 撮合线程发布这份状态时的版本号，每发布一次加 2，从来没有发布过时为 0
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getMaxLevels() {
+        return bidPrices.length;
+    }
+
+    public int getBidLevels() {
+        return bidLevels;
+    }
+
+    public int getAskLevels() {
+        return askLevels;
+    }
+
+    /**
+     * @param index 从 0 开始，0 是最优价
+     */
+    public long getBidPrice(int index) {
+        return bidPrices[index];
+    }
+
+    public long getBidQty(int index) {
+        return bidQtys[index];
+    }
+
+    public long getBidOrderCount(int index) {
+        return bidCounts[index];
+    }
+
+    public long getAskPrice(int index) {
+        return askPrices[index];
+    }
+
+    public long getAskQty(int index) {
+        return askQtys[index];
+    }
+
+    public long getAskOrderCount(int index) {
+        return askCounts[index];
+    }
+
+    public long getBestBid() {
+        return bestBid;
+    }
+
+    public long getBestBidQty() {
+        return bestBidQty;
+    }
+
+    public long getBestAsk() {
+        return bestAsk;
+    }
+
+    public long getBestAskQty() {
+        return bestAskQty;
+    }
+
+    public long getMarketPrice() {
+        return marketPrice;
+    }
+}
@@ -0,0 +1,58 @@
+package com.ruislan.korderbook.feed;
+
+import com.ruislan.korderbook.OrderBook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 把一个订单簿的盘口合并发布给慢的订阅者
+ * <p>
+ * 订单簿的监听器在撮合线程上同步回调，一个慢的订阅者会拖慢所有人。这里撮合线程只把最新的盘口写进
+ * TopOfBookSlot，每个订阅者用自己的 TopOfBookSubscriber 按自己的节奏读取，只看到读取时最新的状态，
+ * 中间的变化被合并掉，撮合线程从不等待订阅者。
+ * <p>
+ * 创建时通过 OrderBook.setTopOfBookSlot 挂到订单簿上，每次下单或撤单结束时有变化就发布一次，
+ * 不占用深度监听器；应该在订单簿开始撮合之前、或者在撮合线程上创建。
+ */
+@NotThreadSafe
+public final class TopOfBookPublisher {
+    public static final int DEFAULT_LEVELS = 10;
+
+    private final OrderBook orderBook;
+    private final TopOfBookSlot slot;
+
+    public TopOfBookPublisher(OrderBook orderBook) {
+        this(orderBook, DEFAULT_LEVELS);
+    }
+
+    /**
+     * @param levels 每一方发布的档数
+     */
+    public TopOfBookPublisher(OrderBook orderBook, int levels) {
+        this.orderBook = orderBook;
+        this.slot = new TopOfBookSlot(levels);
+        orderBook.setTopOfBookSlot(slot);
+    }
+
+    /**
+     * 发布订单簿现在的盘口，只能在撮合线程上调用
+     */
+    public void publish() {
+        slot.publish(orderBook.getBidsDepth(), orderBook.getAsksDepth(), orderBook.getMarketPrice());
+    }
+
+    /**
+     * 新建一个订阅者，每个读线程用自己的订阅者
+     */
+    public TopOfBookSubscriber subscribe() {
+        return new TopOfBookSubscriber(slot);
+    }
+
+    public TopOfBookSlot getSlot() {
+        return slot;
+    }
+
+    public String getSymbol() {
+        return orderBook.getSymbol();
+    }
+}
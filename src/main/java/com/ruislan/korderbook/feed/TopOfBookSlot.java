@@ -0,0 +1,137 @@
+package com.ruislan.korderbook.feed;
+
+import com.ruislan.korderbook.Depth;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 一个订单簿最新盘口的槽位，一个写线程（撮合线程），任意多个读线程
+ * <p>
+ * 顺序锁（seqlock）：写之前把版本号加 1 变成奇数，写完再加 1 变回偶数；
+ * 读的一方先读版本号，复制数据，再读一次版本号，两次相同并且是偶数才说明复制到的是一份完整的状态，否则重读。
+ * 写永远不等读，读的一方慢也只会错过中间的版本，不会拖住撮合线程；槽位里只有最新的一份，不排队。
+ * <p>
+ * 通过 OrderBook.setTopOfBookSlot 交给订单簿，订单簿在每次下单或撤单结束时调用 publishIfChanged。
+ */
+public final class TopOfBookSlot {
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(TopOfBookSlot.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final TopOfBook state; // 只有写线程修改，读线程在版本号的保护下复制
+    private long version; // 只通过 VERSION 访问
+    // 上一次发布时两边深度的变化次数和市场价，只有写线程用
+    private long bidChangeCount = -1L;
+    private long askChangeCount = -1L;
+    private long marketPrice;
+
+    public TopOfBookSlot(int maxLevels) {
+        this.state = new TopOfBook(maxLevels);
+    }
+
+    public int getMaxLevels() {
+        return state.getMaxLevels();
+    }
+
+    /**
+     * 和上一次发布相比深度或者市场价有变化时才发布，订单簿在每次下单或撤单结束时调用
+     *
+     * @return 是否发布了
+     */
+    public boolean publishIfChanged(Depth bidsDepth, Depth asksDepth, long marketPrice) {
+        if (bidsDepth.getChangeCount() == bidChangeCount && asksDepth.getChangeCount() == askChangeCount
+                && marketPrice == this.marketPrice) {
+            return false;
+        }
+        publish(bidsDepth, asksDepth, marketPrice);
+        return true;
+    }
+
+    /**
+     * 写入订单簿现在的盘口，只能由撮合线程调用
+     */
+    public void publish(Depth bidsDepth, Depth asksDepth, long marketPrice) {
+        bidChangeCount = bidsDepth.getChangeCount();
+        askChangeCount = asksDepth.getChangeCount();
+        this.marketPrice = marketPrice;
+        final TopOfBook state = this.state;
+        final long version = (long) VERSION.getOpaque(this) + 1L;
+        VERSION.setOpaque(this, version);
+        VarHandle.storeStoreFence();
+        final int maxLevels = state.getMaxLevels();
+        state.bidLevels = bidsDepth.copyTopLevels(state.bidPrices, state.bidQtys, state.bidCounts, maxLevels);
+        state.askLevels = asksDepth.copyTopLevels(state.askPrices, state.askQtys, state.askCounts, maxLevels);
+        state.bestBid = bidsDepth.getBestPrice();
+        state.bestBidQty = bidsDepth.getBestQty();
+        state.bestAsk = asksDepth.getBestPrice();
+        state.bestAskQty = asksDepth.getBestQty();
+        state.marketPrice = marketPrice;
+        VERSION.setRelease(this, version + 1L);
+    }
+
+    /**
+     * 最新发布的版本号，没有发布过时为 0
+     */
+    public long getVersion() {
+        final long version = (long) VERSION.getAcquire(this);
+        return version & ~1L;
+    }
+
+    /**
+     * 把最新的盘口复制到 target，API 线程按需读取时使用
+     *
+     * @return 复制到的版本号
+     */
+    public long read(TopOfBook target) {
+        return read(target, -1L);
+    }
+
+    /**
+     * 如果有比 lastVersion 新的状态，复制到 target
+     *
+     * @return 复制到的版本号，没有更新时返回 lastVersion
+     */
+    public long read(TopOfBook target, long lastVersion) {
+        if (target.getMaxLevels() < state.getMaxLevels()) throw new IllegalArgumentException("target is too small");
+        while (true) {
+            final long version = (long) VERSION.getAcquire(this);
+            if (version == lastVersion) return lastVersion;
+            if ((version & 1L) != 0L) {
+                Thread.onSpinWait(); // 撮合线程正在写
+                continue;
+            }
+            copy(target);
+            VarHandle.loadLoadFence();
+            if ((long) VERSION.getOpaque(this) == version) {
+                target.version = version;
+                return version;
+            }
+        }
+    }
+
+    private void copy(TopOfBook target) {
+        final TopOfBook state = this.state;
+        final int bidLevels = Math.min(state.bidLevels, state.getMaxLevels());
+        final int askLevels = Math.min(state.askLevels, state.getMaxLevels());
+        System.arraycopy(state.bidPrices, 0, target.bidPrices, 0, bidLevels);
+        System.arraycopy(state.bidQtys, 0, target.bidQtys, 0, bidLevels);
+        System.arraycopy(state.bidCounts, 0, target.bidCounts, 0, bidLevels);
+        System.arraycopy(state.askPrices, 0, target.askPrices, 0, askLevels);
+        System.arraycopy(state.askQtys, 0, target.askQtys, 0, askLevels);
+        System.arraycopy(state.askCounts, 0, target.askCounts, 0, askLevels);
+        target.bidLevels = bidLevels;
+        target.askLevels = askLevels;
+        target.bestBid = state.bestBid;
+        target.bestBidQty = state.bestBidQty;
+        target.bestAsk = state.bestAsk;
+        target.bestAskQty = state.bestAskQty;
+        target.marketPrice = state.marketPrice;
+    }
+}
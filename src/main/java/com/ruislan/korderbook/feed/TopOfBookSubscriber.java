@@ -0,0 +1,57 @@
+package com.ruislan.korderbook.feed;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 一个订阅者读到的盘口，只由这个订阅者自己的线程使用
+ * <p>
+ * poll 在有新版本时把最新的盘口复制到 get 返回的对象里；两次 poll 之间撮合线程发布了多少次都只读到最后一次，
+ * 被跳过的版本数记在 getConflatedCount 里。
+ */
+@NotThreadSafe
+public final class TopOfBookSubscriber {
+    private final TopOfBookSlot slot;
+    private final TopOfBook topOfBook;
+    private long version;
+    private long updates;
+    private long conflated;
+
+    public TopOfBookSubscriber(TopOfBookSlot slot) {
+        this.slot = slot;
+        this.topOfBook = new TopOfBook(slot.getMaxLevels());
+    }
+
+    /**
+     * @return 读到了新的盘口时返回 true
+     */
+    public boolean poll() {
+        final long version = slot.read(topOfBook, this.version);
+        if (version == this.version) return false;
+        // 每发布一次版本号加 2
+        conflated += (version - this.version) / 2 - 1;
+        ++updates;
+        this.version = version;
+        return true;
+    }
+
+    /**
+     * 最近一次 poll 读到的盘口，下次 poll 时会被覆盖
+     */
+    public TopOfBook get() {
+        return topOfBook;
+    }
+
+    /**
+     * poll 读到新盘口的次数
+     */
+    public long getUpdateCount() {
+        return updates;
+    }
+
+    /**
+     * 没有读到就被后面的发布覆盖掉的版本数
+     */
+    public long getConflatedCount() {
+        return conflated;
+    }
+}
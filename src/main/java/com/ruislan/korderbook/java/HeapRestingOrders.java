@@ -0,0 +1,123 @@
+package com.ruislan.korderbook.java;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderIndex;
+import com.ruislan.korderbook.OrderQueue;
+import com.ruislan.korderbook.OwnerIndex;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.function.Consumer;
+
+/**
+ * 挂单就是堆上的 Order：每一档是一个侵入式的 OrderQueue（按需创建），订单号索引指向订单本身
+ */
+@NotThreadSafe
+final class HeapRestingOrders implements RestingOrders {
+    private final OrderQueue[] bids; // 下标为价格档位，最后一个是市价单
+    private final OrderQueue[] asks;
+    private final OrderIndex orders = new OrderIndex(); // 订单号 -> 挂单
+    private final OwnerIndex owners = new OwnerIndex(); // 用户 -> 挂单
+
+    HeapRestingOrders(int ticks) {
+        this.bids = new OrderQueue[ticks + 1];
+        this.asks = new OrderQueue[ticks + 1];
+    }
+
+    @Override
+    public boolean keepsOrders() {
+        return true;
+    }
+
+    @Override
+    public void setRetainOrders(boolean retain) {
+        // 订单本身一直有效
+    }
+
+    @Override
+    public void releaseRetained() {
+    }
+
+    @Override
+    public boolean isEmpty(boolean isBuy, int index) {
+        final OrderQueue queue = (isBuy ? bids : asks)[index];
+        return queue == null || queue.isEmpty();
+    }
+
+    @Override
+    public Order peek(boolean isBuy, int index) {
+        final OrderQueue queue = (isBuy ? bids : asks)[index];
+        return queue == null ? null : queue.peek();
+    }
+
+    @Override
+    public void add(Order order, int index) {
+        final OrderQueue[] queues = order.isBuy() ? bids : asks;
+        var queue = queues[index];
+        if (queue == null) queue = queues[index] = new OrderQueue();
+        queue.add(order);
+        orders.put(order);
+        owners.add(order);
+    }
+
+    @Override
+    public Order remove(Order order, int index) {
+        final OrderQueue queue = (order.isBuy() ? bids : asks)[index];
+        if (queue == null || !queue.remove(order)) return null;
+        orders.remove(order.getId());
+        owners.remove(order);
+        return order;
+    }
+
+    @Override
+    public void fill(Order order, long qty, long now) {
+        order.fill(qty, now);
+    }
+
+    @Override
+    public void amend(Order order, long price, long qty, long now) {
+        order.amend(price, qty, now);
+    }
+
+    @Override
+    public Order own(Order order) {
+        return order;
+    }
+
+    @Override
+    public void addStop(Order order) {
+        orders.put(order);
+        owners.add(order);
+    }
+
+    @Override
+    public void removeStop(Order order) {
+        orders.remove(order.getId());
+        owners.remove(order);
+    }
+
+    @Override
+    public Order get(long orderId) {
+        return orders.get(orderId);
+    }
+
+    @Override
+    public boolean contains(long orderId) {
+        return orders.contains(orderId);
+    }
+
+    @Override
+    public Order firstOf(long ownerId) {
+        return owners.first(ownerId);
+    }
+
+    @Override
+    public int size() {
+        return orders.size();
+    }
+
+    @Override
+    public void forEach(boolean isBuy, int index, Consumer<Order> action) {
+        final OrderQueue queue = (isBuy ? bids : asks)[index];
+        if (queue != null) queue.forEach(action);
+    }
+}
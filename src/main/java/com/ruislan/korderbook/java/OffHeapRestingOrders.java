@@ -0,0 +1,277 @@
+package com.ruislan.korderbook.java;
+
+import com.ruislan.korderbook.OffHeapOrderStore;
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderIndex;
+import com.ruislan.korderbook.OrderPool;
+import com.ruislan.korderbook.SlotIndex;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static com.ruislan.korderbook.OffHeapOrderStore.NULL;
+
+/**
+ * 挂单复制到 OffHeapOrderStore 的槽位里，价格队列、订单号索引和用户链表都只记槽位号
+ * <p>
+ * 读出来的挂单是三个反复使用的视图：买方队头、卖方队头（集合竞价时两边同时成交）和按订单号或用户查到的挂单，
+ * 视图记着自己对应的槽位。打开批量事件时改成每次复制到一个不同的 Order，事件里的订单不会被后面的读取覆盖；
+ * 这些 Order 在这一批事件发出之后复用，数量只跟一批事件的大小有关，不会每次读取都分配。
+ * 还没触发的止损单是堆上的 Order，另外占一个槽位挂在用户链表上，按用户撤单的顺序和堆上存放时一致。
+ */
+@NotThreadSafe
+final class OffHeapRestingOrders implements RestingOrders {
+    private final long minPrice;
+    private final long tickSize;
+    private final int ticks;
+    private final OrderPool pool; // 改价时用来复制挂单，可以为 null
+    private final OffHeapOrderStore store = new OffHeapOrderStore();
+    // 下标为价格档位，存的是队头和队尾的槽位号，下标 ticks 是市价单的队列
+    private final int[] bidHeads;
+    private final int[] bidTails;
+    private final int[] askHeads;
+    private final int[] askTails;
+    private final SlotIndex slots; // 订单号 -> 槽位，包括还没触发的止损单
+    private final SlotIndex owners = new SlotIndex(); // 用户 -> 最近加入的槽位
+    private final OrderIndex stopOrders = new OrderIndex(); // 订单号 -> 还没触发的止损单
+    private final Order bidView = new Order(0L, true, 0L, 0L);
+    private final Order askView = new Order(0L, false, 0L, 0L);
+    private final Order lookupView = new Order(0L, false, 0L, 0L);
+    private int bidSlot = NULL; // 视图现在对应的槽位
+    private int askSlot = NULL;
+    private int lookupSlot = NULL;
+    private boolean retain;
+    private Order[] copies = new Order[16]; // 批量事件模式下复制出来的挂单，前 copyCount 个在这一批里用着
+    private int copyCount;
+
+    /**
+     * @param expectedOrders 预计的挂单数，用来预先分配订单号索引，避免扩容时的停顿
+     */
+    OffHeapRestingOrders(long minPrice, long tickSize, int ticks, OrderPool pool, int expectedOrders) {
+        this.minPrice = minPrice;
+        this.tickSize = tickSize;
+        this.ticks = ticks;
+        this.pool = pool;
+        this.bidHeads = emptyQueues(ticks + 1);
+        this.bidTails = emptyQueues(ticks + 1);
+        this.askHeads = emptyQueues(ticks + 1);
+        this.askTails = emptyQueues(ticks + 1);
+        this.slots = new SlotIndex(expectedOrders);
+    }
+
+    private static int[] emptyQueues(int length) {
+        final int[] queues = new int[length];
+        Arrays.fill(queues, NULL);
+        return queues;
+    }
+
+    /**
+     * 已经申请的堆外内存字节数，按块申请，只增不减
+     */
+    long getAllocatedBytes() {
+        return store.getAllocatedBytes();
+    }
+
+    @Override
+    public boolean keepsOrders() {
+        return false;
+    }
+
+    @Override
+    public void setRetainOrders(boolean retain) {
+        this.retain = retain;
+    }
+
+    @Override
+    public void releaseRetained() {
+        copyCount = 0;
+    }
+
+    @Override
+    public boolean isEmpty(boolean isBuy, int index) {
+        return (isBuy ? bidHeads : askHeads)[index] == NULL;
+    }
+
+    @Override
+    public Order peek(boolean isBuy, int index) {
+        final int slot = (isBuy ? bidHeads : askHeads)[index];
+        if (slot == NULL) return null;
+        if (retain) return copy(slot);
+        if (isBuy) {
+            bidSlot = slot;
+            return store.load(slot, bidView);
+        }
+        askSlot = slot;
+        return store.load(slot, askView);
+    }
+
+    @Override
+    public void add(Order order, int index) {
+        final int slot = store.add(order);
+        if (order.isBuy()) append(bidHeads, bidTails, index, slot);
+        else append(askHeads, askTails, index, slot);
+        slots.put(order.getId(), slot);
+        linkOwner(slot, order.getOwnerId());
+    }
+
+    @Override
+    public Order remove(Order order, int index) {
+        final int slot = slotOf(order);
+        if (slot == SlotIndex.MISSING || store.isPendingStop(slot)) return null;
+        // 调用方的对象可能已经过时，按槽位里存的价格找队列
+        final Order removed = isView(order) ? order : lookup(slot);
+        final long price = store.getPrice(slot);
+        final int at = price > 0L ? (int) ((price - minPrice) / tickSize) : ticks;
+        if (store.isBuy(slot)) unlink(bidHeads, bidTails, at, slot);
+        else unlink(askHeads, askTails, at, slot);
+        slots.remove(removed.getId());
+        free(slot);
+        return removed;
+    }
+
+    @Override
+    public void fill(Order order, long qty, long now) {
+        store.fill(slotOf(order), qty, now);
+        order.fill(qty, now);
+    }
+
+    @Override
+    public void amend(Order order, long price, long qty, long now) {
+        store.amend(slotOf(order), price, qty, now);
+        order.amend(price, qty, now);
+    }
+
+    @Override
+    public Order own(Order order) {
+        final int slot = slotOf(order);
+        final Order owned = pool == null ? new Order(0L, false, 0L, 0L) : pool.acquire(0L, false, 0L, 0L);
+        return store.load(slot, owned);
+    }
+
+    @Override
+    public void addStop(Order order) {
+        stopOrders.put(order);
+        final int slot = store.add(order); // 只用来占住订单号和用户链表上的位置
+        slots.put(order.getId(), slot);
+        linkOwner(slot, order.getOwnerId());
+    }
+
+    @Override
+    public void removeStop(Order order) {
+        stopOrders.remove(order.getId());
+        free(slots.remove(order.getId()));
+    }
+
+    @Override
+    public Order get(long orderId) {
+        final int slot = slots.get(orderId);
+        if (slot == SlotIndex.MISSING) return null;
+        return store.isPendingStop(slot) ? stopOrders.get(orderId) : lookup(slot);
+    }
+
+    @Override
+    public boolean contains(long orderId) {
+        return slots.contains(orderId);
+    }
+
+    @Override
+    public Order firstOf(long ownerId) {
+        final int slot = owners.get(ownerId);
+        if (slot == SlotIndex.MISSING) return null;
+        return store.isPendingStop(slot) ? stopOrders.get(store.getId(slot)) : lookup(slot);
+    }
+
+    @Override
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * 传给 action 的是同一个视图
+     */
+    @Override
+    public void forEach(boolean isBuy, int index, Consumer<Order> action) {
+        // 不产生事件，批量事件模式下也用视图，快照遍历千万级挂单时不会复制
+        for (int slot = (isBuy ? bidHeads : askHeads)[index]; slot != NULL; slot = store.getNext(slot)) {
+            lookupSlot = slot;
+            action.accept(store.load(slot, lookupView));
+        }
+    }
+
+    private Order lookup(int slot) {
+        if (retain) return copy(slot);
+        lookupSlot = slot;
+        return store.load(slot, lookupView);
+    }
+
+    private Order copy(int slot) {
+        if (copyCount == copies.length) copies = Arrays.copyOf(copies, copyCount * 2);
+        Order copy = copies[copyCount];
+        if (copy == null) copy = copies[copyCount] = new Order(0L, false, 0L, 0L);
+        ++copyCount;
+        return store.load(slot, copy);
+    }
+
+    private boolean isView(Order order) {
+        return order == bidView || order == askView || order == lookupView;
+    }
+
+    /**
+     * 视图直接用记下的槽位，其它对象（调用方的订单、批量事件时复制的订单）按订单号找
+     */
+    private int slotOf(Order order) {
+        if (order == bidView) return bidSlot;
+        if (order == askView) return askSlot;
+        if (order == lookupView) return lookupSlot;
+        return slots.get(order.getId());
+    }
+
+    /**
+     * 槽位释放之后视图不再对应它
+     */
+    private void free(int slot) {
+        unlinkOwner(slot);
+        store.free(slot);
+        if (bidSlot == slot) bidSlot = NULL;
+        if (askSlot == slot) askSlot = NULL;
+        if (lookupSlot == slot) lookupSlot = NULL;
+    }
+
+    private void append(int[] heads, int[] tails, int index, int slot) {
+        final int tail = tails[index];
+        store.setPrev(slot, tail);
+        store.setNext(slot, NULL);
+        if (tail == NULL) heads[index] = slot;
+        else store.setNext(tail, slot);
+        tails[index] = slot;
+    }
+
+    private void unlink(int[] heads, int[] tails, int index, int slot) {
+        final int prev = store.getPrev(slot);
+        final int next = store.getNext(slot);
+        if (prev == NULL) heads[index] = next;
+        else store.setNext(prev, next);
+        if (next == NULL) tails[index] = prev;
+        else store.setPrev(next, prev);
+    }
+
+    private void linkOwner(int slot, long ownerId) {
+        if (ownerId == 0L) return;
+        final int head = owners.put(ownerId, slot);
+        store.setOwnerPrev(slot, NULL);
+        store.setOwnerNext(slot, head);
+        if (head != NULL) store.setOwnerPrev(head, slot);
+    }
+
+    private void unlinkOwner(int slot) {
+        final long ownerId = store.getOwnerId(slot);
+        if (ownerId == 0L) return;
+        final int prev = store.getOwnerPrev(slot);
+        final int next = store.getOwnerNext(slot);
+        if (next != NULL) store.setOwnerPrev(next, prev);
+        if (prev != NULL) store.setOwnerNext(prev, next);
+        else if (next != NULL) owners.put(ownerId, next);
+        else owners.remove(ownerId);
+    }
+}
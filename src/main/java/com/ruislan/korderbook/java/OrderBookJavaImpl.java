@@ -1,37 +1,71 @@
 package com.ruislan.korderbook.java;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Ordering;
+import com.ruislan.korderbook.BestBidAsk;
+import com.ruislan.korderbook.CanceledLevels;
 import com.ruislan.korderbook.Depth;
 import com.ruislan.korderbook.Order;
 import com.ruislan.korderbook.OrderBook;
 import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.OrderBookMetrics;
+import com.ruislan.korderbook.OrderClock;
+import com.ruislan.korderbook.OrderIndex;
+import com.ruislan.korderbook.OrderQueue;
+import com.ruislan.korderbook.OwnerIndex;
+import com.ruislan.korderbook.StopIndex;
+import com.ruislan.korderbook.TimeInForce;
+import com.ruislan.korderbook.feed.TopOfBookSlot;
+import com.ruislan.korderbook.snapshot.Snapshotable;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.util.Comparator;
-import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 @NotThreadSafe
-public final class OrderBookJavaImpl implements OrderBook {
+public final class OrderBookJavaImpl implements OrderBook, Snapshotable {
     private final String symbol;
     private final OrderBookListener listener;
-    private final Multimap<Long, Order> bids;
-    private final Multimap<Long, Order> asks;
+    private final TreeMap<Long, OrderQueue> bids;
+    private final TreeMap<Long, OrderQueue> asks;
+    private final OrderIndex orders; // 订单号 -> 挂单
+    private final OwnerIndex owners; // 用户 -> 挂单
+    private final StopIndex buyStops; // 还没触发的止损单
+    private final StopIndex sellStops;
     private long marketPrice;
     private final Depth asksDepth;
     private final Depth bidsDepth;
+    private final BestBidAsk bestBidAsk = new BestBidAsk();
+    private OrderBookMetrics metrics; // 为 null 时不统计
+    private TopOfBookSlot topOfBookSlot; // 给其它线程读的盘口，为 null 时不发布
+    private final OrderClock clock;
+    private final CanceledLevels canceledBids = new CanceledLevels(); // 按用户撤单时按档位累计
+    private final CanceledLevels canceledAsks = new CanceledLevels();
 
     public OrderBookJavaImpl(String symbol, OrderBookListener listener) {
+        this(symbol, listener, OrderClock.EPOCH_SECONDS);
+    }
+
+    /**
+     * @param clock 成交和改单时写入订单更新时间的时钟
+     */
+    public OrderBookJavaImpl(String symbol, OrderBookListener listener, OrderClock clock) {
         this.symbol = symbol;
         this.listener = listener;
+        this.clock = clock;
         this.marketPrice = 0L;
-        this.bids = MultimapBuilder.treeKeys((Comparator<Long>) (o1, o2) -> {
+        this.bids = new TreeMap<>((Comparator<Long>) (o1, o2) -> {
             if (o1 == 0L && o2 == 0L) return 0; // o1, o2都是市价(0)，返回相等（0）
             if (o1 == 0L) return -1; // o1是市价(0)，返回o1小于o2（-1），
             if (o2 == 0L) return 1; // o2是市价(0)，返回o1大于o2（1）
             return Long.compare(o2, o1); // o1,o2都不是市价，比较价格
-        }).linkedListValues().build();
-        this.asks = MultimapBuilder.treeKeys().linkedListValues().build(); // 自然排序的话市价（0）总会在最前面
+        });
+        this.asks = new TreeMap<>(Ordering.natural()); // 自然排序的话市价（0）总会在最前面
+        this.orders = new OrderIndex();
+        this.owners = new OwnerIndex();
+        this.buyStops = new StopIndex(true);
+        this.sellStops = new StopIndex(false);
         this.bidsDepth = new Depth(true);
         this.asksDepth = new Depth(false);
     }
@@ -43,103 +77,400 @@ public final class OrderBookJavaImpl implements OrderBook {
 
 
     public void close() {
-        List<Order> bidOrders = bids.values().stream().toList();
-        List<Order> askOrders = asks.values().stream().toList();
-
-        bidOrders.forEach(this::cancel);
-        askOrders.forEach(this::cancel);
+        cancelAll();
     }
 
 
     public void place(Order order) {
+        final OrderBookMetrics metrics = this.metrics;
+        if (metrics == null) {
+            placeOrder(order);
+        } else {
+            final long start = System.nanoTime();
+            placeOrder(order);
+            metrics.onPlaced(System.nanoTime() - start);
+        }
+    }
+
+    private void placeOrder(Order order) {
         if (order.isFullFilled()) {
             listener.onRejected(order, "order is full filled");
-        } else {
+        } else if (orders.contains(order.getId())) {
+            listener.onRejected(order, "duplicate order id");
+        } else if (order.isPendingStop()) {
             listener.onAccepted(order);
-            matchOrder(order);
+            if (metrics != null) metrics.onAccepted();
+            addStop(order);
+            triggerStops(); // 最新价已经穿过止损价的话马上触发
+            publishChanges();
+        } else {
+            final String reason = checkBeforeMatch(order);
+            if (reason != null) {
+                listener.onRejected(order, reason);
+            } else {
+                listener.onAccepted(order);
+                if (metrics != null) metrics.onAccepted();
+                matchOrder(order);
+                triggerStops();
+                publishChanges();
+            }
+        }
+    }
+
+    /**
+     * post-only 和 FOK 在进入撮合之前的检查，通过时返回 null
+     */
+    private String checkBeforeMatch(Order order) {
+        if (order.isPostOnly() && !order.isLimit()) return "post only order must be limit";
+        if (order.isPostOnly() && executableQty(order, 1L) > 0L) return "post only order would take liquidity";
+        if (order.getTimeInForce() == TimeInForce.FOK && executableQty(order, order.getOpenQty()) < order.getOpenQty())
+            return "fill or kill order cannot be full filled";
+        return null;
+    }
+
+    private void addStop(Order order) {
+        (order.isBuy() ? buyStops : sellStops).add(order);
+        orders.put(order);
+        owners.add(order);
+    }
+
+    /**
+     * 最新价穿过止损价的止损单依次进入撮合：先买方后卖方，同一方按止损价从先到后、同价按先来后到。
+     * 它们的成交又会推动最新价，所以一直触发到没有新的止损单为止。
+     * 一次扫单里成交价是单调的，扫单结束后的最新价已经穿过了扫单途中穿过的所有止损价
+     */
+    private void triggerStops() {
+        Order order;
+        while ((order = buyStops.pollTriggered(marketPrice)) != null || (order = sellStops.pollTriggered(marketPrice)) != null) {
+            orders.remove(order.getId());
+            owners.remove(order);
+            listener.onTriggered(order);
+            if (checkBeforeMatch(order) != null) listener.onCanceled(order); // 触发时已经不满足 post-only 或 FOK 的条件
+            else matchOrder(order);
         }
     }
 
+    /**
+     * 对手方深度上进单马上能成交的数量，累计到 targetQty 为止
+     */
+    private long executableQty(Order order, long targetQty) {
+        return (order.isBuy() ? asksDepth : bidsDepth).getExecutableQty(order.getPrice(), marketPrice, targetQty);
+    }
+
     private void matchOrder(Order incomingOrder) {
+        final OrderBookMetrics metrics = this.metrics;
+        if (metrics == null) {
+            match(incomingOrder);
+        } else {
+            final long start = System.nanoTime();
+            match(incomingOrder);
+            metrics.onMatchFinished(System.nanoTime() - start);
+        }
+    }
+
+    private void match(Order incomingOrder) {
         final var oppositeOrders = incomingOrder.isBuy() ? asks : bids;
-        final var orders = incomingOrder.isBuy() ? bids : asks;
+        final long now = clock.now();
 
         if (oppositeOrders.isEmpty()) {         // 没有对手方
-            orders.put(incomingOrder.getPrice(), incomingOrder); // 放入订单薄等待
-            (incomingOrder.isBuy() ? bidsDepth : asksDepth).onOrderPlaced(incomingOrder.getPrice(), incomingOrder.getOpenQty()); // 更新深度
+            restOrCancel(incomingOrder); // 放入订单薄等待
         } else {
-            var it = oppositeOrders.values().iterator();
-            // 迭代订单，按照价格进行匹配
-            while (!incomingOrder.isFullFilled() && it.hasNext()) {
-                final Order oppositeOrder = it.next();
-                // 可执行条件判断
-                // 1. 价格相等肯定可以执行
-                // 2. 进单是买单，进单是市价单（市价单总是可以执行除非没有对手单） 或者 进单的价格>=此单价格
-                // 3. 进单是卖单，此单是市价单（市价单总是可以执行除非没有对手单） 或者 进单的价格<=此单价格
-                final var canExecute = (incomingOrder.getPrice() == oppositeOrder.getPrice()) ||
-                        incomingOrder.isBuy() ?
-                        !incomingOrder.isLimit() || incomingOrder.getPrice() >= oppositeOrder.getPrice() :
-                        !oppositeOrder.isLimit() || incomingOrder.getPrice() <= oppositeOrder.getPrice();
-                if (!canExecute) break;
-
-                long crossPrice;
-                if (oppositeOrder.isLimit())
-                    crossPrice = oppositeOrder.getPrice(); // 如果对手是个限价单，让cross价格等于对手价
-                else if (incomingOrder.isLimit())
-                    crossPrice = incomingOrder.getPrice(); // 如果对手不是进单是限价单，让价格等于进单价
-                else if (marketPrice > 0) crossPrice = marketPrice; //如果进单和对手都不是限价单，又有市场价，让价格等于市场价
-                else continue; //还没有市场价，这单不能交易了
-
-                var executeQty = Math.min(incomingOrder.getOpenQty(), oppositeOrder.getOpenQty());
-                incomingOrder.fill(executeQty);
-                oppositeOrder.fill(executeQty);
-
-                marketPrice = crossPrice; // 设置这次成交价格成为市场价
-
-                listener.onMatched(incomingOrder, oppositeOrder, crossPrice, executeQty);
-                listener.onLastPriceChanged(crossPrice);
-
-                // 检查此单成交后的情况
-                if (oppositeOrder.isFullFilled()) {
-                    it.remove();
-                    listener.onFullFilled(oppositeOrder);
-                    (oppositeOrder.isBuy() ? bidsDepth : asksDepth).onOrderFullFilled(oppositeOrder.getPrice(), executeQty); // 更新深度
-                } else {
-                    (oppositeOrder.isBuy() ? bidsDepth : asksDepth).onOrderPartialFilled(oppositeOrder.getPrice(), executeQty); // 更新深度
+            var levels = oppositeOrders.values().iterator();
+            // 逐档迭代订单，按照价格进行匹配
+            match:
+            while (!incomingOrder.isFullFilled() && levels.hasNext()) {
+                final OrderQueue level = levels.next();
+                while (!incomingOrder.isFullFilled() && !level.isEmpty()) {
+                    final Order oppositeOrder = level.peek();
+                    // 可执行条件判断
+                    // 1. 价格相等肯定可以执行
+                    // 2. 进单是买单，进单是市价单（市价单总是可以执行除非没有对手单） 或者 进单的价格>=此单价格
+                    // 3. 进单是卖单，此单是市价单（市价单总是可以执行除非没有对手单） 或者 进单的价格<=此单价格
+                    final var canExecute = (incomingOrder.getPrice() == oppositeOrder.getPrice()) ||
+                            incomingOrder.isBuy() ?
+                            !incomingOrder.isLimit() || incomingOrder.getPrice() >= oppositeOrder.getPrice() :
+                            !oppositeOrder.isLimit() || incomingOrder.getPrice() <= oppositeOrder.getPrice();
+                    if (!canExecute) break match;
+
+                    long crossPrice;
+                    if (oppositeOrder.isLimit())
+                        crossPrice = oppositeOrder.getPrice(); // 如果对手是个限价单，让cross价格等于对手价
+                    else if (incomingOrder.isLimit())
+                        crossPrice = incomingOrder.getPrice(); // 如果对手不是进单是限价单，让价格等于进单价
+                    else if (marketPrice > 0) crossPrice = marketPrice; //如果进单和对手都不是限价单，又有市场价，让价格等于市场价
+                    else break; //还没有市场价，这一档市价单都不能交易了
+
+                    var executeQty = Math.min(incomingOrder.getOpenQty(), oppositeOrder.getOpenQty());
+                    incomingOrder.fill(executeQty, now);
+                    oppositeOrder.fill(executeQty, now);
+
+                    marketPrice = crossPrice; // 设置这次成交价格成为市场价
+
+                    listener.onMatched(incomingOrder, oppositeOrder, crossPrice, executeQty);
+                    listener.onLastPriceChanged(crossPrice);
+                    if (metrics != null) metrics.onFill(oppositeOrder.getPrice());
+
+                    // 检查此单成交后的情况
+                    if (oppositeOrder.isFullFilled()) {
+                        level.poll();
+                        orders.remove(oppositeOrder.getId());
+                        owners.remove(oppositeOrder);
+                        listener.onFullFilled(oppositeOrder);
+                        (oppositeOrder.isBuy() ? bidsDepth : asksDepth).onOrderFullFilled(oppositeOrder.getPrice(), executeQty); // 更新深度
+                    } else {
+                        (oppositeOrder.isBuy() ? bidsDepth : asksDepth).onOrderPartialFilled(oppositeOrder.getPrice(), executeQty); // 更新深度
+                    }
                 }
+                if (level.isEmpty()) levels.remove();
             }
 
             // 所有可能成交的交易都结束了（或者就没有交易），但是进单还没吃满，放入仓库
-            if (!incomingOrder.isFullFilled()) {
-                orders.put(incomingOrder.getPrice(), incomingOrder);
-                // 更新深度
-                (incomingOrder.isBuy() ? bidsDepth : asksDepth).onOrderPlaced(incomingOrder.getPrice(), incomingOrder.getOpenQty());
-            }
+            if (!incomingOrder.isFullFilled()) restOrCancel(incomingOrder);
         }
     }
 
+    /**
+     * GTC 订单剩下的部分挂进订单簿，IOC 和 FOK 剩下的部分直接撤掉，不进订单簿也不进深度
+     */
+    private void restOrCancel(Order order) {
+        if (order.getTimeInForce() == TimeInForce.GTC) rest(order);
+        else listener.onCanceled(order);
+    }
+
+    private void rest(Order order) {
+        enqueue(order);
+        // 更新深度
+        (order.isBuy() ? bidsDepth : asksDepth).onOrderPlaced(order.getPrice(), order.getOpenQty());
+    }
+
+    /**
+     * 一次下单或撤单结束，发出合并的深度变化和最优买卖价的变化
+     */
+    private void publishChanges() {
+        bidsDepth.flushChanges();
+        asksDepth.flushChanges();
+        if (bestBidAsk.update(bidsDepth, asksDepth)) {
+            listener.onBestBidAskChanged(bestBidAsk.getBidPrice(), bestBidAsk.getBidQty(), bestBidAsk.getAskPrice(), bestBidAsk.getAskQty());
+        }
+        if (topOfBookSlot != null) topOfBookSlot.publishIfChanged(bidsDepth, asksDepth, marketPrice);
+    }
+
+    private void enqueue(Order order) {
+        (order.isBuy() ? bids : asks).computeIfAbsent(order.getPrice(), price -> new OrderQueue()).add(order);
+        orders.put(order);
+        owners.add(order);
+    }
+
 
     public void cancel(Order order) {
-        final var holds = order.isBuy() ? bids : asks;
-        final var isRemoved = holds.remove(order.getPrice(), order);
-        if (isRemoved) {
+        final OrderBookMetrics metrics = this.metrics;
+        if (metrics == null) {
+            cancelOrder(order);
+        } else {
+            final long start = System.nanoTime();
+            cancelOrder(order);
+            metrics.onCanceled(System.nanoTime() - start);
+        }
+    }
+
+    private void cancelOrder(Order order) {
+        if (removeOrder(order)) publishChanges();
+        else listener.onCancelRejected(order, "order not found");
+    }
+
+    /**
+     * 从订单簿里摘掉一个挂单并更新深度，订单不在订单簿里时返回 false
+     */
+    private boolean removeOrder(Order order) {
+        if (order.isPendingStop()) {
+            if (!(order.isBuy() ? buyStops : sellStops).remove(order)) return false;
+            orders.remove(order.getId());
+            owners.remove(order);
             listener.onCanceled(order);
+            return true;
+        }
+        final var isRemoved = detach(order);
+        if (isRemoved) listener.onCanceled(order);
+        return isRemoved;
+    }
+
+    /**
+     * 把挂单从价格档位、索引和深度里摘掉，不通知监听器
+     */
+    private boolean detach(Order order) {
+        final var isRemoved = unlink(order);
+        if (isRemoved) {
             if (order.isBuy()) {
                 bidsDepth.onOrderCancelled(order.getPrice(), order.getOpenQty());
             } else {
                 asksDepth.onOrderCancelled(order.getPrice(), order.getOpenQty());
             }
+        }
+        return isRemoved;
+    }
+
+    /**
+     * 只从价格档位和索引里摘掉，深度由调用方更新
+     */
+    private boolean unlink(Order order) {
+        final var holds = order.isBuy() ? bids : asks;
+        final var level = holds.get(order.getPrice());
+        final var isRemoved = level != null && level.remove(order);
+        if (isRemoved) {
+            if (level.isEmpty()) holds.remove(order.getPrice());
+            orders.remove(order.getId());
+            owners.remove(order);
+        }
+        return isRemoved;
+    }
+
+    public void amend(long orderId, long price, long qty) {
+        final var order = orders.get(orderId);
+        if (order == null) {
+            listener.onAmendRejected(orderId, "order not found");
+        } else if (price < 0L || qty <= 0L) {
+            listener.onAmendRejected(orderId, "invalid price or qty");
+        } else if (order.isPendingStop()) {
+            order.amend(price, qty, clock.now()); // 还没进订单簿，按止损价排的位置不变
+            listener.onAmended(order);
+        } else if (price == order.getPrice() && qty <= order.getOpenQty()) {
+            // 同价减量：原地修改数量和深度，保持排队位置
+            final long reducedQty = order.getOpenQty() - qty;
+            order.amend(price, qty, clock.now());
+            (order.isBuy() ? bidsDepth : asksDepth).onOrderReduced(price, reducedQty);
+            listener.onAmended(order);
+            publishChanges();
+        } else if (order.isPostOnly() && (price == 0L || (order.isBuy() ? asksDepth : bidsDepth).getExecutableQty(price, marketPrice, 1L) > 0L)) {
+            listener.onAmendRejected(orderId, "post only order would take liquidity");
+        } else {
+            // 改价或者加量：摘下来按新的价格和数量重新撮合，没成交的部分排到新价位的队尾
+            detach(order);
+            order.amend(price, qty, clock.now());
+            listener.onAmended(order);
+            matchOrder(order);
+            triggerStops();
+            publishChanges();
+        }
+    }
+
+
+    public void cancel(long orderId) {
+        final OrderBookMetrics metrics = this.metrics;
+        if (metrics == null) {
+            cancelOrder(orderId);
+        } else {
+            final long start = System.nanoTime();
+            cancelOrder(orderId);
+            metrics.onCanceled(System.nanoTime() - start);
+        }
+    }
+
+    private void cancelOrder(long orderId) {
+        final var order = orders.get(orderId);
+        if (order == null) listener.onCancelRejected(orderId, "order not found");
+        else cancelOrder(order);
+    }
+
+    public int cancelByOwner(long ownerId) {
+        // 同一档位上的订单先累计，最后每个档位只更新一次深度
+        int count = 0;
+        Order order;
+        while ((order = owners.first(ownerId)) != null) {
+            if (order.isPendingStop()) {
+                removeOrder(order);
+            } else {
+                unlink(order);
+                (order.isBuy() ? canceledBids : canceledAsks).add(order.getPrice(), order.getOpenQty());
+                listener.onCanceled(order);
+            }
+            ++count;
+        }
+        canceledBids.applyTo(bidsDepth);
+        canceledAsks.applyTo(asksDepth);
+        publishChanges();
+        return count;
+    }
+
+    public int cancelBySide(boolean isBuy) {
+        final int count = cancelLevels(isBuy ? bids : asks) + cancelStops(isBuy ? buyStops : sellStops);
+        (isBuy ? bidsDepth : asksDepth).clear();
+        publishChanges();
+        return count;
+    }
+
+    public int cancelByPriceRange(boolean isBuy, long fromPrice, long toPrice) {
+        if (fromPrice > toPrice) return 0;
+        int count;
+        if (isBuy) {
+            // 买方的市价单排在最前面，和限价档位不是连续的一段
+            count = fromPrice <= 0L && toPrice >= 0L ? cancelLevels(bids.subMap(0L, true, 0L, true)) : 0;
+            final long lowest = Math.max(fromPrice, 1L);
+            if (lowest <= toPrice) count += cancelLevels(bids.subMap(toPrice, true, lowest, true));
+            bidsDepth.removeLevels(fromPrice, toPrice);
         } else {
-            listener.onCancelRejected(order, "order not found");
+            count = cancelLevels(asks.subMap(fromPrice, true, toPrice, true));
+            asksDepth.removeLevels(fromPrice, toPrice);
+        }
+        publishChanges();
+        return count;
+    }
+
+    /**
+     * 撤掉这些档位上的所有订单并删掉档位，深度由调用方一次删掉
+     */
+    private int cancelLevels(Map<Long, OrderQueue> levels) {
+        int count = 0;
+        for (OrderQueue level : levels.values()) {
+            Order order;
+            while ((order = level.poll()) != null) {
+                orders.remove(order.getId());
+                owners.remove(order);
+                listener.onCanceled(order);
+                ++count;
+            }
         }
+        levels.clear();
+        return count;
+    }
+
+    private int cancelStops(StopIndex stops) {
+        int count = 0;
+        Order order;
+        while ((order = stops.poll()) != null) {
+            orders.remove(order.getId());
+            owners.remove(order);
+            listener.onCanceled(order);
+            ++count;
+        }
+        return count;
+    }
+
+    public int getOrderCount() {
+        return orders.size();
+    }
+
+    public void forEachOrder(Consumer<Order> action) {
+        bids.values().forEach(level -> level.forEach(action));
+        asks.values().forEach(level -> level.forEach(action));
+        buyStops.forEach(action);
+        sellStops.forEach(action);
+    }
+
+    public void restoreOrder(Order order) {
+        if (order.isPendingStop()) addStop(order);
+        else enqueue(order);
+    }
+
+    public void restoreMarketPrice(long marketPrice) {
+        this.marketPrice = marketPrice;
+    }
+
+    public void finishRestore() {
+        publishChanges();
     }
 
     public long getSpread() {
-        final var lowestOrder = asks.values().stream().findFirst().orElse(null);
-        final var highestOrder = bids.values().stream().findFirst().orElse(null);
-        final var lowestAskPrice = lowestOrder == null ? 0L : lowestOrder.getPrice();
-        final var highestBidPrice = highestOrder == null ? 0L : highestOrder.getPrice();
-        return lowestAskPrice - highestBidPrice;
+        return asksDepth.getBestPrice() - bidsDepth.getBestPrice();
     }
 
 
@@ -162,4 +493,15 @@ public final class OrderBookJavaImpl implements OrderBook {
         return asksDepth;
     }
 
+    public void setMetrics(OrderBookMetrics metrics) {
+        this.metrics = metrics;
+        bidsDepth.setMetrics(metrics);
+        asksDepth.setMetrics(metrics);
+    }
+
+    public void setTopOfBookSlot(TopOfBookSlot slot) {
+        this.topOfBookSlot = slot;
+        if (slot != null) slot.publish(bidsDepth, asksDepth, marketPrice);
+    }
+
 }
@@ -0,0 +1,898 @@
+package com.ruislan.korderbook.java;
+
+import com.ruislan.korderbook.Auction;
+import com.ruislan.korderbook.BestBidAsk;
+import com.ruislan.korderbook.CanceledLevels;
+import com.ruislan.korderbook.Depth;
+import com.ruislan.korderbook.EventBatch;
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.OrderBookMetrics;
+import com.ruislan.korderbook.OrderClock;
+import com.ruislan.korderbook.OrderPool;
+import com.ruislan.korderbook.StopIndex;
+import com.ruislan.korderbook.TimeInForce;
+import com.ruislan.korderbook.feed.TopOfBookSlot;
+import com.ruislan.korderbook.snapshot.Snapshotable;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 价格阶梯订单簿
+ * <p>
+ * 在 [minPrice, maxPrice] 的价格带内按最小变动价位（tick）建立数组，数组下标即价格档位，
+ * 每一档是一个先进先出的订单队列；最优买卖价用下标记录，档位清空时向相邻的档位扫描。
+ * 挂单的队列和索引由 RestingOrders 存放：这里是堆上的侵入式队列，订单号索引指向订单本身，按订单号撤单是 O(1)；
+ * OrderBookOffHeapImpl 用同一套撮合代码，把挂单放在堆外。
+ * 价格带之外的限价单会被拒绝。
+ * <p>
+ * 如果给了 OrderPool，订单完全成交或者撤单之后（回调结束后）会被还回池子，下单的路径上不再分配对象。
+ * <p>
+ * 打开批量事件之后，撮合过程中的订单事件先追加到 EventBatch 里，每次下单或撤单结束时通过
+ * onEvents 一次交给监听器，撮合循环里不再调用监听器。
+ * placeAll/cancelAll 把整批订单当成一次操作：深度变化、最优买卖价和批量事件都只在最后发出一次。
+ * <p>
+ * 集合竞价：beginAuction 之后下单只挂单不撮合（订单簿可以是交叉的），uncross 按成交量最大的单一价格
+ * 一次成交所有交叉的订单，然后回到连续撮合。
+ */
+@NotThreadSafe
+public class OrderBookLadderImpl implements OrderBook, Snapshotable {
+    public static final long DEFAULT_MIN_PRICE = 1L;
+    public static final long DEFAULT_MAX_PRICE = 100_000L;
+    public static final long DEFAULT_TICK_SIZE = 1L;
+
+    private final String symbol;
+    private final OrderBookListener listener;
+    private final OrderClock clock;
+    private final OrderPool pool; // 可以为 null，不回收订单
+    private final long minPrice;
+    private final long tickSize;
+    private final int ticks;
+    private final RestingOrders resting; // 下标为价格档位的队列，下标 ticks 是市价单，总是排在限价单前面
+    private final boolean keepsOrders; // 挂单就是调用方的订单对象，离开订单簿时还回池子
+    private final StopIndex buyStops; // 还没触发的止损单
+    private final StopIndex sellStops;
+    private int bestBid; // 最高买价档位，没有买单时为 -1
+    private int bestAsk; // 最低卖价档位，没有卖单时为 ticks
+    private int bidLevels; // 非空的买方档位数
+    private int askLevels; // 非空的卖方档位数
+    private long marketPrice;
+    private long now; // 当前这次下单的时间，一次下单只读一次时钟
+    private final Depth asksDepth;
+    private final Depth bidsDepth;
+    private final BestBidAsk bestBidAsk = new BestBidAsk();
+    private EventBatch events; // 批量事件的缓冲，为 null 时直接回调监听器
+    private Order[] pendingRelease = new Order[16]; // 等这一批事件发出之后才能回收的订单
+    private int pendingReleaseCount;
+    private boolean inBulk; // placeAll/cancelAll 过程中，每一单结束时不发出变化
+    private OrderBookMetrics metrics; // 为 null 时不统计
+    private TopOfBookSlot topOfBookSlot; // 给其它线程读的盘口，为 null 时不发布
+    private boolean inAuction; // 集合竞价阶段，下单只挂单
+    private final Auction auction = new Auction();
+    private final CanceledLevels canceledBids = new CanceledLevels(); // 按用户撤单时按档位累计
+    private final CanceledLevels canceledAsks = new CanceledLevels();
+
+    public OrderBookLadderImpl(String symbol, OrderBookListener listener) {
+        this(symbol, listener, DEFAULT_MIN_PRICE, DEFAULT_MAX_PRICE, DEFAULT_TICK_SIZE);
+    }
+
+    /**
+     * @param minPrice 价格带下限（含），必须大于 0
+     * @param maxPrice 价格带上限（含）
+     * @param tickSize 最小变动价位，限价单的价格必须是 minPrice + n * tickSize
+     */
+    public OrderBookLadderImpl(String symbol, OrderBookListener listener, long minPrice, long maxPrice, long tickSize) {
+        this(symbol, listener, minPrice, maxPrice, tickSize, OrderClock.EPOCH_SECONDS, null);
+    }
+
+    /**
+     * @param clock 订单成交时用来更新 updatedAt 的时钟
+     * @param pool  回收订单的对象池，为 null 时不回收
+     */
+    public OrderBookLadderImpl(String symbol, OrderBookListener listener, long minPrice, long maxPrice, long tickSize,
+                               OrderClock clock, OrderPool pool) {
+        this(symbol, listener, minPrice, maxPrice, tickSize, clock, pool, new HeapRestingOrders(ticks(minPrice, maxPrice, tickSize)));
+    }
+
+    OrderBookLadderImpl(String symbol, OrderBookListener listener, long minPrice, long maxPrice, long tickSize,
+                        OrderClock clock, OrderPool pool, RestingOrders resting) {
+        this.symbol = symbol;
+        this.listener = listener;
+        this.clock = clock;
+        this.pool = pool;
+        this.minPrice = minPrice;
+        this.tickSize = tickSize;
+        this.ticks = ticks(minPrice, maxPrice, tickSize);
+        this.resting = resting;
+        this.keepsOrders = resting.keepsOrders();
+        this.buyStops = new StopIndex(true);
+        this.sellStops = new StopIndex(false);
+        this.bestBid = -1;
+        this.bestAsk = ticks;
+        this.marketPrice = 0L;
+        this.bidsDepth = new Depth(true);
+        this.asksDepth = new Depth(false);
+    }
+
+    /**
+     * 检查价格带，返回档位数
+     */
+    static int ticks(long minPrice, long maxPrice, long tickSize) {
+        if (minPrice <= 0L) throw new IllegalArgumentException("minPrice must be positive");
+        if (tickSize <= 0L) throw new IllegalArgumentException("tickSize must be positive");
+        if (maxPrice < minPrice) throw new IllegalArgumentException("maxPrice must not be less than minPrice");
+        final long levels = (maxPrice - minPrice) / tickSize + 1;
+        if (levels > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("price band is too wide");
+        return (int) levels;
+    }
+
+    /**
+     * 打开或关闭批量事件，只能在撮合线程上调用
+     */
+    public void setEventBatching(boolean enabled) {
+        this.events = enabled ? new EventBatch() : null;
+        resting.setRetainOrders(enabled);
+    }
+
+    public boolean isEventBatching() {
+        return events != null;
+    }
+
+
+    public void open() {
+        // do nothing
+    }
+
+
+    public void close() {
+        cancelAll();
+    }
+
+
+    public int cancelAll() {
+        beginBulk();
+        try {
+            return cancelBySide(true) + cancelBySide(false);
+        } finally {
+            endBulk();
+        }
+    }
+
+
+    public int cancelByOwner(long ownerId) {
+        final boolean nested = inBulk;
+        if (!nested) beginBulk();
+        try {
+            // 同一档位上的订单先累计，最后每个档位只更新一次深度
+            int count = 0;
+            Order order;
+            while ((order = resting.firstOf(ownerId)) != null) {
+                if (order.isPendingStop()) {
+                    (order.isBuy() ? buyStops : sellStops).remove(order);
+                    resting.removeStop(order);
+                    if (events != null) events.addCanceled(order);
+                    else listener.onCanceled(order);
+                    recycle(order);
+                } else {
+                    unlink(order);
+                    (order.isBuy() ? canceledBids : canceledAsks).add(order.getPrice(), order.getOpenQty());
+                    if (events != null) events.addCanceled(order);
+                    else listener.onCanceled(order);
+                    recycleResting(order);
+                }
+                ++count;
+            }
+            canceledBids.applyTo(bidsDepth);
+            canceledAsks.applyTo(asksDepth);
+            return count;
+        } finally {
+            if (!nested) endBulk();
+        }
+    }
+
+
+    public int cancelBySide(boolean isBuy) {
+        int count;
+        if (isBuy) {
+            count = cancelQueue(true, ticks);
+            for (int i = bestBid; bidLevels > 0; i--) {
+                if (!resting.isEmpty(true, i)) {
+                    count += cancelQueue(true, i);
+                    --bidLevels;
+                }
+            }
+            bestBid = -1;
+            count += cancelStops(buyStops);
+            bidsDepth.clear();
+        } else {
+            count = cancelQueue(false, ticks);
+            for (int i = bestAsk; askLevels > 0; i++) {
+                if (!resting.isEmpty(false, i)) {
+                    count += cancelQueue(false, i);
+                    --askLevels;
+                }
+            }
+            bestAsk = ticks;
+            count += cancelStops(sellStops);
+            asksDepth.clear();
+        }
+        if (!inBulk) publishChanges();
+        return count;
+    }
+
+
+    public int cancelByPriceRange(boolean isBuy, long fromPrice, long toPrice) {
+        if (fromPrice > toPrice) return 0;
+        int count = fromPrice <= 0L && toPrice >= 0L ? cancelQueue(isBuy, ticks) : 0;
+        // 价格区间换成档位区间 [low, high]，价格带之外的部分没有挂单；先比较再相减，开放的区间相减会溢出
+        final long offset = fromPrice - minPrice;
+        final int low = fromPrice <= minPrice ? 0 : (int) Math.min(ticks, offset / tickSize + (offset % tickSize == 0L ? 0 : 1));
+        final int high = toPrice < minPrice ? -1 : (int) Math.min(ticks - 1, (toPrice - minPrice) / tickSize);
+        if (isBuy) {
+            for (int i = Math.min(high, bestBid); i >= low && bidLevels > 0; i--) {
+                if (!resting.isEmpty(true, i)) {
+                    count += cancelQueue(true, i);
+                    --bidLevels;
+                }
+            }
+            if (bidLevels == 0) bestBid = -1;
+            else while (resting.isEmpty(true, bestBid)) --bestBid; // 最优价在区间里被撤空了
+            bidsDepth.removeLevels(fromPrice, toPrice);
+        } else {
+            for (int i = Math.max(low, bestAsk); i <= high && askLevels > 0; i++) {
+                if (!resting.isEmpty(false, i)) {
+                    count += cancelQueue(false, i);
+                    --askLevels;
+                }
+            }
+            if (askLevels == 0) bestAsk = ticks;
+            else while (resting.isEmpty(false, bestAsk)) ++bestAsk;
+            asksDepth.removeLevels(fromPrice, toPrice);
+        }
+        if (!inBulk) publishChanges();
+        return count;
+    }
+
+    /**
+     * 撤掉队列里的所有订单，深度由调用方一次删掉
+     */
+    private int cancelQueue(boolean isBuy, int index) {
+        int count = 0;
+        Order order;
+        while ((order = resting.peek(isBuy, index)) != null) {
+            resting.remove(order, index);
+            if (events != null) events.addCanceled(order);
+            else listener.onCanceled(order);
+            recycleResting(order);
+            ++count;
+        }
+        return count;
+    }
+
+
+    private int cancelStops(StopIndex stops) {
+        int count = 0;
+        Order order;
+        while ((order = stops.poll()) != null) {
+            resting.removeStop(order);
+            if (events != null) events.addCanceled(order);
+            else listener.onCanceled(order);
+            recycle(order);
+            ++count;
+        }
+        return count;
+    }
+
+
+    public void placeAll(Order[] orders) {
+        beginBulk();
+        try {
+            for (Order order : orders) place(order);
+        } finally {
+            endBulk();
+        }
+    }
+
+
+    public void cancelAll(long[] orderIds) {
+        beginBulk();
+        try {
+            for (long orderId : orderIds) cancel(orderId);
+        } finally {
+            endBulk();
+        }
+    }
+
+    private void beginBulk() {
+        if (inBulk) throw new IllegalStateException("already in a bulk operation");
+        inBulk = true;
+    }
+
+    private void endBulk() {
+        inBulk = false;
+        publishChanges();
+    }
+
+
+    public void place(Order order) {
+        final OrderBookMetrics metrics = this.metrics;
+        if (metrics == null) {
+            placeOrder(order);
+        } else {
+            final long start = System.nanoTime();
+            placeOrder(order);
+            metrics.onPlaced(System.nanoTime() - start);
+        }
+    }
+
+    private void placeOrder(Order order) {
+        if (order.isFullFilled()) {
+            reject(order, "order is full filled");
+        } else if (order.isLimit() && !inBand(order.getPrice())) {
+            reject(order, "price out of band");
+        } else if (resting.contains(order.getId())) {
+            reject(order, "duplicate order id");
+        } else if (order.isPendingStop()) {
+            if (events != null) events.addAccepted(order);
+            else listener.onAccepted(order);
+            if (metrics != null) metrics.onAccepted();
+            now = clock.now();
+            (order.isBuy() ? buyStops : sellStops).add(order);
+            resting.addStop(order);
+            if (!inAuction) triggerStops(); // 最新价已经穿过止损价的话马上触发
+        } else if (inAuction) {
+            if (order.getTimeInForce() != TimeInForce.GTC || order.isPostOnly()) {
+                reject(order, "only GTC orders are allowed during auction");
+            } else {
+                if (events != null) events.addAccepted(order);
+                else listener.onAccepted(order);
+                if (metrics != null) metrics.onAccepted();
+                now = clock.now();
+                rest(order);
+            }
+        } else {
+            final String reason = checkBeforeMatch(order);
+            if (reason != null) {
+                reject(order, reason);
+            } else {
+                if (events != null) events.addAccepted(order);
+                else listener.onAccepted(order);
+                if (metrics != null) metrics.onAccepted();
+                now = clock.now();
+                matchOrder(order);
+                if (order.isFullFilled()) recycle(order);
+                triggerStops();
+            }
+        }
+        if (!inBulk) publishChanges();
+    }
+
+    /**
+     * post-only 和 FOK 在进入撮合之前的检查，通过时返回 null
+     */
+    private String checkBeforeMatch(Order order) {
+        if (order.isPostOnly() && !order.isLimit()) return "post only order must be limit";
+        if (order.isPostOnly() && executableQty(order, 1L) > 0L) return "post only order would take liquidity";
+        if (order.getTimeInForce() == TimeInForce.FOK && executableQty(order, order.getOpenQty()) < order.getOpenQty())
+            return "fill or kill order cannot be full filled";
+        return null;
+    }
+
+    /**
+     * 最新价穿过止损价的止损单依次进入撮合：先买方后卖方，同一方按止损价从先到后、同价按先来后到。
+     * 它们的成交又会推动最新价，所以一直触发到没有新的止损单为止。
+     * 一次扫单里成交价是单调的，扫单结束后的最新价已经穿过了扫单途中穿过的所有止损价
+     */
+    private void triggerStops() {
+        Order order;
+        while ((order = buyStops.pollTriggered(marketPrice)) != null || (order = sellStops.pollTriggered(marketPrice)) != null) {
+            resting.removeStop(order);
+            if (events != null) events.addTriggered(order);
+            else listener.onTriggered(order);
+            if (checkBeforeMatch(order) != null) { // 触发时已经不满足 post-only 或 FOK 的条件
+                if (events != null) events.addCanceled(order);
+                else listener.onCanceled(order);
+                recycle(order);
+            } else {
+                matchOrder(order);
+                if (order.isFullFilled()) recycle(order);
+            }
+        }
+    }
+
+    /**
+     * 对手方深度上进单马上能成交的数量，累计到 targetQty 为止，被拒绝的 FOK 不会碰到任何订单
+     */
+    private long executableQty(Order order, long targetQty) {
+        return (order.isBuy() ? asksDepth : bidsDepth).getExecutableQty(order.getPrice(), marketPrice, targetQty);
+    }
+
+    private void matchOrder(Order incomingOrder) {
+        final OrderBookMetrics metrics = this.metrics;
+        if (metrics == null) {
+            match(incomingOrder);
+        } else {
+            final long start = System.nanoTime();
+            match(incomingOrder);
+            metrics.onMatchFinished(System.nanoTime() - start);
+        }
+    }
+
+    private void match(Order incomingOrder) {
+        final boolean isBuy = incomingOrder.isBuy();
+
+        // 先和对手方的市价单成交，没有市场价的时候市价对市价不能成交
+        if (!resting.isEmpty(!isBuy, ticks)) {
+            final long crossPrice = incomingOrder.isLimit() ? incomingOrder.getPrice() : marketPrice;
+            if (crossPrice > 0) matchQueue(incomingOrder, ticks, crossPrice);
+        }
+
+        // 再从最优价开始逐档成交，直到价格不合适或者进单被填满
+        if (isBuy) {
+            while (!incomingOrder.isFullFilled() && askLevels > 0) {
+                final long price = priceOf(bestAsk);
+                if (incomingOrder.isLimit() && incomingOrder.getPrice() < price) break;
+                final int index = bestAsk;
+                matchQueue(incomingOrder, index, price);
+                if (resting.isEmpty(false, index)) removeAskLevel(index);
+            }
+        } else {
+            while (!incomingOrder.isFullFilled() && bidLevels > 0) {
+                final long price = priceOf(bestBid);
+                if (incomingOrder.isLimit() && incomingOrder.getPrice() > price) break;
+                final int index = bestBid;
+                matchQueue(incomingOrder, index, price);
+                if (resting.isEmpty(true, index)) removeBidLevel(index);
+            }
+        }
+
+        // 所有可能成交的交易都结束了（或者就没有交易），但是进单还没吃满：GTC 放入仓库，IOC 和 FOK 直接撤掉
+        if (!incomingOrder.isFullFilled()) {
+            if (incomingOrder.getTimeInForce() == TimeInForce.GTC) {
+                rest(incomingOrder);
+            } else {
+                if (events != null) events.addCanceled(incomingOrder);
+                else listener.onCanceled(incomingOrder);
+                recycle(incomingOrder);
+            }
+        }
+    }
+
+    private void matchQueue(Order incomingOrder, int index, long crossPrice) {
+        final RestingOrders resting = this.resting;
+        final boolean oppositeIsBuy = !incomingOrder.isBuy();
+        Order oppositeOrder;
+        while (!incomingOrder.isFullFilled() && (oppositeOrder = resting.peek(oppositeIsBuy, index)) != null) {
+            final long executeQty = Math.min(incomingOrder.getOpenQty(), oppositeOrder.getOpenQty());
+            incomingOrder.fill(executeQty, now);
+            resting.fill(oppositeOrder, executeQty, now);
+
+            marketPrice = crossPrice; // 设置这次成交价格成为市场价
+
+            final var events = this.events;
+            if (events != null) {
+                events.addMatched(incomingOrder, oppositeOrder, crossPrice, executeQty);
+                events.addLastPriceChanged(crossPrice);
+            } else {
+                listener.onMatched(incomingOrder, oppositeOrder, crossPrice, executeQty);
+                listener.onLastPriceChanged(crossPrice);
+            }
+            if (metrics != null) metrics.onFill(oppositeOrder.getPrice());
+
+            final var depth = oppositeOrder.isBuy() ? bidsDepth : asksDepth;
+            if (oppositeOrder.isFullFilled()) {
+                resting.remove(oppositeOrder, index);
+                if (events != null) events.addFullFilled(oppositeOrder);
+                else listener.onFullFilled(oppositeOrder);
+                depth.onOrderFullFilled(oppositeOrder.getPrice(), executeQty); // 更新深度
+                recycleResting(oppositeOrder);
+            } else {
+                depth.onOrderPartialFilled(oppositeOrder.getPrice(), executeQty); // 更新深度
+            }
+        }
+    }
+
+    private void rest(Order order) {
+        enqueue(order);
+        (order.isBuy() ? bidsDepth : asksDepth).onOrderPlaced(order.getPrice(), order.getOpenQty()); // 更新深度
+        if (!keepsOrders) recycle(order); // 挂单已经复制走了
+    }
+
+    /**
+     * 一次下单或撤单结束，依次发出批量的订单事件、合并的深度变化和最优买卖价的变化
+     */
+    private void publishChanges() {
+        if (events != null) dispatchEvents();
+        bidsDepth.flushChanges();
+        asksDepth.flushChanges();
+        if (bestBidAsk.update(bidsDepth, asksDepth)) {
+            listener.onBestBidAskChanged(bestBidAsk.getBidPrice(), bestBidAsk.getBidQty(), bestBidAsk.getAskPrice(), bestBidAsk.getAskQty());
+        }
+        if (topOfBookSlot != null) topOfBookSlot.publishIfChanged(bidsDepth, asksDepth, marketPrice);
+    }
+
+    private void dispatchEvents() {
+        final var events = this.events;
+        try {
+            if (!events.isEmpty()) listener.onEvents(events);
+        } finally {
+            events.clear();
+            resting.releaseRetained();
+            // 回调结束之后才能回收已经完全成交或者撤掉的订单
+            for (int i = 0; i < pendingReleaseCount; i++) {
+                pool.release(pendingRelease[i]);
+                pendingRelease[i] = null;
+            }
+            pendingReleaseCount = 0;
+        }
+    }
+
+    private void reject(Order order, String reason) {
+        if (events != null) events.addRejected(order, reason);
+        else listener.onRejected(order, reason);
+    }
+
+    private void enqueue(Order order) {
+        final int index = order.isLimit() ? indexOf(order.getPrice()) : ticks;
+        if (order.isLimit() && resting.isEmpty(order.isBuy(), index)) {
+            if (order.isBuy()) {
+                ++bidLevels;
+                if (index > bestBid) bestBid = index;
+            } else {
+                ++askLevels;
+                if (index < bestAsk) bestAsk = index;
+            }
+        }
+        resting.add(order, index);
+    }
+
+
+    public void cancel(Order order) {
+        final OrderBookMetrics metrics = this.metrics;
+        if (metrics == null) {
+            cancelOrder(order);
+        } else {
+            final long start = System.nanoTime();
+            cancelOrder(order);
+            metrics.onCanceled(System.nanoTime() - start);
+        }
+    }
+
+    private void cancelOrder(Order order) {
+        final Order removed;
+        if (order.isPendingStop()) {
+            removed = (order.isBuy() ? buyStops : sellStops).remove(order) ? order : null;
+            if (removed != null) resting.removeStop(order);
+        } else {
+            removed = detach(order);
+        }
+
+        if (removed != null) {
+            if (events != null) events.addCanceled(removed);
+            else listener.onCanceled(removed);
+            if (order.isPendingStop()) recycle(order);
+            else recycleResting(removed);
+        } else if (events != null) {
+            events.addCancelRejected(order, "order not found");
+        } else {
+            listener.onCancelRejected(order, "order not found");
+        }
+        if (!inBulk) publishChanges();
+    }
+
+    /**
+     * 把挂单从价格档位、索引和深度里摘掉，不通知监听器
+     *
+     * @return 摘掉的挂单（挂单存放在别处时是视图），订单不在订单簿里时返回 null
+     */
+    private Order detach(Order order) {
+        final Order removed = unlink(order);
+        if (removed != null) (removed.isBuy() ? bidsDepth : asksDepth).onOrderCancelled(removed.getPrice(), removed.getOpenQty());
+        return removed;
+    }
+
+    /**
+     * 只从价格档位和索引里摘掉，深度由调用方更新
+     */
+    private Order unlink(Order order) {
+        final int index;
+        if (!order.isLimit()) index = ticks;
+        else if (inBand(order.getPrice())) index = indexOf(order.getPrice());
+        else return null;
+        final Order removed = resting.remove(order, index);
+        if (removed != null && removed.isLimit()) {
+            final int at = indexOf(removed.getPrice());
+            if (resting.isEmpty(removed.isBuy(), at)) {
+                if (removed.isBuy()) removeBidLevel(at);
+                else removeAskLevel(at);
+            }
+        }
+        return removed;
+    }
+
+
+    public void amend(long orderId, long price, long qty) {
+        final var order = resting.get(orderId);
+        if (order == null) {
+            amendRejected(orderId, "order not found");
+        } else if (price < 0L || qty <= 0L) {
+            amendRejected(orderId, "invalid price or qty");
+        } else if (price > 0L && !inBand(price)) {
+            amendRejected(orderId, "price out of band");
+        } else if (order.isPendingStop()) {
+            order.amend(price, qty, clock.now()); // 还没进订单簿，按止损价排的位置不变
+            amended(order);
+        } else if (price == order.getPrice() && qty <= order.getOpenQty()) {
+            // 同价减量：原地修改数量和深度，保持排队位置
+            final long reducedQty = order.getOpenQty() - qty;
+            resting.amend(order, price, qty, clock.now());
+            (order.isBuy() ? bidsDepth : asksDepth).onOrderReduced(price, reducedQty);
+            amended(order);
+        } else if (order.isPostOnly() && (price == 0L || (order.isBuy() ? asksDepth : bidsDepth).getExecutableQty(price, marketPrice, 1L) > 0L)) {
+            amendRejected(orderId, "post only order would take liquidity");
+        } else {
+            // 改价或者加量：摘下来按新的价格和数量重新撮合，没成交的部分排到新价位的队尾
+            now = clock.now();
+            final Order amending = resting.own(order);
+            detach(order);
+            amending.amend(price, qty, now);
+            amended(amending);
+            if (inAuction) {
+                rest(amending);
+            } else {
+                matchOrder(amending);
+                if (amending.isFullFilled()) recycle(amending);
+                triggerStops();
+            }
+        }
+        if (!inBulk) publishChanges();
+    }
+
+    /**
+     * 进入集合竞价阶段，之后的限价单和市价单只挂单不撮合，IOC、FOK 和 post-only 被拒绝，止损单不触发
+     */
+    public void beginAuction() {
+        inAuction = true;
+    }
+
+    public boolean isInAuction() {
+        return inAuction;
+    }
+
+    /**
+     * 计算现在撮合的话集合竞价的成交价（指示价），不成交
+     *
+     * @return 能成交时返回 true
+     */
+    public boolean computeAuction(Auction result) {
+        return result.compute(bidsDepth, asksDepth, marketPrice);
+    }
+
+    /**
+     * 结束集合竞价：在成交量最大的价格上按价格优先、时间优先一次成交所有交叉的订单，然后回到连续撮合，
+     * 再触发最新价穿过的止损单。成交之后订单簿不再交叉。
+     *
+     * @return 成交的数量
+     */
+    public long uncross() {
+        if (!inAuction) throw new IllegalStateException("not in auction");
+        inAuction = false;
+        long volume = 0L;
+        if (auction.compute(bidsDepth, asksDepth, marketPrice)) {
+            now = clock.now();
+            volume = auction.getVolume();
+            final OrderBookMetrics metrics = this.metrics;
+            if (metrics == null) {
+                executeAuction(auction.getPrice(), volume);
+            } else {
+                // 整个开盘成交算一次撮合
+                final long start = System.nanoTime();
+                executeAuction(auction.getPrice(), volume);
+                metrics.onMatchFinished(System.nanoTime() - start);
+            }
+        }
+        triggerStops();
+        if (!inBulk) publishChanges();
+        return volume;
+    }
+
+    /**
+     * 两边都从最优的订单开始（市价单在最前面），一对一对地成交，直到成交量用完。
+     * 成交量是需求和供给的较小值，较小的一方正好全部成交，另一方不会越过成交价
+     */
+    private void executeAuction(long price, long volume) {
+        marketPrice = price;
+        long remaining = volume;
+        while (remaining > 0L) {
+            final int bidIndex = resting.isEmpty(true, ticks) ? bestBid : ticks;
+            final int askIndex = resting.isEmpty(false, ticks) ? bestAsk : ticks;
+            final Order bid = resting.peek(true, bidIndex);
+            final Order ask = resting.peek(false, askIndex);
+            final long executeQty = Math.min(remaining, Math.min(bid.getOpenQty(), ask.getOpenQty()));
+            resting.fill(bid, executeQty, now);
+            resting.fill(ask, executeQty, now);
+            remaining -= executeQty;
+            if (events != null) events.addMatched(bid, ask, price, executeQty);
+            else listener.onMatched(bid, ask, price, executeQty);
+            if (metrics != null) metrics.onFill(price);
+            auctionFilled(bid, bidIndex, executeQty);
+            auctionFilled(ask, askIndex, executeQty);
+        }
+        if (events != null) events.addLastPriceChanged(price);
+        else listener.onLastPriceChanged(price);
+    }
+
+    private void auctionFilled(Order order, int index, long executeQty) {
+        final var depth = order.isBuy() ? bidsDepth : asksDepth;
+        if (!order.isFullFilled()) {
+            depth.onOrderPartialFilled(order.getPrice(), executeQty);
+            return;
+        }
+        resting.remove(order, index);
+        if (events != null) events.addFullFilled(order);
+        else listener.onFullFilled(order);
+        depth.onOrderFullFilled(order.getPrice(), executeQty);
+        if (order.isLimit() && resting.isEmpty(order.isBuy(), index)) {
+            if (order.isBuy()) removeBidLevel(index);
+            else removeAskLevel(index);
+        }
+        recycleResting(order);
+    }
+
+    private void amended(Order order) {
+        if (events != null) events.addAmended(order);
+        else listener.onAmended(order);
+    }
+
+    private void amendRejected(long orderId, String reason) {
+        if (events != null) events.addAmendRejected(orderId, reason);
+        else listener.onAmendRejected(orderId, reason);
+    }
+
+
+    public void cancel(long orderId) {
+        final OrderBookMetrics metrics = this.metrics;
+        if (metrics == null) {
+            cancelOrder(orderId);
+        } else {
+            final long start = System.nanoTime();
+            cancelOrder(orderId);
+            metrics.onCanceled(System.nanoTime() - start);
+        }
+    }
+
+    private void cancelOrder(long orderId) {
+        final var order = resting.get(orderId);
+        if (order == null) {
+            if (events != null) events.addCancelRejected(orderId, "order not found");
+            else listener.onCancelRejected(orderId, "order not found");
+            if (!inBulk) publishChanges();
+        } else {
+            cancelOrder(order);
+        }
+    }
+
+    /**
+     * 批量事件模式下订单还会出现在没有发出的 EventBatch 里，先记下来，发出之后再回收
+     */
+    private void recycle(Order order) {
+        if (pool == null) return;
+        if (events == null) {
+            pool.release(order);
+            return;
+        }
+        if (pendingReleaseCount == pendingRelease.length) pendingRelease = Arrays.copyOf(pendingRelease, pendingReleaseCount * 2);
+        pendingRelease[pendingReleaseCount++] = order;
+    }
+
+    /**
+     * 离开订单簿的挂单，只有它就是调用方的订单对象时才还回池子
+     */
+    private void recycleResting(Order order) {
+        if (keepsOrders) recycle(order);
+    }
+
+    /**
+     * 档位清空后，如果它是最优价，就向更差的价格方向扫描下一个非空档位
+     */
+    private void removeBidLevel(int index) {
+        if (--bidLevels == 0) {
+            bestBid = -1;
+        } else if (index == bestBid) {
+            do --bestBid; while (resting.isEmpty(true, bestBid));
+        }
+    }
+
+    private void removeAskLevel(int index) {
+        if (--askLevels == 0) {
+            bestAsk = ticks;
+        } else if (index == bestAsk) {
+            do ++bestAsk; while (resting.isEmpty(false, bestAsk));
+        }
+    }
+
+    private boolean inBand(long price) {
+        final long offset = price - minPrice;
+        return offset >= 0 && offset % tickSize == 0 && offset / tickSize < ticks;
+    }
+
+    private int indexOf(long price) {
+        return (int) ((price - minPrice) / tickSize);
+    }
+
+    private long priceOf(int index) {
+        return minPrice + index * tickSize;
+    }
+
+    public int getOrderCount() {
+        return resting.size();
+    }
+
+    public void forEachOrder(Consumer<Order> action) {
+        resting.forEach(true, ticks, action);
+        for (int i = bestBid; i >= 0; i--) resting.forEach(true, i, action);
+        resting.forEach(false, ticks, action);
+        if (askLevels > 0) for (int i = bestAsk; i < ticks; i++) resting.forEach(false, i, action);
+        buyStops.forEach(action);
+        sellStops.forEach(action);
+    }
+
+    public void restoreOrder(Order order) {
+        if (order.isLimit() && !inBand(order.getPrice())) throw new IllegalArgumentException("price out of band");
+        if (order.isPendingStop()) {
+            (order.isBuy() ? buyStops : sellStops).add(order);
+            resting.addStop(order);
+        } else {
+            enqueue(order);
+        }
+    }
+
+    public void restoreMarketPrice(long marketPrice) {
+        this.marketPrice = marketPrice;
+    }
+
+    public void finishRestore() {
+        publishChanges();
+    }
+
+    public long getSpread() {
+        final long lowestAskPrice = askLevels > 0 ? priceOf(bestAsk) : 0L;
+        final long highestBidPrice = bidLevels > 0 ? priceOf(bestBid) : 0L;
+        return lowestAskPrice - highestBidPrice;
+    }
+
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+
+    public long getMarketPrice() {
+        return marketPrice;
+    }
+
+
+    public Depth getBidsDepth() {
+        return bidsDepth;
+    }
+
+
+    public Depth getAsksDepth() {
+        return asksDepth;
+    }
+
+    public void setMetrics(OrderBookMetrics metrics) {
+        this.metrics = metrics;
+        bidsDepth.setMetrics(metrics);
+        asksDepth.setMetrics(metrics);
+    }
+
+    public void setTopOfBookSlot(TopOfBookSlot slot) {
+        this.topOfBookSlot = slot;
+        if (slot != null) slot.publish(bidsDepth, asksDepth, marketPrice);
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.ruislan.korderbook.java;
+
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.OrderClock;
+import com.ruislan.korderbook.OrderPool;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 挂单放在堆外的价格阶梯订单簿，给挂单量很大（百万到千万级）的订单簿使用
+ * <p>
+ * 撮合、撤单、改单、集合竞价、批量事件和 OrderPool 都是 OrderBookLadderImpl 的同一份代码，区别只在挂单怎么存放：
+ * 进单没有成交完的部分被复制到 OffHeapOrderStore 的一个槽位里，价格队列、订单号索引和用户链表都只记槽位号，
+ * 都是原始类型数组，堆的大小和 GC 的扫描量不再随挂单数增长。
+ * <p>
+ * 回调里的挂单（成交的对手方、撤单、改单）是反复使用的 Order 视图，只在回调期间有效，需要保留请复制字段；
+ * 打开批量事件时每个事件拿到的是复制出来的 Order，它们在这一批事件发出之后会被下一批复用，
+ * 同样不能在 onEvents 之外保留。
+ * 调用方手里的 Order 在挂进订单簿之后不会再随成交和改单更新，挂单的状态请通过回调或 forEachOrder 读取；
+ * 给了 OrderPool 的话，挂进订单簿的订单在回调结束后就还回池子。
+ * 还没触发的止损单仍然是堆上的 Order，另外占一个槽位挂在用户链表上。
+ */
+@NotThreadSafe
+public final class OrderBookOffHeapImpl extends OrderBookLadderImpl {
+    private static final int DEFAULT_EXPECTED_ORDERS = 1024;
+
+    private final OffHeapRestingOrders resting;
+
+    public OrderBookOffHeapImpl(String symbol, OrderBookListener listener) {
+        this(symbol, listener, DEFAULT_MIN_PRICE, DEFAULT_MAX_PRICE, DEFAULT_TICK_SIZE);
+    }
+
+    public OrderBookOffHeapImpl(String symbol, OrderBookListener listener, long minPrice, long maxPrice, long tickSize) {
+        this(symbol, listener, minPrice, maxPrice, tickSize, OrderClock.EPOCH_SECONDS, null, DEFAULT_EXPECTED_ORDERS);
+    }
+
+    /**
+     * @param pool           回收订单的对象池，为 null 时不回收
+     * @param expectedOrders 预计的挂单数，用来预先分配订单号索引，避免扩容时的停顿
+     */
+    public OrderBookOffHeapImpl(String symbol, OrderBookListener listener, long minPrice, long maxPrice, long tickSize,
+                                OrderClock clock, OrderPool pool, int expectedOrders) {
+        this(symbol, listener, minPrice, maxPrice, tickSize, clock, pool,
+                new OffHeapRestingOrders(minPrice, tickSize, ticks(minPrice, maxPrice, tickSize), pool, expectedOrders));
+    }
+
+    private OrderBookOffHeapImpl(String symbol, OrderBookListener listener, long minPrice, long maxPrice, long tickSize,
+                                 OrderClock clock, OrderPool pool, OffHeapRestingOrders resting) {
+        super(symbol, listener, minPrice, maxPrice, tickSize, clock, pool, resting);
+        this.resting = resting;
+    }
+
+    /**
+     * 挂单占用的堆外内存字节数，按块申请，只增不减
+     */
+    public long getOffHeapBytes() {
+        return resting.getAllocatedBytes();
+    }
+}
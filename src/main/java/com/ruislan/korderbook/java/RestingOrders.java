@@ -0,0 +1,90 @@
+package com.ruislan.korderbook.java;
+
+import com.ruislan.korderbook.Order;
+
+import java.util.function.Consumer;
+
+/**
+ * 价格阶梯订单簿里挂单的存放方式
+ * <p>
+ * 每个价格档位一个先进先出的队列（下标 ticks 是市价单的队列），加上订单号索引和用户索引；
+ * 还没触发的止损单不在队列里（它们在 StopIndex 里），但也在两个索引里。
+ * 最优价、档位数和深度都由 OrderBookLadderImpl 维护，这里只管队列和索引。
+ * <p>
+ * 挂单可以是调用方的 Order 本身（keepsOrders 为 true），也可以复制到别的地方存放，
+ * 这时返回的 Order 是视图，只在同一类的下一次读取之前有效，成交和改单要通过 fill 和 amend 写回。
+ */
+interface RestingOrders {
+    /**
+     * 挂单就是调用方的 Order 对象，离开订单簿时可以还回 OrderPool
+     */
+    boolean keepsOrders();
+
+    /**
+     * 打开批量事件时返回的订单要一直有效到这一批事件发出之后
+     */
+    void setRetainOrders(boolean retain);
+
+    /**
+     * 一批事件发出之后调用，这一批里返回的订单可以复用了
+     */
+    void releaseRetained();
+
+    boolean isEmpty(boolean isBuy, int index);
+
+    /**
+     * @return 队头的挂单，队列是空的时返回 null
+     */
+    Order peek(boolean isBuy, int index);
+
+    /**
+     * 把订单挂到第 index 档的队尾，并加入两个索引
+     */
+    void add(Order order, int index);
+
+    /**
+     * 从队列和两个索引里摘掉挂单
+     *
+     * @param index 按 order 的价格算出的档位，按订单号存放的实现以自己存的价格为准
+     * @return 摘掉的挂单，订单不在队列里时返回 null
+     */
+    Order remove(Order order, int index);
+
+    void fill(Order order, long qty, long now);
+
+    /**
+     * 原地改单，排队位置不变
+     */
+    void amend(Order order, long price, long qty, long now);
+
+    /**
+     * 改价之前把挂单换成一个可以重新撮合、重新挂单的 Order
+     */
+    Order own(Order order);
+
+    void addStop(Order order);
+
+    void removeStop(Order order);
+
+    /**
+     * @return 挂单或者还没触发的止损单，没有时返回 null
+     */
+    Order get(long orderId);
+
+    boolean contains(long orderId);
+
+    /**
+     * @return 这个用户最近加入的挂单或者止损单，没有时返回 null
+     */
+    Order firstOf(long ownerId);
+
+    /**
+     * 挂单和还没触发的止损单的总数
+     */
+    int size();
+
+    /**
+     * 从队头到队尾遍历，遍历时不能修改队列
+     */
+    void forEach(boolean isBuy, int index, Consumer<Order> action);
+}
@@ -0,0 +1,19 @@
+package com.ruislan.korderbook.journal;
+
+/**
+ * 日志刷盘策略
+ */
+public enum FsyncPolicy {
+    /**
+     * 不主动刷盘，由操作系统回写脏页；进程崩溃不丢数据，机器掉电可能丢失最近的命令
+     */
+    ASYNC,
+    /**
+     * 每写 batchSize 条命令刷一次盘
+     */
+    BATCH,
+    /**
+     * 每条命令都刷盘，最安全也最慢
+     */
+    SYNC
+}
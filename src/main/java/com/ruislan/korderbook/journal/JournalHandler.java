@@ -0,0 +1,29 @@
+package com.ruislan.korderbook.journal;
+
+import com.ruislan.korderbook.TimeInForce;
+
+/**
+ * 重放日志时按写入顺序收到的命令
+ */
+public interface JournalHandler {
+    /**
+     * @param createdAt 下单时订单的创建时间，重放时原样使用，重放的事件和快照才和原来一致
+     */
+    void onPlace(long orderId, long ownerId, boolean isBuy, long price, long qty, long stopPrice, TimeInForce timeInForce, boolean postOnly, long createdAt);
+
+    void onCancel(long orderId);
+
+    void onAmend(long orderId, long price, long qty);
+
+    void onClose();
+
+    void onCancelByOwner(long ownerId);
+
+    void onCancelByPriceRange(boolean isBuy, long fromPrice, long toPrice);
+
+    void onCancelBySide(boolean isBuy);
+
+    void onBeginAuction();
+
+    void onUncross();
+}
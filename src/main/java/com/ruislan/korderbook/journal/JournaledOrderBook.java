@@ -0,0 +1,213 @@
+package com.ruislan.korderbook.journal;
+
+import com.ruislan.korderbook.Auction;
+import com.ruislan.korderbook.Depth;
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+import com.ruislan.korderbook.OrderBookMetrics;
+import com.ruislan.korderbook.TimeInForce;
+import com.ruislan.korderbook.feed.TopOfBookSlot;
+import com.ruislan.korderbook.snapshot.SnapshotReader;
+import com.ruislan.korderbook.snapshot.SnapshotWriter;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 带命令日志的订单簿
+ * <p>
+ * 每条下单、撤单、改单、批量撤单、集合竞价和关闭命令先写日志再交给被包装的订单簿执行（write-ahead）；
+ * open() 时按顺序重放日志里的所有命令重建订单簿。撮合是确定性的，所以重放之后的状态和崩溃前一样，
+ * 重放过程中被包装订单簿的监听器也会收到所有的事件。
+ * <p>
+ * 如果指定了快照文件，open() 会先加载快照，再只重放快照之后的日志；snapshot() 在撮合线程上调用，生成新的快照。
+ * 日志文件由调用方打开和关闭。
+ */
+@NotThreadSafe
+public final class JournaledOrderBook implements OrderBook, JournalHandler {
+    private final OrderBook delegate;
+    private final OrderJournal journal;
+    private final Path snapshotFile;
+
+    public JournaledOrderBook(OrderBook delegate, OrderJournal journal) {
+        this(delegate, journal, null);
+    }
+
+    /**
+     * @param snapshotFile 快照文件，被包装的订单簿必须实现 Snapshotable
+     */
+    public JournaledOrderBook(OrderBook delegate, OrderJournal journal, Path snapshotFile) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.snapshotFile = snapshotFile;
+    }
+
+    public void open() {
+        delegate.open();
+        long from = journal.getStartPosition();
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            try {
+                from = SnapshotReader.restore(snapshotFile, delegate);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        journal.replay(from, this);
+    }
+
+    /**
+     * 给当前状态做一个快照，记录当前的日志位置
+     *
+     * @return 快照文件写完时完成
+     */
+    public CompletableFuture<Void> snapshot(SnapshotWriter writer) {
+        if (snapshotFile == null) throw new IllegalStateException("no snapshot file");
+        return writer.write(delegate, journal.getPosition(), snapshotFile);
+    }
+
+    public void close() {
+        journal.appendClose();
+        delegate.close();
+    }
+
+    public void place(Order order) {
+        journal.appendPlace(order);
+        delegate.place(order);
+    }
+
+    public void cancel(Order order) {
+        journal.appendCancel(order.getId());
+        delegate.cancel(order);
+    }
+
+    public void cancel(long orderId) {
+        journal.appendCancel(orderId);
+        delegate.cancel(orderId);
+    }
+
+    public void amend(long orderId, long price, long qty) {
+        journal.appendAmend(orderId, price, qty);
+        delegate.amend(orderId, price, qty);
+    }
+
+    public int cancelByOwner(long ownerId) {
+        journal.appendCancelByOwner(ownerId);
+        return delegate.cancelByOwner(ownerId);
+    }
+
+    public int cancelBySide(boolean isBuy) {
+        // 按一方撤单还会撤掉未触发的止损单，不能记成覆盖所有价格的价格区间撤单
+        journal.appendCancelBySide(isBuy);
+        return delegate.cancelBySide(isBuy);
+    }
+
+    public int cancelByPriceRange(boolean isBuy, long fromPrice, long toPrice) {
+        journal.appendCancelByPriceRange(isBuy, fromPrice, toPrice);
+        return delegate.cancelByPriceRange(isBuy, fromPrice, toPrice);
+    }
+
+    public void beginAuction() {
+        // 先执行再写日志：不支持集合竞价的订单簿会抛异常，这条命令不能留在日志里；开始竞价不产生事件，之后的命令都记在它后面
+        delegate.beginAuction();
+        journal.appendBeginAuction();
+    }
+
+    public boolean isInAuction() {
+        return delegate.isInAuction();
+    }
+
+    public boolean computeAuction(Auction result) {
+        return delegate.computeAuction(result);
+    }
+
+    public long uncross() {
+        if (!delegate.isInAuction()) throw new IllegalStateException("not in auction");
+        journal.appendUncross();
+        return delegate.uncross();
+    }
+
+    @Override
+    public void onPlace(long orderId, long ownerId, boolean isBuy, long price, long qty, long stopPrice, TimeInForce timeInForce, boolean postOnly, long createdAt) {
+        delegate.place(new Order(orderId, ownerId, isBuy, price, qty, stopPrice, timeInForce, postOnly, createdAt));
+    }
+
+    @Override
+    public void onCancel(long orderId) {
+        delegate.cancel(orderId);
+    }
+
+    @Override
+    public void onAmend(long orderId, long price, long qty) {
+        delegate.amend(orderId, price, qty);
+    }
+
+    @Override
+    public void onClose() {
+        delegate.close();
+    }
+
+    @Override
+    public void onCancelByOwner(long ownerId) {
+        delegate.cancelByOwner(ownerId);
+    }
+
+    @Override
+    public void onCancelByPriceRange(boolean isBuy, long fromPrice, long toPrice) {
+        delegate.cancelByPriceRange(isBuy, fromPrice, toPrice);
+    }
+
+    @Override
+    public void onCancelBySide(boolean isBuy) {
+        delegate.cancelBySide(isBuy);
+    }
+
+    @Override
+    public void onBeginAuction() {
+        delegate.beginAuction();
+    }
+
+    @Override
+    public void onUncross() {
+        delegate.uncross();
+    }
+
+    public String getSymbol() {
+        return delegate.getSymbol();
+    }
+
+    public long getSpread() {
+        return delegate.getSpread();
+    }
+
+    public long getMarketPrice() {
+        return delegate.getMarketPrice();
+    }
+
+    public Depth getBidsDepth() {
+        return delegate.getBidsDepth();
+    }
+
+    public Depth getAsksDepth() {
+        return delegate.getAsksDepth();
+    }
+
+    public void setMetrics(OrderBookMetrics metrics) {
+        delegate.setMetrics(metrics);
+    }
+
+    public void setTopOfBookSlot(TopOfBookSlot slot) {
+        delegate.setTopOfBookSlot(slot);
+    }
+
+    public OrderJournal getJournal() {
+        return journal;
+    }
+
+    public OrderBook getDelegate() {
+        return delegate;
+    }
+}
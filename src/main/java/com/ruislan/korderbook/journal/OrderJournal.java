@@ -0,0 +1,284 @@
+package com.ruislan.korderbook.journal;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.TimeInForce;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 内存映射的命令日志（write-ahead log）
+ * <p>
+ * 文件按 segmentSize 分段映射，文件头之后是一条接一条的记录：[int 长度][byte 类型][内容]。
+ * 长度最后写，读到长度为 0 就是日志的末尾，所以写了一半的记录不会被重放；
+ * 一个分段剩下的空间放不下下一条记录时写一个 PADDING 标记，跳到下一个分段。
+ * 写日志时只往映射的内存里写原始类型，不分配对象。
+ */
+@NotThreadSafe
+public final class OrderJournal implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private static final int MAGIC = 0x4B4F424A; // "KOBJ"
+    private static final int VERSION = 8;
+    private static final int HEADER_SIZE = 8;
+    private static final int PADDING = -1;
+
+    private static final byte PLACE = 1;
+    private static final byte CANCEL = 2;
+    private static final byte CLOSE = 3;
+    private static final byte CANCEL_BY_OWNER = 4;
+    private static final byte CANCEL_BY_PRICE_RANGE = 5;
+    private static final byte AMEND = 6;
+    private static final byte CANCEL_BY_SIDE = 7;
+    private static final byte BEGIN_AUCTION = 8;
+    private static final byte UNCROSS = 9;
+    private static final int POST_ONLY = 0x80; // PLACE 的最后一个字节：低位是有效期的序号，最高位是 post-only
+    private static final int PLACE_LENGTH = 1 + 8 + 8 + 1 + 8 + 8 + 1 + 8 + 8;
+    private static final int CANCEL_LENGTH = 1 + 8;
+    private static final int CLOSE_LENGTH = 1;
+    private static final int CANCEL_BY_OWNER_LENGTH = 1 + 8;
+    private static final int CANCEL_BY_PRICE_RANGE_LENGTH = 1 + 1 + 8 + 8;
+    private static final int AMEND_LENGTH = 1 + 8 + 8 + 8;
+    private static final int CANCEL_BY_SIDE_LENGTH = 1 + 1;
+    private static final int BEGIN_AUCTION_LENGTH = 1;
+    private static final int UNCROSS_LENGTH = 1;
+
+    private static final TimeInForce[] TIME_IN_FORCES = TimeInForce.values();
+
+    private final FileChannel channel;
+    private final FsyncPolicy fsyncPolicy;
+    private final int batchSize;
+    private final int segmentSize;
+    private MappedByteBuffer buffer; // 当前写入的分段
+    private long bufferBase; // 当前分段在文件中的偏移
+    private long position; // 下一条记录在文件中的偏移
+    private int flushedOffset; // 当前分段中已经刷盘的位置
+    private int unflushed; // 还没刷盘的命令数
+
+    public OrderJournal(Path path, FsyncPolicy fsyncPolicy) throws IOException {
+        this(path, fsyncPolicy, DEFAULT_BATCH_SIZE, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * 打开或者创建日志文件，写入位置会放在已有记录的末尾
+     *
+     * @param batchSize   BATCH 策略下每多少条命令刷一次盘
+     * @param segmentSize 每次映射的大小
+     */
+    public OrderJournal(Path path, FsyncPolicy fsyncPolicy, int batchSize, int segmentSize) throws IOException {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be positive");
+        if (segmentSize < HEADER_SIZE + 4 + PLACE_LENGTH + 4) throw new IllegalArgumentException("segmentSize is too small");
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.fsyncPolicy = fsyncPolicy;
+        this.batchSize = batchSize;
+        this.segmentSize = segmentSize;
+
+        final MappedByteBuffer first = map(0L);
+        final int magic = first.getInt(0);
+        if (magic == 0) {
+            first.putInt(4, VERSION);
+            first.putInt(0, MAGIC);
+        } else if (magic != MAGIC || first.getInt(4) != VERSION) {
+            throw new IOException("not a journal file: " + path);
+        }
+        final long end = replay(HEADER_SIZE, null);
+        this.bufferBase = end - end % segmentSize;
+        this.buffer = bufferBase == 0L ? first : map(bufferBase);
+        this.position = end;
+        this.flushedOffset = (int) (end - bufferBase);
+    }
+
+    public void appendPlace(Order order) {
+        final int offset = reserve(PLACE_LENGTH);
+        final MappedByteBuffer buffer = this.buffer;
+        buffer.put(offset + 4, PLACE);
+        buffer.putLong(offset + 5, order.getId());
+        buffer.putLong(offset + 13, order.getOwnerId());
+        buffer.put(offset + 21, (byte) (order.isBuy() ? 1 : 0));
+        buffer.putLong(offset + 22, order.getPrice());
+        buffer.putLong(offset + 30, order.getOpenQty());
+        buffer.put(offset + 38, (byte) (order.getTimeInForce().ordinal() | (order.isPostOnly() ? POST_ONLY : 0)));
+        buffer.putLong(offset + 39, order.getStopPrice());
+        buffer.putLong(offset + 47, order.getCreatedAt());
+        commit(offset, PLACE_LENGTH);
+    }
+
+    public void appendCancel(long orderId) {
+        final int offset = reserve(CANCEL_LENGTH);
+        buffer.put(offset + 4, CANCEL);
+        buffer.putLong(offset + 5, orderId);
+        commit(offset, CANCEL_LENGTH);
+    }
+
+    public void appendClose() {
+        final int offset = reserve(CLOSE_LENGTH);
+        buffer.put(offset + 4, CLOSE);
+        commit(offset, CLOSE_LENGTH);
+    }
+
+    public void appendCancelByOwner(long ownerId) {
+        final int offset = reserve(CANCEL_BY_OWNER_LENGTH);
+        buffer.put(offset + 4, CANCEL_BY_OWNER);
+        buffer.putLong(offset + 5, ownerId);
+        commit(offset, CANCEL_BY_OWNER_LENGTH);
+    }
+
+    public void appendCancelByPriceRange(boolean isBuy, long fromPrice, long toPrice) {
+        final int offset = reserve(CANCEL_BY_PRICE_RANGE_LENGTH);
+        final MappedByteBuffer buffer = this.buffer;
+        buffer.put(offset + 4, CANCEL_BY_PRICE_RANGE);
+        buffer.put(offset + 5, (byte) (isBuy ? 1 : 0));
+        buffer.putLong(offset + 6, fromPrice);
+        buffer.putLong(offset + 14, toPrice);
+        commit(offset, CANCEL_BY_PRICE_RANGE_LENGTH);
+    }
+
+    public void appendCancelBySide(boolean isBuy) {
+        final int offset = reserve(CANCEL_BY_SIDE_LENGTH);
+        buffer.put(offset + 4, CANCEL_BY_SIDE);
+        buffer.put(offset + 5, (byte) (isBuy ? 1 : 0));
+        commit(offset, CANCEL_BY_SIDE_LENGTH);
+    }
+
+    public void appendBeginAuction() {
+        final int offset = reserve(BEGIN_AUCTION_LENGTH);
+        buffer.put(offset + 4, BEGIN_AUCTION);
+        commit(offset, BEGIN_AUCTION_LENGTH);
+    }
+
+    public void appendUncross() {
+        final int offset = reserve(UNCROSS_LENGTH);
+        buffer.put(offset + 4, UNCROSS);
+        commit(offset, UNCROSS_LENGTH);
+    }
+
+    public void appendAmend(long orderId, long price, long qty) {
+        final int offset = reserve(AMEND_LENGTH);
+        final MappedByteBuffer buffer = this.buffer;
+        buffer.put(offset + 4, AMEND);
+        buffer.putLong(offset + 5, orderId);
+        buffer.putLong(offset + 13, price);
+        buffer.putLong(offset + 21, qty);
+        commit(offset, AMEND_LENGTH);
+    }
+
+    /**
+     * 按顺序重放 from 之后的所有记录
+     *
+     * @param from    从哪个位置开始，getStartPosition() 是第一条记录
+     * @param handler 为 null 时只找到日志末尾
+     * @return 日志末尾的位置
+     */
+    public long replay(long from, JournalHandler handler) {
+        long base = from - from % segmentSize;
+        MappedByteBuffer segment = base == bufferBase && buffer != null ? buffer : map(base);
+        long position = from;
+        while (true) {
+            final int offset = (int) (position - base);
+            final int length = offset + 4 > segmentSize ? PADDING : segment.getInt(offset);
+            if (length == 0) return position;
+            if (length == PADDING) {
+                base += segmentSize;
+                segment = map(base);
+                position = base;
+                continue;
+            }
+            if (length < 0 || offset + 4 + length > segmentSize)
+                throw new IllegalStateException("corrupted journal at " + position);
+            if (handler != null) {
+                switch (segment.get(offset + 4)) {
+                    case PLACE -> {
+                        final int flags = segment.get(offset + 38) & 0xFF;
+                        handler.onPlace(segment.getLong(offset + 5), segment.getLong(offset + 13),
+                                segment.get(offset + 21) == 1, segment.getLong(offset + 22), segment.getLong(offset + 30),
+                                segment.getLong(offset + 39), TIME_IN_FORCES[flags & ~POST_ONLY], (flags & POST_ONLY) != 0,
+                                segment.getLong(offset + 47));
+                    }
+                    case CANCEL -> handler.onCancel(segment.getLong(offset + 5));
+                    case CLOSE -> handler.onClose();
+                    case CANCEL_BY_OWNER -> handler.onCancelByOwner(segment.getLong(offset + 5));
+                    case CANCEL_BY_PRICE_RANGE -> handler.onCancelByPriceRange(segment.get(offset + 5) == 1,
+                            segment.getLong(offset + 6), segment.getLong(offset + 14));
+                    case AMEND -> handler.onAmend(segment.getLong(offset + 5), segment.getLong(offset + 13), segment.getLong(offset + 21));
+                    case CANCEL_BY_SIDE -> handler.onCancelBySide(segment.get(offset + 5) == 1);
+                    case BEGIN_AUCTION -> handler.onBeginAuction();
+                    case UNCROSS -> handler.onUncross();
+                    default -> throw new IllegalStateException("corrupted journal at " + position);
+                }
+            }
+            position += 4 + length;
+        }
+    }
+
+    /**
+     * 第一条记录的位置
+     */
+    public long getStartPosition() {
+        return HEADER_SIZE;
+    }
+
+    /**
+     * 下一条记录将要写入的位置
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * 把还没刷盘的记录刷到磁盘
+     */
+    public void flush() {
+        final int offset = (int) (position - bufferBase);
+        if (offset > flushedOffset) buffer.force(flushedOffset, offset - flushedOffset);
+        flushedOffset = offset;
+        unflushed = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private int reserve(int length) {
+        int offset = (int) (position - bufferBase);
+        if (offset + 4 + length + 4 > segmentSize) { // 留 4 个字节给末尾标记
+            buffer.putInt(offset, PADDING);
+            position = bufferBase + offset + 4;
+            if (fsyncPolicy != FsyncPolicy.ASYNC) flush();
+            bufferBase += segmentSize;
+            buffer = map(bufferBase);
+            position = bufferBase;
+            flushedOffset = 0;
+            offset = 0;
+        }
+        return offset;
+    }
+
+    private void commit(int offset, int length) {
+        buffer.putInt(offset, length); // 最后写长度，记录才算完整
+        position += 4 + length;
+        switch (fsyncPolicy) {
+            case SYNC -> flush();
+            case BATCH -> {
+                if (++unflushed >= batchSize) flush();
+            }
+            case ASYNC -> {
+            }
+        }
+    }
+
+    private MappedByteBuffer map(long base) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, base, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
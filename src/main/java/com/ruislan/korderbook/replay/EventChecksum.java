@@ -0,0 +1,98 @@
+package com.ruislan.korderbook.replay;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+
+/**
+ * 把订单簿发出的事件流折叠成一个 64 位校验和，用来比较不同实现或者不同版本的重放结果
+ * <p>
+ * 只看事件的类型、订单号、价格和数量，不看拒绝原因的文字、时间戳和深度变化，
+ * 所以行为一致的实现应该得到同样的校验和。
+ */
+public final class EventChecksum extends OrderBookListener {
+    private static final long SEED = 0xCBF29CE484222325L;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private long checksum = SEED;
+    private long eventCount;
+
+    private void mix(long value) {
+        long h = (checksum ^ value) * MULTIPLIER;
+        checksum = h ^ (h >>> 32);
+    }
+
+    private void event(int type, long value) {
+        ++eventCount;
+        mix(type);
+        mix(value);
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    @Override
+    public void onAccepted(Order order) {
+        event(1, order.getId());
+    }
+
+    @Override
+    public void onRejected(Order order, String reason) {
+        event(2, order.getId());
+    }
+
+    @Override
+    public void onMatched(Order incomingOrder, Order oppositeOrder, long price, long qty) {
+        event(3, incomingOrder.getId());
+        mix(oppositeOrder.getId());
+        mix(price);
+        mix(qty);
+    }
+
+    @Override
+    public void onFullFilled(Order order) {
+        event(4, order.getId());
+    }
+
+    @Override
+    public void onCanceled(Order order) {
+        event(5, order.getId());
+        mix(order.getOpenQty());
+    }
+
+    @Override
+    public void onCancelRejected(Order order, String reason) {
+        event(6, order.getId());
+    }
+
+    @Override
+    public void onCancelRejected(long orderId, String reason) {
+        event(6, orderId);
+    }
+
+    @Override
+    public void onLastPriceChanged(long price) {
+        event(7, price);
+    }
+
+    @Override
+    public void onTriggered(Order order) {
+        event(8, order.getId());
+    }
+
+    @Override
+    public void onAmended(Order order) {
+        event(9, order.getId());
+        mix(order.getPrice());
+        mix(order.getOpenQty());
+    }
+
+    @Override
+    public void onAmendRejected(long orderId, String reason) {
+        event(10, orderId);
+    }
+}
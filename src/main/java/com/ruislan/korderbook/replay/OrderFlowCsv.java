@@ -0,0 +1,80 @@
+package com.ruislan.korderbook.replay;
+
+import com.ruislan.korderbook.TimeInForce;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 把 CSV 格式的订单流转换成订单流文件
+ * <p>
+ * 每行一条命令，逗号分隔，空行、# 开头的注释和 timestamp 开头的表头都会跳过：
+ * <pre>
+ * timestamp,PLACE,orderId,BUY|SELL,price,qty[,ownerId[,GTC|IOC|FOK[,postOnly[,stopPrice]]]]
+ * timestamp,CANCEL,orderId
+ * timestamp,AMEND,orderId,price,qty
+ * </pre>
+ * 市价单的价格写 0，省略的列分别是 0、GTC、false、0。
+ */
+public final class OrderFlowCsv {
+
+    private OrderFlowCsv() {
+    }
+
+    /**
+     * @return 转换的命令数
+     */
+    public static long convert(Path csv, Path target) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             OrderFlowWriter writer = new OrderFlowWriter(target)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("timestamp")) continue;
+                try {
+                    convertLine(line.split(",", -1), writer);
+                } catch (RuntimeException e) {
+                    throw new IOException("bad order flow csv at line " + lineNumber + ": " + line, e);
+                }
+            }
+            return writer.getCommandCount();
+        }
+    }
+
+    private static void convertLine(String[] columns, OrderFlowWriter writer) {
+        final long timestamp = parseLong(columns, 0);
+        final String type = column(columns, 1).toUpperCase();
+        final long orderId = parseLong(columns, 2);
+        switch (type) {
+            case "PLACE" -> {
+                final String side = column(columns, 3).toUpperCase();
+                if (!side.equals("BUY") && !side.equals("SELL")) throw new IllegalArgumentException("unknown side " + side);
+                writer.place(timestamp, orderId,
+                        columns.length > 6 ? parseLong(columns, 6) : 0L,
+                        side.equals("BUY"),
+                        parseLong(columns, 4),
+                        parseLong(columns, 5),
+                        columns.length > 9 ? parseLong(columns, 9) : 0L,
+                        columns.length > 7 ? TimeInForce.valueOf(column(columns, 7).toUpperCase()) : TimeInForce.GTC,
+                        columns.length > 8 && Boolean.parseBoolean(column(columns, 8)));
+            }
+            case "CANCEL" -> writer.cancel(timestamp, orderId);
+            case "AMEND" -> writer.amend(timestamp, orderId, parseLong(columns, 3), parseLong(columns, 4));
+            default -> throw new IllegalArgumentException("unknown command " + type);
+        }
+    }
+
+    private static String column(String[] columns, int index) {
+        if (index >= columns.length) throw new IllegalArgumentException("missing column " + index);
+        return columns[index].strip();
+    }
+
+    private static long parseLong(String[] columns, int index) {
+        return Long.parseLong(column(columns, index));
+    }
+}
@@ -0,0 +1,32 @@
+package com.ruislan.korderbook.replay;
+
+/**
+ * 录制的订单流文件格式
+ * <p>
+ * 文件头：[int magic][int version][long 命令数]；
+ * 然后是一条接一条定长的命令，开头都是 [byte 类型][long 时间戳]：
+ * 下单 [long id][long ownerId][byte 标志：最低位是买卖方向，往上两位是有效期序号，最高位是 post-only][long price][long qty][long stopPrice]；
+ * 撤单 [long id]；改单 [long id][long price][long qty]。
+ * 没有长度前缀和对齐填充，按类型就知道长度，重放时顺序读映射的内存，不分配对象。
+ */
+final class OrderFlowFormat {
+    static final int MAGIC = 0x4B4F4246; // "KOBF"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4 + 8;
+
+    static final byte PLACE = 1;
+    static final byte CANCEL = 2;
+    static final byte AMEND = 3;
+    static final int PLACE_SIZE = 1 + 8 + 8 + 8 + 1 + 8 + 8 + 8;
+    static final int CANCEL_SIZE = 1 + 8 + 8;
+    static final int AMEND_SIZE = 1 + 8 + 8 + 8 + 8;
+    static final int MAX_COMMAND_SIZE = PLACE_SIZE;
+
+    static final int BUY = 0x01;
+    static final int TIME_IN_FORCE_SHIFT = 1;
+    static final int TIME_IN_FORCE_MASK = 0x03;
+    static final int POST_ONLY = 0x80;
+
+    private OrderFlowFormat() {
+    }
+}
@@ -0,0 +1,14 @@
+package com.ruislan.korderbook.replay;
+
+import com.ruislan.korderbook.TimeInForce;
+
+/**
+ * 读订单流时按录制顺序收到的命令，timestamp 是录制时的时间，单位由录制方决定
+ */
+public interface OrderFlowHandler {
+    void onPlace(long timestamp, long orderId, long ownerId, boolean isBuy, long price, long qty, long stopPrice, TimeInForce timeInForce, boolean postOnly);
+
+    void onCancel(long timestamp, long orderId);
+
+    void onAmend(long timestamp, long orderId, long price, long qty);
+}
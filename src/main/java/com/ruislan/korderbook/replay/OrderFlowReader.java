@@ -0,0 +1,109 @@
+package com.ruislan.korderbook.replay;
+
+import com.ruislan.korderbook.TimeInForce;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.ruislan.korderbook.replay.OrderFlowFormat.*;
+
+/**
+ * 内存映射读取订单流文件
+ * <p>
+ * 文件按 WINDOW_SIZE 分段映射，快读到一段的末尾时从当前命令开始重新映射下一段，所以文件可以超过 2G。
+ */
+@NotThreadSafe
+public final class OrderFlowReader implements AutoCloseable {
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final TimeInForce[] TIME_IN_FORCES = TimeInForce.values();
+
+    private final FileChannel channel;
+    private final long size;
+    private final long commandCount;
+    private MappedByteBuffer window;
+    private long windowBase;
+    private long position;
+
+    public OrderFlowReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = map(0L);
+        if (size < HEADER_SIZE || window.getInt(0) != MAGIC || window.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("not an order flow file: " + path);
+        }
+        this.commandCount = window.getLong(8);
+        this.position = HEADER_SIZE;
+    }
+
+    /**
+     * 录制时写入的命令数
+     */
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * 读出下一条命令交给 handler
+     *
+     * @return 已经读到文件末尾时返回 false
+     */
+    public boolean next(OrderFlowHandler handler) {
+        if (position >= size) return false;
+        if (position - windowBase + MAX_COMMAND_SIZE > window.limit() && windowBase + window.limit() < size) {
+            windowBase = position;
+            window = map(position);
+        }
+        final MappedByteBuffer window = this.window;
+        final int offset = (int) (position - windowBase);
+        final long timestamp = window.getLong(offset + 1);
+        switch (window.get(offset)) {
+            case PLACE -> {
+                final int flags = window.get(offset + 25) & 0xFF;
+                handler.onPlace(timestamp, window.getLong(offset + 9), window.getLong(offset + 17), (flags & BUY) != 0,
+                        window.getLong(offset + 26), window.getLong(offset + 34), window.getLong(offset + 42),
+                        TIME_IN_FORCES[flags >>> TIME_IN_FORCE_SHIFT & TIME_IN_FORCE_MASK], (flags & POST_ONLY) != 0);
+                position += PLACE_SIZE;
+            }
+            case CANCEL -> {
+                handler.onCancel(timestamp, window.getLong(offset + 9));
+                position += CANCEL_SIZE;
+            }
+            case AMEND -> {
+                handler.onAmend(timestamp, window.getLong(offset + 9), window.getLong(offset + 17), window.getLong(offset + 25));
+                position += AMEND_SIZE;
+            }
+            default -> throw new IllegalStateException("corrupted order flow at " + position);
+        }
+        return true;
+    }
+
+    /**
+     * 读完剩下的所有命令
+     *
+     * @return 读到的命令数
+     */
+    public long readAll(OrderFlowHandler handler) {
+        long count = 0L;
+        while (next(handler)) ++count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private MappedByteBuffer map(long base) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(WINDOW_SIZE, size - base));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
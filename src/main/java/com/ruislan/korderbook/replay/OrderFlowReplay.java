@@ -0,0 +1,67 @@
+package com.ruislan.korderbook.replay;
+
+import com.ruislan.korderbook.LatencyHistogram;
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.TimeInForce;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * 全速重放订单流：内存映射读取订单流文件，一条接一条地交给订单簿，不按录制的时间戳等待
+ * <p>
+ * 每条命令只给订单簿的那一次调用计时，读文件和创建订单不算在延迟里；总耗时包括全部。
+ * 订单簿的事件流折叠成 {@link EventChecksum}，同一个订单流在不同实现上的校验和应该相同。
+ * 录制的时间戳作为订单的创建时间。
+ */
+@NotThreadSafe
+public final class OrderFlowReplay implements OrderFlowHandler {
+    private final OrderBook book;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private OrderFlowReplay(OrderBook book) {
+        this.book = book;
+    }
+
+    /**
+     * @param factory 用给定的监听器创建一个空的订单簿
+     */
+    public static ReplayReport run(Path file, Function<OrderBookListener, OrderBook> factory) throws IOException {
+        final EventChecksum checksum = new EventChecksum();
+        final OrderBook book = factory.apply(checksum);
+        final OrderFlowReplay replay = new OrderFlowReplay(book);
+        try (OrderFlowReader reader = new OrderFlowReader(file)) {
+            book.open();
+            final long start = System.nanoTime();
+            final long commands = reader.readAll(replay);
+            final long elapsed = System.nanoTime() - start;
+            return new ReplayReport(commands, elapsed, replay.latency, checksum.getChecksum(), checksum.getEventCount());
+        } finally {
+            book.close();
+        }
+    }
+
+    public void onPlace(long timestamp, long orderId, long ownerId, boolean isBuy, long price, long qty, long stopPrice,
+                        TimeInForce timeInForce, boolean postOnly) {
+        final Order order = new Order(orderId, ownerId, isBuy, price, qty, stopPrice, timeInForce, postOnly, timestamp);
+        final long start = System.nanoTime();
+        book.place(order);
+        latency.record(System.nanoTime() - start);
+    }
+
+    public void onCancel(long timestamp, long orderId) {
+        final long start = System.nanoTime();
+        book.cancel(orderId);
+        latency.record(System.nanoTime() - start);
+    }
+
+    public void onAmend(long timestamp, long orderId, long price, long qty) {
+        final long start = System.nanoTime();
+        book.amend(orderId, price, qty);
+        latency.record(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,98 @@
+package com.ruislan.korderbook.replay;
+
+import com.ruislan.korderbook.TimeInForce;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.ruislan.korderbook.replay.OrderFlowFormat.*;
+
+/**
+ * 订单流文件的写入器
+ * <p>
+ * 命令先攒在一块堆外缓冲里，满了再顺序写进文件；关闭时把命令数写回文件头。
+ */
+@NotThreadSafe
+public final class OrderFlowWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long commandCount;
+
+    /**
+     * 创建或者覆盖 path
+     */
+    public OrderFlowWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(0L);
+    }
+
+    public void place(long timestamp, long orderId, long ownerId, boolean isBuy, long price, long qty, long stopPrice,
+                      TimeInForce timeInForce, boolean postOnly) {
+        reserve(PLACE_SIZE);
+        buffer.put(PLACE)
+                .putLong(timestamp)
+                .putLong(orderId)
+                .putLong(ownerId)
+                .put((byte) ((isBuy ? BUY : 0) | timeInForce.ordinal() << TIME_IN_FORCE_SHIFT | (postOnly ? POST_ONLY : 0)))
+                .putLong(price)
+                .putLong(qty)
+                .putLong(stopPrice);
+        ++commandCount;
+    }
+
+    public void cancel(long timestamp, long orderId) {
+        reserve(CANCEL_SIZE);
+        buffer.put(CANCEL)
+                .putLong(timestamp)
+                .putLong(orderId);
+        ++commandCount;
+    }
+
+    public void amend(long timestamp, long orderId, long price, long qty) {
+        reserve(AMEND_SIZE);
+        buffer.put(AMEND)
+                .putLong(timestamp)
+                .putLong(orderId)
+                .putLong(price)
+                .putLong(qty);
+        ++commandCount;
+    }
+
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+            channel.write(ByteBuffer.allocate(8).putLong(0, commandCount), 8L);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void reserve(int size) {
+        if (buffer.remaining() < size) {
+            try {
+                drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,64 @@
+package com.ruislan.korderbook.replay;
+
+import com.ruislan.korderbook.LatencyHistogram;
+
+/**
+ * 一次重放的结果
+ */
+public final class ReplayReport {
+    private final long commandCount;
+    private final long elapsedNanos;
+    private final LatencyHistogram latency;
+    private final long checksum;
+    private final long eventCount;
+
+    ReplayReport(long commandCount, long elapsedNanos, LatencyHistogram latency, long checksum, long eventCount) {
+        this.commandCount = commandCount;
+        this.elapsedNanos = elapsedNanos;
+        this.latency = latency;
+        this.checksum = checksum;
+        this.eventCount = eventCount;
+    }
+
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * 每秒重放的命令数
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0L ? 0.0 : commandCount * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    /**
+     * 每条命令的延迟，单位纳秒
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * 事件流的校验和，见 {@link EventChecksum}
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("commands=%d elapsed=%.3fms throughput=%.0f/s p50=%dns p99=%dns p99.9=%dns p99.99=%dns max=%dns events=%d checksum=%016x",
+                commandCount, elapsedNanos / 1_000_000.0, getThroughput(),
+                latency.getValueAtPercentile(50.0), latency.getValueAtPercentile(99.0),
+                latency.getValueAtPercentile(99.9), latency.getValueAtPercentile(99.99), latency.getMax(),
+                eventCount, checksum);
+    }
+}
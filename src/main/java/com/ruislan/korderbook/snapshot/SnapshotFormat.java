@@ -0,0 +1,21 @@
+package com.ruislan.korderbook.snapshot;
+
+/**
+ * 快照文件格式
+ * <p>
+ * 文件头：[int magic][int version][long 日志位置][long 市场价][byte 是否在集合竞价阶段][int 订单数][int 买方档位数][int 卖方档位数]；
+ * 然后是按优先级排列的订单：[long id][long ownerId][byte isBuy][long price][long originQty][long openQty]
+ * [long stopPrice][byte 有效期序号，最高位是 post-only][long createdAt][long updatedAt]，已经触发的止损单 stopPrice 记为 0；
+ * 最后是买方和卖方的深度档位：[long price][long totalQty][long orderCount]。
+ */
+final class SnapshotFormat {
+    static final int MAGIC = 0x4B4F4253; // "KOBS"
+    static final int VERSION = 4;
+    static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 1 + 4 + 4 + 4;
+    static final int ORDER_SIZE = 8 + 8 + 1 + 8 + 8 + 8 + 8 + 1 + 8 + 8;
+    static final int POST_ONLY = 0x80;
+    static final int LEVEL_SIZE = 8 + 8 + 8;
+
+    private SnapshotFormat() {
+    }
+}
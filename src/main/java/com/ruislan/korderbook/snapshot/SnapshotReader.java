@@ -0,0 +1,68 @@
+package com.ruislan.korderbook.snapshot;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+import com.ruislan.korderbook.TimeInForce;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.ruislan.korderbook.snapshot.SnapshotFormat.*;
+
+/**
+ * 从快照恢复订单簿
+ */
+public final class SnapshotReader {
+
+    private SnapshotReader() {
+    }
+
+    /**
+     * 把快照加载进一个空的订单簿，恢复挂单、深度、市场价和集合竞价状态；
+     * 最后发布一次最优买卖价和盘口，除此之外不会触发监听器
+     *
+     * @param book 实现了 Snapshotable 的空订单簿
+     * @return 快照对应的日志位置，应该从这里开始重放日志
+     */
+    public static long restore(Path file, OrderBook book) throws IOException {
+        if (!(book instanceof Snapshotable snapshotable)) throw new IllegalArgumentException("order book is not snapshotable");
+        if (snapshotable.getOrderCount() != 0) throw new IllegalStateException("order book is not empty");
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                throw new IOException("not a snapshot file: " + file);
+            final long journalPosition = buffer.getLong();
+            final long marketPrice = buffer.getLong();
+            final boolean inAuction = buffer.get() == 1;
+            final int orderCount = buffer.getInt();
+            final int bidLevels = buffer.getInt();
+            final int askLevels = buffer.getInt();
+            if (buffer.remaining() != (long) orderCount * ORDER_SIZE + (long) (bidLevels + askLevels) * LEVEL_SIZE)
+                throw new IOException("truncated snapshot file: " + file);
+
+            final TimeInForce[] timeInForces = TimeInForce.values();
+            for (int i = 0; i < orderCount; i++) {
+                final long id = buffer.getLong();
+                final long ownerId = buffer.getLong();
+                final boolean isBuy = buffer.get() == 1;
+                final long price = buffer.getLong();
+                final long originQty = buffer.getLong();
+                final long openQty = buffer.getLong();
+                final long stopPrice = buffer.getLong();
+                final int flags = buffer.get() & 0xFF;
+                snapshotable.restoreOrder(new Order(id, ownerId, isBuy, price, originQty, openQty, stopPrice,
+                        timeInForces[flags & ~POST_ONLY], (flags & POST_ONLY) != 0, buffer.getLong(), buffer.getLong()));
+            }
+            for (int i = 0; i < bidLevels; i++) book.getBidsDepth().restoreLevel(buffer.getLong(), buffer.getLong(), buffer.getLong());
+            for (int i = 0; i < askLevels; i++) book.getAsksDepth().restoreLevel(buffer.getLong(), buffer.getLong(), buffer.getLong());
+            snapshotable.restoreMarketPrice(marketPrice);
+            if (inAuction) book.beginAuction(); // 在集合竞价阶段做的快照，恢复之后继续只挂单，等 uncross
+            snapshotable.finishRestore();
+            return journalPosition;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.ruislan.korderbook.snapshot;
+
+import com.ruislan.korderbook.DepthLevel;
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.ruislan.korderbook.snapshot.SnapshotFormat.*;
+
+/**
+ * 快照写入器
+ * <p>
+ * write 在撮合线程上调用：把所有挂单、深度档位、市场价和集合竞价状态顺序拷贝进一块堆外内存，
+ * 撮合线程只停顿这一次内存拷贝的时间；写文件、刷盘和原子替换旧快照都在后台的 IO 线程上完成。
+ * 内存会被下一次快照复用，所以上一次快照还没写完时，下一次 write 会先等它写完。
+ * 写失败只通过 write 返回的 future 报告一次，不影响之后的快照和 close。
+ */
+@NotThreadSafe
+public final class SnapshotWriter implements AutoCloseable {
+    private final ExecutorService io;
+    private ByteBuffer buffer;
+    private CompletableFuture<Void> pending; // 上一次写文件，不管成功失败都正常完成
+
+    public SnapshotWriter() {
+        this.io = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.buffer = ByteBuffer.allocateDirect(1 << 20);
+        this.pending = CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @param book            实现了 Snapshotable 的订单簿
+     * @param journalPosition 快照对应的日志位置，恢复时从这里开始重放
+     * @return 快照文件写完时完成
+     */
+    public CompletableFuture<Void> write(OrderBook book, long journalPosition, Path target) {
+        if (!(book instanceof Snapshotable snapshotable)) throw new IllegalArgumentException("order book is not snapshotable");
+        pending.join();
+
+        final var bidsDepth = book.getBidsDepth();
+        final var asksDepth = book.getAsksDepth();
+        final int orderCount = snapshotable.getOrderCount();
+        final long size = HEADER_SIZE + (long) orderCount * ORDER_SIZE + (long) (bidsDepth.size() + asksDepth.size()) * LEVEL_SIZE;
+        if (size > Integer.MAX_VALUE) throw new IllegalStateException("order book is too large for one snapshot");
+        if (buffer.capacity() < size) buffer = ByteBuffer.allocateDirect(Math.max((int) size, (int) Math.min(Integer.MAX_VALUE, buffer.capacity() * 2L)));
+
+        final ByteBuffer buffer = this.buffer;
+        buffer.clear();
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(journalPosition)
+                .putLong(book.getMarketPrice())
+                .put((byte) (book.isInAuction() ? 1 : 0))
+                .putInt(orderCount)
+                .putInt(bidsDepth.size())
+                .putInt(asksDepth.size());
+        snapshotable.forEachOrder(this::putOrder);
+        bidsDepth.forEach(this::putLevel);
+        asksDepth.forEach(this::putLevel);
+        buffer.flip();
+
+        final CompletableFuture<Void> written = CompletableFuture.runAsync(() -> writeFile(buffer, target), io);
+        // 失败已经交给调用方，这里只用来等内存空出来
+        pending = written.handle((ignored, e) -> null);
+        return written;
+    }
+
+    private void putOrder(Order order) {
+        buffer.putLong(order.getId())
+                .putLong(order.getOwnerId())
+                .put((byte) (order.isBuy() ? 1 : 0))
+                .putLong(order.getPrice())
+                .putLong(order.getOriginQty())
+                .putLong(order.getOpenQty())
+                .putLong(order.isPendingStop() ? order.getStopPrice() : 0L) // 触发过的止损单就是普通挂单
+                .put((byte) (order.getTimeInForce().ordinal() | (order.isPostOnly() ? POST_ONLY : 0)))
+                .putLong(order.getCreatedAt())
+                .putLong(order.getUpdatedAt());
+    }
+
+    private void putLevel(DepthLevel level) {
+        buffer.putLong(level.getPrice())
+                .putLong(level.getTotalQty())
+                .putLong(level.getOrderCount());
+    }
+
+    private static void writeFile(ByteBuffer buffer, Path target) {
+        final Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        pending.join();
+        io.shutdown();
+    }
+}
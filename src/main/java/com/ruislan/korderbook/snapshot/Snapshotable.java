@@ -0,0 +1,34 @@
+package com.ruislan.korderbook.snapshot;
+
+import com.ruislan.korderbook.Order;
+
+import java.util.function.Consumer;
+
+/**
+ * 可以做快照的订单簿，这些方法都只能在撮合线程上调用
+ */
+public interface Snapshotable {
+    /**
+     * 挂单总数
+     */
+    int getOrderCount();
+
+    /**
+     * 按优先级顺序遍历所有挂单，先买方后卖方，每一方都是先市价单、再从最优价开始逐档按时间顺序；
+     * 最后是还没触发的止损单，先买方后卖方，按触发顺序
+     */
+    void forEachOrder(Consumer<Order> action);
+
+    /**
+     * 把订单直接挂到它的价格档位的队尾，不撮合、不通知监听器，也不更新深度（深度由快照单独恢复）；
+     * 还没触发的止损单放回等待触发的队列
+     */
+    void restoreOrder(Order order);
+
+    void restoreMarketPrice(long marketPrice);
+
+    /**
+     * 快照加载完之后调用一次，发布最优买卖价和 TopOfBookSlot 的盘口，订阅者不用等到下一次变化；不发出订单和深度事件
+     */
+    void finishRestore();
+}
@@ -1,11 +1,22 @@
 package com.ruislan.korderbook.kotlin
 
-import com.google.common.collect.Multimap
-import com.google.common.collect.MultimapBuilder
+import com.ruislan.korderbook.BestBidAsk
+import com.ruislan.korderbook.CanceledLevels
 import com.ruislan.korderbook.Depth
 import com.ruislan.korderbook.Order
 import com.ruislan.korderbook.OrderBook
 import com.ruislan.korderbook.OrderBookListener
+import com.ruislan.korderbook.OrderBookMetrics
+import com.ruislan.korderbook.OrderClock
+import com.ruislan.korderbook.OrderIndex
+import com.ruislan.korderbook.OrderQueue
+import com.ruislan.korderbook.OwnerIndex
+import com.ruislan.korderbook.StopIndex
+import com.ruislan.korderbook.TimeInForce
+import com.ruislan.korderbook.feed.TopOfBookSlot
+import com.ruislan.korderbook.snapshot.Snapshotable
+import java.util.TreeMap
+import java.util.function.Consumer
 import javax.annotation.concurrent.NotThreadSafe
 import kotlin.math.min
 
@@ -13,29 +24,55 @@ import kotlin.math.min
  * 订货簿
  *
  * 非线程安全
+ *
+ * @param clock 成交和改单时写入订单更新时间的时钟
  */
 @NotThreadSafe
-class OrderBookKotlinImpl(
+class OrderBookKotlinImpl @JvmOverloads constructor(
     private val symbol: String,
-    private val listener: OrderBookListener
-) : OrderBook {
+    private val listener: OrderBookListener,
+    private val clock: OrderClock = OrderClock.EPOCH_SECONDS
+) : OrderBook, Snapshotable {
 
     /**
-     * 订单容器
+     * 订单容器，每个价格一个订单队列
      */
-    private val bids: Multimap<Long, Order> = MultimapBuilder.treeKeys(Comparator<Long> { o1, o2 ->
+    private val bids: TreeMap<Long, OrderQueue> = TreeMap(Comparator<Long> { o1, o2 ->
         if (o1 == 0L && o2 == 0L) return@Comparator 0 // o1, o2都是市价(0)，返回相等（0）
         if (o1 == 0L) return@Comparator -1 // o1是市价(0)，返回o1小于o2（-1），
         if (o2 == 0L) return@Comparator 1 // o2是市价(0)，返回o1大于o2（1）
         compareValues(o2, o1) // o1,o2都不是市价，比较价格
-    }).linkedListValues().build()
-    private val asks: Multimap<Long, Order> = MultimapBuilder.treeKeys().linkedListValues().build()// 自然排序的话市价（0）总会在最前面
+    })
+    private val asks: TreeMap<Long, OrderQueue> = TreeMap() // 自然排序的话市价（0）总会在最前面
+
+    /**
+     * 订单号索引
+     */
+    private val orders: OrderIndex = OrderIndex()
+
+    /**
+     * 用户索引
+     */
+    private val owners: OwnerIndex = OwnerIndex()
+
+    /**
+     * 还没触发的止损单
+     */
+    private val buyStops: StopIndex = StopIndex(true)
+    private val sellStops: StopIndex = StopIndex(false)
 
     /**
      * 深度收集器
      */
     private val asksDepth: Depth = Depth(false)
     private val bidsDepth: Depth = Depth(true)
+    private val bestBidAsk = BestBidAsk()
+
+    /**
+     * 按用户撤单时按档位累计撤掉的数量
+     */
+    private val canceledBids = CanceledLevels()
+    private val canceledAsks = CanceledLevels()
 
     /**
      * 市场价
@@ -45,15 +82,21 @@ class OrderBookKotlinImpl(
      */
     private var marketPrice: Long = 0
 
+    /**
+     * 内置统计，为 null 时不统计
+     */
+    private var metrics: OrderBookMetrics? = null
+
+    /**
+     * 给其它线程读的盘口，为 null 时不发布
+     */
+    private var topOfBookSlot: TopOfBookSlot? = null
+
     override fun open() {
     }
 
     override fun close() {
-        val bidOrders: List<Order> = bids.values().stream().toList()
-        val askOrders: List<Order> = asks.values().stream().toList()
-
-        bidOrders.forEach { order: Order -> this.cancel(order) }
-        askOrders.forEach { order: Order -> this.cancel(order) }
+        cancelAll()
     }
 
     /**
@@ -62,17 +105,223 @@ class OrderBookKotlinImpl(
      * @param order 要取消的订单
      */
     override fun cancel(order: Order) {
-        val holds = if (order.isBuy) bids else asks
-        val isRemoved = holds.remove(order.price, order)
-        if (isRemoved) {
+        val metrics = this.metrics
+        if (metrics == null)
+            cancelOrder(order)
+        else {
+            val start = System.nanoTime()
+            cancelOrder(order)
+            metrics.onCanceled(System.nanoTime() - start)
+        }
+    }
+
+    private fun cancelOrder(order: Order) {
+        if (removeOrder(order))
+            publishChanges()
+        else
+            listener.onCancelRejected(order, "no order found")
+    }
+
+    /**
+     * 从订单簿里摘掉一个挂单并更新深度
+     *
+     * @return 订单不在订单簿里时返回 false
+     */
+    private fun removeOrder(order: Order): Boolean {
+        if (order.isPendingStop) {
+            if (!(if (order.isBuy) buyStops else sellStops).remove(order)) return false
+            orders.remove(order.id)
+            owners.remove(order)
             listener.onCanceled(order)
+            return true
+        }
+        val isRemoved = detach(order)
+        if (isRemoved) listener.onCanceled(order)
+        return isRemoved
+    }
+
+    /**
+     * 把挂单从价格档位、索引和深度里摘掉，不通知监听器
+     */
+    private fun detach(order: Order): Boolean {
+        val isRemoved = unlink(order)
+        if (isRemoved) {
             // 更新深度
             if (order.isBuy)
                 bidsDepth.onOrderCancelled(order.price, order.openQty)
             else
                 asksDepth.onOrderCancelled(order.price, order.openQty)
-        } else
-            listener.onCancelRejected(order, "no order found")
+        }
+        return isRemoved
+    }
+
+    /**
+     * 只从价格档位和索引里摘掉，深度由调用方更新
+     */
+    private fun unlink(order: Order): Boolean {
+        val holds = if (order.isBuy) bids else asks
+        val level = holds[order.price]
+        val isRemoved = level != null && level.remove(order)
+        if (isRemoved) {
+            if (level!!.isEmpty) holds.remove(order.price)
+            orders.remove(order.id)
+            owners.remove(order)
+        }
+        return isRemoved
+    }
+
+    /**
+     * 改单
+     *
+     *
+     * 同价减量原地修改数量和深度，保持排队位置；
+     * 改价或者加量时摘下来按新的价格和数量重新撮合，没成交的部分排到新价位的队尾
+     *
+     * @param qty 新的未成交数量
+     */
+    override fun amend(orderId: Long, price: Long, qty: Long) {
+        val order = orders[orderId]
+        when {
+            order == null -> listener.onAmendRejected(orderId, "order not found")
+            price < 0L || qty <= 0L -> listener.onAmendRejected(orderId, "invalid price or qty")
+            order.isPendingStop -> {
+                order.amend(price, qty, clock.now()) // 还没进订单簿，按止损价排的位置不变
+                listener.onAmended(order)
+            }
+            price == order.price && qty <= order.openQty -> {
+                val reducedQty = order.openQty - qty
+                order.amend(price, qty, clock.now())
+                (if (order.isBuy) bidsDepth else asksDepth).onOrderReduced(price, reducedQty)
+                listener.onAmended(order)
+                publishChanges()
+            }
+            order.isPostOnly && (price == 0L || (if (order.isBuy) asksDepth else bidsDepth).getExecutableQty(price, marketPrice, 1L) > 0L) ->
+                listener.onAmendRejected(orderId, "post only order would take liquidity")
+            else -> {
+                detach(order)
+                order.amend(price, qty, clock.now())
+                listener.onAmended(order)
+                matchOrder(order)
+                triggerStops()
+                publishChanges()
+            }
+        }
+    }
+
+    /**
+     * 撤掉某个用户的全部挂单
+     *
+     * @return 撤掉的订单数
+     */
+    override fun cancelByOwner(ownerId: Long): Int {
+        // 同一档位上的订单先累计，最后每个档位只更新一次深度
+        var count = 0
+        while (true) {
+            val order = owners.first(ownerId) ?: break
+            if (order.isPendingStop) {
+                removeOrder(order)
+            } else {
+                unlink(order)
+                (if (order.isBuy) canceledBids else canceledAsks).add(order.price, order.openQty)
+                listener.onCanceled(order)
+            }
+            count++
+        }
+        canceledBids.applyTo(bidsDepth)
+        canceledAsks.applyTo(asksDepth)
+        publishChanges()
+        return count
+    }
+
+    /**
+     * 撤掉一方的全部挂单
+     *
+     * @return 撤掉的订单数
+     */
+    override fun cancelBySide(isBuy: Boolean): Int {
+        val count = cancelLevels(if (isBuy) bids else asks) + cancelStops(if (isBuy) buyStops else sellStops)
+        (if (isBuy) bidsDepth else asksDepth).clear()
+        publishChanges()
+        return count
+    }
+
+    /**
+     * 撤掉一方价格在 [fromPrice, toPrice] 之间的挂单
+     *
+     * @return 撤掉的订单数
+     */
+    override fun cancelByPriceRange(isBuy: Boolean, fromPrice: Long, toPrice: Long): Int {
+        if (fromPrice > toPrice) return 0
+        var count: Int
+        if (isBuy) {
+            // 买方的市价单排在最前面，和限价档位不是连续的一段
+            count = if (fromPrice <= 0L && toPrice >= 0L) cancelLevels(bids.subMap(0L, true, 0L, true)) else 0
+            val lowest = maxOf(fromPrice, 1L)
+            if (lowest <= toPrice) count += cancelLevels(bids.subMap(toPrice, true, lowest, true))
+            bidsDepth.removeLevels(fromPrice, toPrice)
+        } else {
+            count = cancelLevels(asks.subMap(fromPrice, true, toPrice, true))
+            asksDepth.removeLevels(fromPrice, toPrice)
+        }
+        publishChanges()
+        return count
+    }
+
+    /**
+     * 撤掉这些档位上的所有订单并删掉档位，深度由调用方一次删掉
+     */
+    private fun cancelLevels(levels: MutableMap<Long, OrderQueue>): Int {
+        var count = 0
+        for (level in levels.values) {
+            while (true) {
+                val order = level.poll() ?: break
+                orders.remove(order.id)
+                owners.remove(order)
+                listener.onCanceled(order)
+                count++
+            }
+        }
+        levels.clear()
+        return count
+    }
+
+    /**
+     * 撤掉还没触发的止损单
+     */
+    private fun cancelStops(stops: StopIndex): Int {
+        var count = 0
+        while (true) {
+            val order = stops.poll() ?: break
+            orders.remove(order.id)
+            owners.remove(order)
+            listener.onCanceled(order)
+            count++
+        }
+        return count
+    }
+
+    /**
+     * 按订单号取消订单
+     *
+     * @param orderId 要取消的订单号
+     */
+    override fun cancel(orderId: Long) {
+        val metrics = this.metrics
+        if (metrics == null)
+            cancelOrder(orderId)
+        else {
+            val start = System.nanoTime()
+            cancelOrder(orderId)
+            metrics.onCanceled(System.nanoTime() - start)
+        }
+    }
+
+    private fun cancelOrder(orderId: Long) {
+        val order = orders[orderId]
+        if (order == null)
+            listener.onCancelRejected(orderId, "no order found")
+        else
+            cancelOrder(order)
     }
 
     /**
@@ -86,14 +335,85 @@ class OrderBookKotlinImpl(
      * @param order 订单
      */
     override fun place(order: Order) {
+        val metrics = this.metrics
+        if (metrics == null)
+            placeOrder(order)
+        else {
+            val start = System.nanoTime()
+            placeOrder(order)
+            metrics.onPlaced(System.nanoTime() - start)
+        }
+    }
+
+    private fun placeOrder(order: Order) {
         if (order.isFullFilled)
             listener.onRejected(order, "order is full filled")
-        else {
+        else if (orders.contains(order.id))
+            listener.onRejected(order, "duplicate order id")
+        else if (order.isPendingStop) {
             listener.onAccepted(order)
-            matchOrder(order)
+            metrics?.onAccepted()
+            addStop(order)
+            triggerStops() // 最新价已经穿过止损价的话马上触发
+            publishChanges()
+        } else {
+            val reason = checkBeforeMatch(order)
+            if (reason != null)
+                listener.onRejected(order, reason)
+            else {
+                listener.onAccepted(order)
+                metrics?.onAccepted()
+                matchOrder(order)
+                triggerStops()
+                publishChanges()
+            }
         }
     }
 
+    /**
+     * post-only 和 FOK 在进入撮合之前的检查
+     *
+     * @return 通过时返回 null
+     */
+    private fun checkBeforeMatch(order: Order): String? = when {
+        order.isPostOnly && !order.isLimit -> "post only order must be limit"
+        order.isPostOnly && executableQty(order, 1L) > 0L -> "post only order would take liquidity"
+        order.timeInForce == TimeInForce.FOK && executableQty(order, order.openQty) < order.openQty -> "fill or kill order cannot be full filled"
+        else -> null
+    }
+
+    private fun addStop(order: Order) {
+        (if (order.isBuy) buyStops else sellStops).add(order)
+        orders.put(order)
+        owners.add(order)
+    }
+
+    /**
+     * 触发止损单
+     *
+     *
+     * 最新价穿过止损价的止损单依次进入撮合：先买方后卖方，同一方按止损价从先到后、同价按先来后到。
+     * 它们的成交又会推动最新价，所以一直触发到没有新的止损单为止
+     */
+    private fun triggerStops() {
+        while (true) {
+            val order = buyStops.pollTriggered(marketPrice) ?: sellStops.pollTriggered(marketPrice) ?: break
+            orders.remove(order.id)
+            owners.remove(order)
+            listener.onTriggered(order)
+            if (checkBeforeMatch(order) != null)
+                listener.onCanceled(order) // 触发时已经不满足 post-only 或 FOK 的条件
+            else
+                matchOrder(order)
+        }
+    }
+
+    /**
+     * 对手方深度上进单马上能成交的数量，累计到 targetQty 为止
+     */
+    private fun executableQty(order: Order, targetQty: Long): Long =
+        (if (order.isBuy) asksDepth else bidsDepth).getExecutableQty(order.price, marketPrice, targetQty)
+
     /**
      * 匹配
      *
@@ -101,76 +421,152 @@ class OrderBookKotlinImpl(
      * 这里不用区分市价单还是限价单，因为市价单已经被放在了两边队列的最前方
      */
     private fun matchOrder(incomingOrder: Order) {
+        val metrics = this.metrics
+        if (metrics == null)
+            match(incomingOrder)
+        else {
+            val start = System.nanoTime()
+            match(incomingOrder)
+            metrics.onMatchFinished(System.nanoTime() - start)
+        }
+    }
+
+    private fun match(incomingOrder: Order) {
         val oppositeOrders = if (incomingOrder.isBuy) asks else bids
-        val orders = if (incomingOrder.isBuy) bids else asks
+        val now = clock.now()
 
         // 没有对手方？
-        if (oppositeOrders.isEmpty) {
-            orders.put(incomingOrder.price, incomingOrder)
-            // 更新深度
-            if (incomingOrder.isBuy)
-                bidsDepth.onOrderPlaced(incomingOrder.price, incomingOrder.openQty)
-            else
-                asksDepth.onOrderPlaced(incomingOrder.price, incomingOrder.openQty)
+        if (oppositeOrders.isEmpty()) {
+            restOrCancel(incomingOrder)
         } else {
-            val it = oppositeOrders.values().iterator()
+            val levels = oppositeOrders.values.iterator()
+
+            match@ while (!incomingOrder.isFullFilled && levels.hasNext()) {
+                val level = levels.next()
+                while (!incomingOrder.isFullFilled && !level.isEmpty) {
+                    val oppositeOrder = level.peek()
+                    val canExecute = (incomingOrder.price == oppositeOrder.price || //价格相等肯定可以执行
+                            if (incomingOrder.isBuy)
+                                !incomingOrder.isLimit || incomingOrder.price >= oppositeOrder.price
+                            else
+                                !oppositeOrder.isLimit || incomingOrder.price <= oppositeOrder.price)
 
-            while (!incomingOrder.isFullFilled && it.hasNext()) {
-                val oppositeOrder = it.next()
-                val canExecute = (incomingOrder.price == oppositeOrder.price || //价格相等肯定可以执行
-                        if (incomingOrder.isBuy)
-                            !incomingOrder.isLimit || incomingOrder.price >= oppositeOrder.price
+                    if (!canExecute) break@match
+
+                    val crossPrice =
+                        when {
+                            oppositeOrder.isLimit -> oppositeOrder.price // 如果对手是个限价单，让cross价格等于对手价
+                            incomingOrder.isLimit -> incomingOrder.price // 如果对手不是我方是限价单，让价格等于我方价
+                            marketPrice > 0 -> marketPrice //如果我方和对方都不是限价单，又有市场价，让价格等于市场价
+                            else -> break
+                        } //还没有市场价，这一档市价单都不能交易了
+
+                    val executeQty = min(incomingOrder.openQty, oppositeOrder.openQty)
+                    incomingOrder.fill(executeQty, now)
+                    oppositeOrder.fill(executeQty, now)
+
+                    marketPrice = crossPrice // 设置这次成交价格成为市场价
+
+                    listener.onMatched(incomingOrder, oppositeOrder, crossPrice, executeQty)
+                    listener.onLastPriceChanged(crossPrice)
+                    metrics?.onFill(oppositeOrder.price)
+
+                    if (oppositeOrder.isFullFilled) {
+                        level.poll()
+                        orders.remove(oppositeOrder.id)
+                        owners.remove(oppositeOrder)
+                        listener.onFullFilled(oppositeOrder)
+                        // 更新深度
+                        if (oppositeOrder.isBuy)
+                            bidsDepth.onOrderFullFilled(oppositeOrder.price, executeQty)
+                        else
+                            asksDepth.onOrderFullFilled(oppositeOrder.price, executeQty)
+                    } else {
+                        // 更新深度
+                        if (oppositeOrder.isBuy)
+                            bidsDepth.onOrderPartialFilled(oppositeOrder.price, executeQty)
                         else
-                            !oppositeOrder.isLimit || incomingOrder.price <= oppositeOrder.price)
-
-                if (!canExecute) break
-
-                val crossPrice =
-                    when {
-                        oppositeOrder.isLimit -> oppositeOrder.price // 如果对手是个限价单，让cross价格等于对手价
-                        incomingOrder.isLimit -> incomingOrder.price // 如果对手不是我方是限价单，让价格等于我方价
-                        marketPrice > 0 -> marketPrice //如果我方和对方都不是限价单，又有市场价，让价格等于市场价
-                        else -> continue
-                    } //还没有市场价，这单不能交易了
-
-                val executeQty = min(incomingOrder.openQty, oppositeOrder.openQty)
-                incomingOrder.fill(executeQty)
-                oppositeOrder.fill(executeQty)
-
-                marketPrice = crossPrice // 设置这次成交价格成为市场价
-
-                listener.onMatched(incomingOrder, oppositeOrder, crossPrice, executeQty)
-                listener.onLastPriceChanged(crossPrice)
-
-                if (oppositeOrder.isFullFilled) {
-                    it.remove()
-                    listener.onFullFilled(oppositeOrder)
-                    // 更新深度
-                    if (oppositeOrder.isBuy)
-                        bidsDepth.onOrderFullFilled(oppositeOrder.price, executeQty)
-                    else
-                        asksDepth.onOrderFullFilled(oppositeOrder.price, executeQty)
-                } else {
-                    // 更新深度
-                    if (oppositeOrder.isBuy)
-                        bidsDepth.onOrderPartialFilled(oppositeOrder.price, executeQty)
-                    else
-                        asksDepth.onOrderPartialFilled(oppositeOrder.price, executeQty)
+                            asksDepth.onOrderPartialFilled(oppositeOrder.price, executeQty)
+                    }
                 }
+                if (level.isEmpty) levels.remove()
             }
 
             // 所有可能成交的交易都结束了（或者就没有交易），但是进单还没吃满，放入仓库
-            if (!incomingOrder.isFullFilled) {
-                orders.put(incomingOrder.price, incomingOrder)
-                // 更新深度
-                if (incomingOrder.isBuy)
-                    bidsDepth.onOrderPlaced(incomingOrder.price, incomingOrder.openQty)
-                else
-                    asksDepth.onOrderPlaced(incomingOrder.price, incomingOrder.openQty)
-            }
+            if (!incomingOrder.isFullFilled) restOrCancel(incomingOrder)
         }
     }
 
+    /**
+     * GTC 订单剩下的部分挂进订单簿，IOC 和 FOK 剩下的部分直接撤掉，不进订单簿也不进深度
+     */
+    private fun restOrCancel(order: Order) {
+        if (order.timeInForce == TimeInForce.GTC)
+            rest(order)
+        else
+            listener.onCanceled(order)
+    }
+
+    /**
+     * 挂单
+     */
+    private fun rest(order: Order) {
+        enqueue(order)
+        // 更新深度
+        if (order.isBuy)
+            bidsDepth.onOrderPlaced(order.price, order.openQty)
+        else
+            asksDepth.onOrderPlaced(order.price, order.openQty)
+    }
+
+    /**
+     * 一次下单或撤单结束，发出合并的深度变化和最优买卖价的变化
+     */
+    private fun publishChanges() {
+        bidsDepth.flushChanges()
+        asksDepth.flushChanges()
+        if (bestBidAsk.update(bidsDepth, asksDepth))
+            listener.onBestBidAskChanged(bestBidAsk.bidPrice, bestBidAsk.bidQty, bestBidAsk.askPrice, bestBidAsk.askQty)
+        topOfBookSlot?.publishIfChanged(bidsDepth, asksDepth, marketPrice)
+    }
+
+    private fun enqueue(order: Order) {
+        (if (order.isBuy) bids else asks).getOrPut(order.price) { OrderQueue() }.add(order)
+        orders.put(order)
+        owners.add(order)
+    }
+
+    /**
+     * 挂单总数
+     */
+    override fun getOrderCount(): Int = orders.size()
+
+    /**
+     * 按优先级顺序遍历所有挂单
+     */
+    override fun forEachOrder(action: Consumer<Order>) {
+        bids.values.forEach { it.forEach(action) }
+        asks.values.forEach { it.forEach(action) }
+        buyStops.forEach(action)
+        sellStops.forEach(action)
+    }
+
+    /**
+     * 恢复快照中的挂单，不撮合
+     */
+    override fun restoreOrder(order: Order) = if (order.isPendingStop) addStop(order) else enqueue(order)
+
+    /**
+     * 恢复快照中的市场价
+     */
+    override fun restoreMarketPrice(marketPrice: Long) {
+        this.marketPrice = marketPrice
+    }
+
+    override fun finishRestore() {
+        publishChanges()
+    }
+
     /**
      * 价差
      *
@@ -178,10 +574,7 @@ class OrderBookKotlinImpl(
      * 是最低卖价和最高卖价之间的差额
      */
     override fun getSpread(): Long {
-        val lowestAskPrice = if (asks.isEmpty) 0L else asks.values().first().price
-        val highestBidPrice = if (bids.isEmpty) 0L else bids.values().first().price
-
-        return lowestAskPrice - highestBidPrice
+        return asksDepth.bestPrice - bidsDepth.bestPrice
     }
 
     /**
@@ -212,4 +605,15 @@ class OrderBookKotlinImpl(
      * 卖方深度
      */
     override fun getAsksDepth(): Depth = asksDepth
+
+    override fun setMetrics(metrics: OrderBookMetrics?) {
+        this.metrics = metrics
+        bidsDepth.setMetrics(metrics)
+        asksDepth.setMetrics(metrics)
+    }
+
+    override fun setTopOfBookSlot(slot: TopOfBookSlot?) {
+        this.topOfBookSlot = slot
+        slot?.publish(bidsDepth, asksDepth, marketPrice)
+    }
 }
\ No newline at end of file
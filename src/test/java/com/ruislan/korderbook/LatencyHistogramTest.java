@@ -0,0 +1,38 @@
+package com.ruislan.korderbook;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testPercentiles() {
+        final var histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) histogram.record(i);
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000, histogram.getValueAtPercentile(50.0), 50_000 / 32.0);
+        assertEquals(99_000, histogram.getValueAtPercentile(99.0), 99_000 / 32.0);
+        assertEquals(100_000, histogram.getMax(), 100_000 / 32.0);
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        final var histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getMax(), "没有记录时返回 0");
+        assertEquals(0, histogram.getValueAtPercentile(99.0));
+        for (long i = 0; i < 32; i++) histogram.record(i);
+        assertEquals(31, histogram.getMax(), "小于 32 的值每个值一个桶");
+        assertEquals(15, histogram.getValueAtPercentile(50.0));
+    }
+
+    @Test
+    void testOutOfRangeValues() {
+        final var histogram = new LatencyHistogram();
+        histogram.record(-1L);
+        histogram.record(Long.MAX_VALUE); // 记在最后一个桶里
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50.0));
+        assertEquals((1L << 40) - 1L, histogram.getMax(), ((1L << 40) - 1L) / 32.0);
+    }
+}
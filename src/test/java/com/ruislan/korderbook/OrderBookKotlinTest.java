@@ -0,0 +1,11 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.kotlin.OrderBookKotlinImpl;
+
+class OrderBookKotlinTest extends OrderBookTest {
+
+    @Override
+    protected OrderBook createOrderBook(String symbol, OrderBookListener listener, OrderClock clock) {
+        return new OrderBookKotlinImpl(symbol, listener, clock);
+    }
+}
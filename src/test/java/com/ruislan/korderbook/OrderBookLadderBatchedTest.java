@@ -0,0 +1,195 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 打开批量事件后，基类的用例通过 onEvents 的默认实现走一遍原来的单个回调
+ */
+class OrderBookLadderBatchedTest extends OrderBookTest {
+    private final List<Integer> batchSizes = new ArrayList<>();
+    private int bestBidAskChanges;
+
+    @Override
+    protected OrderBook createOrderBook(String symbol, OrderBookListener listener, OrderClock clock) {
+        final var book = new OrderBookLadderImpl(symbol, listener, 1L, 1_000L, 1L, clock, null);
+        book.setEventBatching(true);
+        return book;
+    }
+
+    @Override
+    public void onEvents(EventBatch events) {
+        batchSizes.add(events.size());
+        super.onEvents(events);
+    }
+
+    @Override
+    public void onBestBidAskChanged(long bidPrice, long bidQty, long askPrice, long askQty) {
+        ++bestBidAskChanges;
+        super.onBestBidAskChanged(bidPrice, bidQty, askPrice, askQty);
+    }
+
+    @Test
+    void testSweepIsOneBatch() {
+        orderBook.place(orderGenerator.nextOrder(false, 10L, 10L));
+        orderBook.place(orderGenerator.nextOrder(false, 11L, 10L));
+        orderBook.place(orderGenerator.nextOrder(false, 12L, 10L));
+        batchSizes.clear();
+
+        orderBook.place(orderGenerator.nextOrder(true, 12L, 30L));
+        // 1 个 ACCEPTED，3 组 MATCHED + LAST_PRICE_CHANGED + FULL_FILLED
+        assertEquals(List.of(10), batchSizes);
+    }
+
+    @Test
+    void testPlaceAllIsOneBatch() {
+        orderBook.placeAll(new Order[]{
+                orderGenerator.nextOrder(false, 10L, 10L),
+                orderGenerator.nextOrder(false, 11L, 10L),
+                orderGenerator.nextOrder(true, 11L, 15L),
+        });
+        // 3 个 ACCEPTED，2 组 MATCHED + LAST_PRICE_CHANGED，10 元卖单 FULL_FILLED
+        assertEquals(List.of(8), batchSizes);
+        assertEquals(1, bestBidAskChanges, "整批结束时最优价只通知一次");
+    }
+
+    @Test
+    void testBatchedCallbacksSeeEventTimeState() {
+        final var unbatched = new Recorder();
+        final var batched = new Recorder();
+        final var clock1 = new AtomicLong();
+        final var clock2 = new AtomicLong();
+        final var book1 = new OrderBookLadderImpl("events", unbatched, 1L, 1_000L, 1L, clock1::incrementAndGet, null);
+        final var book2 = new OrderBookLadderImpl("events", batched, 1L, 1_000L, 1L, clock2::incrementAndGet, null);
+        book2.setEventBatching(true);
+
+        // 扫单、部分成交、IOC、止损单、改单和撤单混在一起，单个回调看到的订单状态应该完全一样
+        final var random = new Random(11L);
+        for (long id = 1; id <= 2_000; id++) {
+            final boolean isBuy = random.nextBoolean();
+            final long price = 90L + random.nextInt(21);
+            final long qty = 1L + random.nextInt(100);
+            final int kind = random.nextInt(10);
+            if (kind < 6) {
+                book1.place(new Order(id, isBuy, price, qty, 0L));
+                book2.place(new Order(id, isBuy, price, qty, 0L));
+            } else if (kind == 6) {
+                final long stopPrice = isBuy ? price + 3L : price - 3L;
+                book1.place(new Order(id, 0L, isBuy, price, qty, stopPrice, TimeInForce.GTC, false, 0L));
+                book2.place(new Order(id, 0L, isBuy, price, qty, stopPrice, TimeInForce.GTC, false, 0L));
+            } else if (kind == 7) {
+                book1.place(new Order(id, 0L, isBuy, price, qty, TimeInForce.IOC, false, 0L));
+                book2.place(new Order(id, 0L, isBuy, price, qty, TimeInForce.IOC, false, 0L));
+            } else if (kind == 8) {
+                final long target = 1L + random.nextInt((int) id);
+                book1.amend(target, price, qty);
+                book2.amend(target, price, qty);
+            } else {
+                final long target = 1L + random.nextInt((int) id);
+                book1.cancel(target);
+                book2.cancel(target);
+            }
+        }
+        assertTrue(unbatched.events.size() > 2_000);
+        assertEquals(unbatched.events, batched.events);
+    }
+
+    @Test
+    void testPlaceAllCallbacksSeeCounterOrderState() {
+        final var unbatched = new Recorder();
+        final var batched = new Recorder();
+        final var clock1 = new AtomicLong();
+        final var clock2 = new AtomicLong();
+        final var book1 = new OrderBookLadderImpl("events", unbatched, 1L, 1_000L, 1L, clock1::incrementAndGet, null);
+        final var book2 = new OrderBookLadderImpl("events", batched, 1L, 1_000L, 1L, clock2::incrementAndGet, null);
+        book2.setEventBatching(true);
+
+        // 同一批里对手单被成交了好几次，每次成交的更新时间都不一样
+        book1.place(new Order(1L, false, 10L, 100L, 0L));
+        book2.place(new Order(1L, false, 10L, 100L, 0L));
+        book1.placeAll(new Order[]{new Order(2L, true, 10L, 30L, 0L), new Order(3L, true, 10L, 30L, 0L)});
+        book2.placeAll(new Order[]{new Order(2L, true, 10L, 30L, 0L), new Order(3L, true, 10L, 30L, 0L)});
+        assertEquals(unbatched.events, batched.events);
+    }
+
+    /**
+     * 把每个回调里订单当时的状态记成字符串
+     */
+    private static class Recorder extends OrderBookListener {
+        private final List<String> events = new ArrayList<>();
+
+        private static String format(Order order) {
+            return order.getId() + ":" + order.getPrice() + ":" + order.getOpenQty() + "/" + order.getOriginQty()
+                    + "@" + order.getUpdatedAt() + (order.isPendingStop() ? "S" : "");
+        }
+
+        @Override
+        public void onAccepted(Order order) {
+            events.add("accepted " + format(order));
+        }
+
+        @Override
+        public void onRejected(Order order, String reason) {
+            events.add("rejected " + format(order));
+        }
+
+        @Override
+        public void onMatched(Order o1, Order o2, long price, long qty) {
+            events.add("matched " + format(o1) + " " + format(o2) + " " + price + "x" + qty);
+        }
+
+        @Override
+        public void onLastPriceChanged(long price) {
+            events.add("last " + price);
+        }
+
+        @Override
+        public void onFullFilled(Order order) {
+            events.add("filled " + format(order));
+        }
+
+        @Override
+        public void onCanceled(Order order) {
+            events.add("canceled " + format(order));
+        }
+
+        @Override
+        public void onTriggered(Order order) {
+            events.add("triggered " + format(order));
+        }
+
+        @Override
+        public void onAmended(Order order) {
+            events.add("amended " + format(order));
+        }
+    }
+
+    @Test
+    void testPooledOrdersReleasedAfterBatch() {
+        final var pool = new OrderPool(4);
+        final var book = new OrderBookLadderImpl("pooled", new OrderBookListener() {
+            @Override
+            public void onEvents(EventBatch events) {
+                assertEquals(2, pool.available(), "回调期间订单还没有被回收");
+                for (int i = 0; i < events.size(); i++) {
+                    if (events.getType(i) == EventBatch.FULL_FILLED) assertEquals(0, events.getOrder(i).getOpenQty());
+                }
+            }
+        }, 1L, 1_000L, 1L, OrderClock.NANO_TIME, pool);
+        book.setEventBatching(true);
+
+        final var sell = pool.acquire(1L, false, 10L, 40L);
+        final var buy = pool.acquire(2L, true, 10L, 40L);
+        book.place(sell);
+        book.place(buy);
+        assertEquals(4, pool.available());
+    }
+}
@@ -0,0 +1,121 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderBookLadderTest extends OrderBookTest {
+    private final List<String> rejects = new ArrayList<>();
+    private final List<Long> matchedPrices = new ArrayList<>();
+
+    @Override
+    protected OrderBook createOrderBook(String symbol, OrderBookListener listener, OrderClock clock) {
+        return new OrderBookLadderImpl(symbol, listener, 1L, 1_000L, 1L, clock, null);
+    }
+
+    @Override
+    public void onRejected(Order order, String reason) {
+        rejects.add(reason);
+    }
+
+    @Override
+    public void onMatched(Order o1, Order o2, long price, long qty) {
+        super.onMatched(o1, o2, price, qty);
+        matchedPrices.add(price);
+    }
+
+    @Test
+    void testPriceOutOfBand() {
+        final var order = orderGenerator.nextOrder(true, 1_001L, 100L);
+        orderBook.place(order);
+        assertEquals(1, rejects.size(), "价格带之外的订单应该被拒绝");
+        assertTrue(orderBook.getBidsDepth().isEmpty());
+    }
+
+    @Test
+    void testBestPriceMovesAcrossEmptyTicks() {
+        orderBook.place(orderGenerator.nextOrder(false, 20L, 10L));
+        orderBook.place(orderGenerator.nextOrder(false, 500L, 10L));
+        orderBook.place(orderGenerator.nextOrder(true, 5L, 10L));
+        assertEquals(15, orderBook.getSpread());
+
+        orderBook.place(orderGenerator.nextOrder(true, 20L, 10L)); // 吃掉 20 元卖单，最优卖价跳到 500
+        assertEquals(495, orderBook.getSpread());
+
+        final var buyOrder = orderGenerator.nextOrder(true, 600L, 15L); // 吃掉 500 元卖单，剩下 5 挂在 600
+        orderBook.place(buyOrder);
+        assertEquals(5, buyOrder.getOpenQty());
+        assertEquals(500, orderBook.getMarketPrice());
+        assertEquals(600, orderBook.getBidsDepth().getFirstLevel().getPrice());
+        assertTrue(orderBook.getAsksDepth().isEmpty());
+    }
+
+    @Test
+    void testAuction() {
+        final var book = (OrderBookLadderImpl) orderBook;
+        final var metrics = new OrderBookMetrics();
+        book.setMetrics(metrics);
+        book.beginAuction();
+        book.place(orderGenerator.nextOrder(true, 12L, 5L));
+        book.place(orderGenerator.nextOrder(true, 10L, 3L));
+        book.place(orderGenerator.nextOrder(true, 9L, 4L));
+        book.place(orderGenerator.nextOrder(false, 9L, 2L));
+        book.place(orderGenerator.nextOrder(false, 10L, 6L));
+        book.place(orderGenerator.nextOrder(false, 12L, 10L));
+        book.place(new Order(99L, 0L, true, 12L, 1L, TimeInForce.IOC, false, 0L));
+        assertTrue(matchedPrices.isEmpty(), "集合竞价阶段不撮合");
+        assertEquals(1, rejects.size(), "集合竞价阶段只接受 GTC 订单");
+
+        final var auction = new Auction();
+        assertTrue(book.computeAuction(auction));
+        assertEquals(10, auction.getPrice(), "10 元上成交量最大");
+        assertEquals(8, auction.getVolume());
+        assertEquals(0, auction.getImbalance());
+
+        assertEquals(8, book.uncross());
+        assertFalse(book.isInAuction());
+        assertEquals(3, matchedPrices.size());
+        assertTrue(matchedPrices.stream().allMatch(p -> p == 10L), "所有成交都在同一个价格上");
+        assertEquals(3, metrics.getMatches());
+        assertEquals(1, metrics.getMaxSweepDepth());
+        assertEquals(1, metrics.getMatchLatency().getCount(), "开盘成交算一次撮合");
+        assertEquals(10, orderBook.getMarketPrice());
+        assertEquals(9, orderBook.getBidsDepth().getFirstLevel().getPrice());
+        assertEquals(4, orderBook.getBidsDepth().getFirstLevel().getTotalQty());
+        assertEquals(12, orderBook.getAsksDepth().getFirstLevel().getPrice());
+        assertEquals(10, orderBook.getAsksDepth().getFirstLevel().getTotalQty());
+
+        book.place(orderGenerator.nextOrder(true, 12L, 1L)); // 回到连续撮合
+        assertEquals(4, matchedPrices.size());
+        assertEquals(12L, (long) matchedPrices.get(3));
+    }
+
+    @Test
+    void testOrdersReturnToPool() {
+        final var pool = new OrderPool(4, () -> 42L);
+        final var book = new OrderBookLadderImpl("pooled", new OrderBookListener() {
+            @Override
+            public void onFullFilled(Order order) {
+                assertEquals(0, order.getOpenQty(), "回调时订单还没有被回收");
+            }
+        }, 1L, 1_000L, 1L, () -> 43L, pool);
+
+        final var buy = pool.acquire(1L, true, 10L, 100L);
+        final var sell = pool.acquire(2L, false, 10L, 40L);
+        assertEquals(42, buy.getCreatedAt());
+        book.place(buy);
+        book.place(sell); // 卖单完全成交，马上回到池子
+        assertEquals(3, pool.available());
+        assertEquals(43, buy.getUpdatedAt());
+
+        book.cancel(1L); // 买单撤单后回到池子
+        assertEquals(4, pool.available());
+        assertEquals(0, pool.getMisses());
+    }
+}
@@ -0,0 +1,40 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookOffHeapImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 打开批量事件后再跑一遍堆外订单簿的测试，回调拿到的是复制出来的挂单
+ */
+class OrderBookOffHeapBatchedTest extends OrderBookOffHeapTest {
+    private final List<Order> counterOrders = new ArrayList<>();
+
+    @Override
+    protected OrderBook createOrderBook(String symbol, OrderBookListener listener, OrderClock clock) {
+        final var book = new OrderBookOffHeapImpl(symbol, listener, 1L, 1_000L, 1L, clock, null, 1024);
+        book.setEventBatching(true);
+        return book;
+    }
+
+    @Override
+    public void onMatched(Order o1, Order o2, long price, long qty) {
+        super.onMatched(o1, o2, price, qty);
+        counterOrders.add(o2);
+    }
+
+    @Test
+    void testCopiesReusedAcrossBatches() {
+        orderBook.place(new Order(1L, false, 10L, 100L, 0L));
+        orderBook.place(new Order(2L, true, 10L, 30L, 0L));
+        orderBook.place(new Order(3L, true, 10L, 30L, 0L));
+        assertEquals(2, counterOrders.size());
+        assertTrue(counterOrders.get(0) == counterOrders.get(1), "上一批复制出来的挂单在下一批复用，不再分配");
+        assertEquals(40L, orderBook.getBestAskQty());
+    }
+}
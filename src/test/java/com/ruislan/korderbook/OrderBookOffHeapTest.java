@@ -0,0 +1,94 @@
+package com.ruislan.korderbook;
+
+import com.ruislan.korderbook.java.OrderBookOffHeapImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderBookOffHeapTest extends OrderBookTest {
+    // 挂单进了订单簿之后调用方的对象不再更新，这里像调用方一样按回调把状态抄回自己的对象，共用的测试照常检查
+    private final Map<Long, Order> placed = new HashMap<>();
+    private boolean syncing = true;
+
+    @Override
+    protected OrderBook createOrderBook(String symbol, OrderBookListener listener, OrderClock clock) {
+        return new OrderBookOffHeapImpl(symbol, listener, 1L, 1_000L, 1L, clock, null, 1024);
+    }
+
+    private void sync(Order order) {
+        final Order own = placed.get(order.getId());
+        if (!syncing || own == null || own == order) return;
+        own.load(order.getId(), order.getOwnerId(), order.isBuy(), order.getPrice(), order.getOriginQty(), order.getOpenQty(),
+                order.getStopPrice(), order.getTimeInForce(), order.isPostOnly(), order.getCreatedAt(), order.getUpdatedAt());
+        own.triggered = order.isTriggered();
+    }
+
+    @Override
+    public void onAccepted(Order order) {
+        super.onAccepted(order);
+        placed.put(order.getId(), order);
+    }
+
+    @Override
+    public void onMatched(Order o1, Order o2, long price, long qty) {
+        super.onMatched(o1, o2, price, qty);
+        sync(o1);
+        sync(o2);
+    }
+
+    @Override
+    public void onFullFilled(Order order) {
+        sync(order);
+    }
+
+    @Override
+    public void onCanceled(Order order) {
+        super.onCanceled(order);
+        sync(order);
+    }
+
+    @Override
+    public void onAmended(Order order) {
+        sync(order);
+    }
+
+    @Test
+    void testRestingOrderIsCopied() {
+        syncing = false;
+        final var resting = new Order(1L, 7L, true, 10L, 100L, 0L);
+        orderBook.place(resting);
+        final var seen = new Order[1];
+        ((OrderBookOffHeapImpl) orderBook).forEachOrder(order -> {
+            seen[0] = order;
+            assertEquals(1L, order.getId());
+            assertEquals(7L, order.getOwnerId());
+            assertEquals(100L, order.getOpenQty());
+        });
+        assertTrue(resting != seen[0], "挂单是复制进去的");
+
+        orderBook.place(new Order(2L, 0L, false, 10L, 30L, 0L));
+        assertEquals(100L, resting.getOpenQty(), "调用方的对象不随成交更新");
+        assertEquals(70L, orderBook.getBestBidQty());
+
+        assertEquals(1, orderBook.cancelByOwner(7L));
+        assertEquals(0, ((OrderBookOffHeapImpl) orderBook).getOrderCount());
+    }
+
+    @Test
+    void testRestingOrderReturnsToPool() {
+        final var pool = new OrderPool(4);
+        final var book = new OrderBookOffHeapImpl("pooled", new OrderBookListener() {
+        }, 1L, 1_000L, 1L, OrderClock.EPOCH_SECONDS, pool, 16);
+        book.place(pool.acquire(1L, true, 10L, 100L));
+        assertEquals(4, pool.available(), "挂单复制进堆外之后订单对象马上还回池子");
+
+        book.amend(1L, 11L, 50L); // 改价时从池子里拿一个对象重新撮合，挂上之后再还回去
+        assertEquals(4, pool.available());
+        assertEquals(11L, book.getBestBid());
+        assertEquals(0, pool.getMisses());
+    }
+}
@@ -1,20 +1,31 @@
 package com.ruislan.korderbook;
 
 import com.ruislan.korderbook.java.OrderBookJavaImpl;
-import com.ruislan.korderbook.kotlin.OrderBookKotlinImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class OrderBookTest extends OrderBookListener {
-    private OrderBook orderBook;
+    protected OrderBook orderBook;
     private AtomicLong totalQty;
-    private final OrderGenerator orderGenerator = new OrderGenerator();
+    private AtomicLong cancelRejected;
+    private final List<Long> amendRejected = new ArrayList<>();
+    private final List<String> bestBidAsks = new ArrayList<>();
+    protected final OrderGenerator orderGenerator = new OrderGenerator();
 
     @Override
     public void onMatched(Order o1, Order o2, long price, long qty) {
@@ -32,10 +43,34 @@ class OrderBookTest extends OrderBookListener {
         System.out.println("on cancel: " + order + ", " + orderBook.getBidsDepth().getFirstLevel());
     }
 
+    protected OrderBook createOrderBook(String symbol, OrderBookListener listener) {
+        return createOrderBook(symbol, listener, OrderClock.EPOCH_SECONDS);
+    }
+
+    protected OrderBook createOrderBook(String symbol, OrderBookListener listener, OrderClock clock) {
+        return new OrderBookJavaImpl(symbol, listener, clock);
+    }
+
+    @Override
+    public void onBestBidAskChanged(long bidPrice, long bidQty, long askPrice, long askQty) {
+        bestBidAsks.add(bidQty + "@" + bidPrice + " " + askQty + "@" + askPrice);
+    }
+
+    @Override
+    public void onCancelRejected(long orderId, String reason) {
+        cancelRejected.incrementAndGet();
+    }
+
+    @Override
+    public void onAmendRejected(long orderId, String reason) {
+        amendRejected.add(orderId);
+    }
+
     @BeforeEach
     public void setup() {
-        this.orderBook = new OrderBookJavaImpl("simple", this);
+        this.orderBook = createOrderBook("simple", this);
         this.totalQty = new AtomicLong(0);
+        this.cancelRejected = new AtomicLong(0);
     }
 
     @AfterEach
@@ -210,4 +245,448 @@ class OrderBookTest extends OrderBookListener {
         orderBook.cancel(order);
         assertTrue(orderBook.getBidsDepth().isEmpty());
     }
+
+    @Test
+    void testCancelByOrderId() {
+        final var first = orderGenerator.nextOrder(true, 10L, 100L);
+        final var second = orderGenerator.nextOrder(true, 10L, 50L);
+        final var third = orderGenerator.nextOrder(true, 10L, 30L);
+        orderBook.place(first);
+        orderBook.place(second);
+        orderBook.place(third);
+
+        orderBook.cancel(second.getId()); // 撤掉队列中间的订单
+        assertEquals(2, orderBook.getBidsDepth().getFirstLevel().getOrderCount());
+        assertEquals(130, orderBook.getBidsDepth().getFirstLevel().getTotalQty());
+
+        orderBook.cancel(second.getId()); // 已经撤掉的订单不能再撤
+        assertEquals(1, cancelRejected.get());
+
+        // 剩下的订单还是按照时间优先成交
+        orderBook.place(orderGenerator.nextOrder(false, 10L, 120L));
+        assertEquals(0, first.getOpenQty());
+        assertEquals(10, third.getOpenQty());
+
+        orderBook.cancel(third.getId());
+        assertTrue(orderBook.getBidsDepth().isEmpty());
+        orderBook.cancel(first.getId()); // 已经成交的订单不能撤
+        assertEquals(2, cancelRejected.get());
+    }
+
+    @Test
+    void testDepthChangesCoalesced() {
+        orderBook.place(orderGenerator.nextOrder(false, 10L, 10L));
+        orderBook.place(orderGenerator.nextOrder(false, 10L, 10L));
+        orderBook.place(orderGenerator.nextOrder(false, 11L, 10L));
+        orderBook.place(orderGenerator.nextOrder(false, 12L, 10L));
+
+        final List<String> batches = new ArrayList<>();
+        final var listener = new DepthListener() {
+            @Override
+            public void onLevelsChanged(DepthChanges changes) {
+                final var batch = new StringBuilder(changes.isBuy() ? "B" : "S");
+                for (int i = 0; i < changes.size(); i++) {
+                    batch.append(' ').append(changes.getPrice(i)).append(':').append(changes.getTotalQty(i))
+                            .append('/').append(changes.getOrderCount(i));
+                }
+                batches.add(batch.toString());
+            }
+        };
+        orderBook.getBidsDepth().setListener(listener, true);
+        orderBook.getAsksDepth().setListener(listener, true);
+
+        // 一个买单吃掉三档，剩下的挂在 12 元，每一方只收到一批
+        orderBook.place(orderGenerator.nextOrder(true, 12L, 45L));
+        assertEquals(List.of("B 12:5/1", "S 10:0/0 11:0/0 12:0/0"), batches);
+    }
+
+    @Test
+    void testDepthChangesPerLevel() {
+        final List<Long> prices = new ArrayList<>();
+        orderBook.getAsksDepth().setListener(new DepthListener() {
+            @Override
+            public void onLevelChanged(boolean isBuy, long price, long totalQty, long orderCount) {
+                prices.add(price);
+            }
+        }, false);
+
+        orderBook.place(orderGenerator.nextOrder(false, 10L, 10L));
+        orderBook.place(orderGenerator.nextOrder(false, 10L, 10L));
+        orderBook.place(orderGenerator.nextOrder(true, 10L, 15L));
+        assertEquals(List.of(10L, 10L, 10L, 10L), prices, "不合并时每次变化都会回调");
+    }
+
+    @Test
+    void testDepthChecksum() {
+        final List<Integer> flushed = new ArrayList<>();
+        orderBook.getAsksDepth().setListener(new DepthListener() {
+            @Override
+            public void onLevelsChanged(DepthChanges changes) {
+                flushed.add(changes.getChecksum());
+            }
+        }, true);
+
+        // 价格铺开到 300 档，超过前 100 档，档位会被挤进挤出
+        final var random = new Random(7L);
+        final List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            if (!ids.isEmpty() && random.nextInt(4) == 0) {
+                orderBook.cancel(ids.remove(random.nextInt(ids.size())).longValue());
+            } else {
+                final var order = orderGenerator.nextOrder(random.nextBoolean(), 100L + random.nextInt(300), 1L + random.nextInt(50));
+                ids.add(order.getId());
+                orderBook.place(order);
+            }
+            assertEquals(fullChecksum(orderBook.getBidsDepth()), orderBook.getBidsDepth().getChecksum());
+            assertEquals(fullChecksum(orderBook.getAsksDepth()), orderBook.getAsksDepth().getChecksum());
+            if (!flushed.isEmpty()) assertEquals(orderBook.getAsksDepth().getChecksum(), (int) flushed.get(flushed.size() - 1));
+        }
+        assertTrue(orderBook.getBidsDepth().size() + orderBook.getAsksDepth().size() > Depth.DEFAULT_MAX_LEVEL);
+
+        orderBook.cancelAll();
+        assertEquals(0L, orderBook.getDepthChecksum());
+    }
+
+    @Test
+    void testDepthChecksumPerLevel() {
+        // 下游按逐档的变化重建买方深度，每次回调都和带过来的校验和对一下
+        final var mirror = new TreeMap<Long, Long>(Comparator.reverseOrder());
+        final List<String> mismatches = new ArrayList<>();
+        final int maxLevel = orderBook.getBidsDepth().getMaxLevel();
+        orderBook.getBidsDepth().setListener(new DepthListener() {
+            @Override
+            public void onLevelChanged(boolean isBuy, long price, long totalQty, long orderCount, int checksum) {
+                if (totalQty == 0L) mirror.remove(price);
+                else mirror.put(price, totalQty);
+                int expected = 0;
+                int n = 0;
+                for (var level : mirror.entrySet()) {
+                    if (n++ == maxLevel) break;
+                    expected += Depth.levelChecksum(level.getKey(), level.getValue());
+                }
+                if (expected != checksum) mismatches.add(price + ":" + totalQty);
+            }
+        }, false);
+
+        final var random = new Random(9L);
+        for (int i = 0; i < 2_000; i++) {
+            orderBook.place(orderGenerator.nextOrder(random.nextBoolean(), 100L + random.nextInt(300), 1L + random.nextInt(50)));
+            if (i % 500 == 499) orderBook.cancelByPriceRange(true, 150L, 250L);
+        }
+        orderBook.cancelBySide(true);
+        assertTrue(mirror.isEmpty());
+        assertEquals(List.of(), mismatches, "每次逐档回调都带着变化之后的校验和");
+    }
+
+    /**
+     * 下游的做法：对前 N 档逐档算 java.util.zip.CRC32 再相加
+     */
+    private static int fullChecksum(Depth depth) {
+        final long[] prices = new long[depth.getMaxLevel()];
+        final long[] qtys = new long[depth.getMaxLevel()];
+        final int levels = depth.copyTopLevels(prices, qtys, prices.length);
+        final var buffer = ByteBuffer.allocate(16);
+        final var crc = new CRC32();
+        int checksum = 0;
+        for (int i = 0; i < levels; i++) {
+            crc.reset();
+            crc.update(buffer.clear().putLong(prices[i]).putLong(qtys[i]).flip());
+            checksum += (int) crc.getValue();
+        }
+        return checksum;
+    }
+
+    @Test
+    void testClockIsPluggable() {
+        final OrderClock clock = () -> 42L;
+        final OrderBook book = createOrderBook("clock", this, clock);
+        final var sell = new Order(1L, false, 10L, 10L, 1L);
+        final var buy = new Order(2L, true, 10L, 4L, 1L);
+        book.place(sell);
+        book.place(buy);
+        assertEquals(42, sell.getUpdatedAt(), "成交时间来自订单簿的时钟");
+        assertEquals(42, buy.getUpdatedAt());
+
+        final var resting = new Order(3L, true, 5L, 10L, 1L);
+        book.place(resting);
+        book.amend(3L, 5L, 5L);
+        assertEquals(42, resting.getUpdatedAt(), "改单时间也来自订单簿的时钟");
+    }
+
+    @Test
+    void testCopyTopLevels() {
+        orderBook.place(orderGenerator.nextOrder(true, 10L, 10L));
+        orderBook.place(orderGenerator.nextOrder(true, 12L, 20L));
+        orderBook.place(orderGenerator.nextOrder(true, 11L, 30L));
+        orderBook.place(orderGenerator.nextOrder(true, 12L, 5L));
+
+        final long[] prices = new long[4];
+        final long[] qtys = new long[4];
+        assertEquals(3, orderBook.getBidsDepth().copyTopLevels(prices, qtys, 4));
+        assertArrayEquals(new long[]{12L, 11L, 10L, 0L}, prices);
+        assertArrayEquals(new long[]{25L, 30L, 10L, 0L}, qtys);
+        assertEquals(11, orderBook.getBidsDepth().getDepthLevel(2).getPrice());
+        assertNull(orderBook.getBidsDepth().getDepthLevel(4));
+
+        orderBook.place(orderGenerator.nextOrder(false, 11L, 25L)); // 吃掉 12 元这一档
+        assertEquals(2, orderBook.getBidsDepth().copyTopLevels(prices, qtys, 4));
+        assertEquals(11, prices[0]);
+        assertEquals(10, orderBook.getBidsDepth().getDepthLevel(2).getPrice());
+    }
+
+    @Test
+    void testBestBidAskChanges() {
+        orderBook.place(orderGenerator.nextOrder(true, 10L, 100L));
+        orderBook.place(orderGenerator.nextOrder(true, 9L, 100L)); // 不是最优价，不通知
+        orderBook.place(orderGenerator.nextOrder(false, 12L, 50L));
+        orderBook.place(orderGenerator.nextOrder(false, 0L, 30L)); // 市价卖单直接和 10 元买单成交
+        assertEquals(List.of("100@10 0@0", "100@10 50@12", "70@10 50@12"), bestBidAsks);
+
+        orderBook.place(orderGenerator.nextOrder(true, 0L, 20L)); // 市价买单吃掉 12 元卖单的 20
+        assertEquals("70@10 30@12", bestBidAsks.get(bestBidAsks.size() - 1));
+        assertEquals(30, orderBook.getBestAskQty());
+        assertEquals(70, orderBook.getBestBidQty());
+        assertEquals(10, orderBook.getBestBid());
+        assertEquals(12, orderBook.getBestAsk());
+        assertEquals(2, orderBook.getSpread());
+    }
+
+    @Test
+    void testPlaceAllAndCancelAll() {
+        final var quotes = new Order[]{
+                orderGenerator.nextOrder(true, 9L, 10L),
+                orderGenerator.nextOrder(true, 10L, 10L),
+                orderGenerator.nextOrder(false, 12L, 10L),
+                orderGenerator.nextOrder(false, 10L, 4L), // 和 10 元买单成交
+        };
+        orderBook.placeAll(quotes);
+        assertEquals(6, orderBook.getBestBidQty());
+        assertEquals(12, orderBook.getBestAsk());
+        assertEquals("6@10 10@12", bestBidAsks.get(bestBidAsks.size() - 1));
+
+        orderBook.cancelAll(new long[]{quotes[0].getId(), quotes[1].getId(), quotes[3].getId()});
+        assertTrue(orderBook.getBidsDepth().isEmpty());
+        assertEquals(1, cancelRejected.get(), "已经成交的订单不能撤");
+    }
+
+    @Test
+    void testMassCancel() {
+        orderBook.place(new Order(1L, 7L, true, 10L, 10L, 0L));
+        orderBook.place(new Order(2L, 8L, true, 10L, 20L, 0L));
+        orderBook.place(new Order(3L, 7L, true, 9L, 30L, 0L));
+        orderBook.place(new Order(4L, 7L, false, 12L, 40L, 0L));
+        orderBook.place(new Order(5L, 8L, false, 13L, 50L, 0L));
+        orderBook.place(new Order(6L, 8L, false, 15L, 60L, 0L));
+
+        assertEquals(3, orderBook.cancelByOwner(7L), "用户 7 的三个挂单都应该被撤掉");
+        assertEquals(20, orderBook.getBidsDepth().getFirstLevel().getTotalQty());
+        assertEquals(1, orderBook.getBidsDepth().size());
+        assertEquals(13, orderBook.getBestAsk());
+        assertEquals(0, orderBook.cancelByOwner(7L));
+
+        assertEquals(1, orderBook.cancelByPriceRange(false, 11L, 14L));
+        assertEquals(15, orderBook.getBestAsk());
+        assertEquals(1, orderBook.getAsksDepth().size());
+
+        assertEquals(1, orderBook.cancelBySide(true));
+        assertTrue(orderBook.getBidsDepth().isEmpty());
+
+        assertEquals(1, orderBook.cancelAll());
+        assertTrue(orderBook.getAsksDepth().isEmpty());
+        orderBook.cancel(2L);
+        assertEquals(1, cancelRejected.get(), "批量撤掉的订单也不能再撤");
+    }
+
+    @Test
+    void testCancelByOpenPriceRange() {
+        orderBook.place(new Order(1L, true, 10L, 10L, 0L));
+        orderBook.place(new Order(2L, true, 12L, 20L, 0L));
+        orderBook.place(new Order(3L, true, 15L, 30L, 0L));
+        orderBook.place(new Order(4L, false, 20L, 40L, 0L));
+        orderBook.place(new Order(5L, false, 22L, 50L, 0L));
+        orderBook.place(new Order(6L, false, 25L, 60L, 0L));
+
+        // 没有下界或上界的区间，挂单和深度要删掉同一段
+        assertEquals(2, orderBook.cancelByPriceRange(false, Long.MIN_VALUE, 22L));
+        assertEquals(25, orderBook.getBestAsk());
+        assertEquals(1, orderBook.getAsksDepth().size());
+        assertEquals(25, orderBook.getAsksDepth().getFirstLevel().getPrice());
+
+        assertEquals(2, orderBook.cancelByPriceRange(true, 12L, Long.MAX_VALUE));
+        assertEquals(10, orderBook.getBestBid());
+        assertEquals(1, orderBook.getBidsDepth().size());
+        assertEquals(10, orderBook.getBidsDepth().getFirstLevel().getPrice());
+
+        assertEquals(1, orderBook.cancelByPriceRange(true, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(1, orderBook.cancelByPriceRange(false, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertTrue(orderBook.getBidsDepth().isEmpty());
+        assertTrue(orderBook.getAsksDepth().isEmpty());
+    }
+
+    @Test
+    void testCancelByOwnerUpdatesEachLevelOnce() {
+        orderBook.place(new Order(1L, 7L, true, 10L, 10L, 0L));
+        orderBook.place(new Order(2L, 8L, true, 10L, 20L, 0L));
+        orderBook.place(new Order(3L, 7L, true, 10L, 30L, 0L));
+        orderBook.place(new Order(4L, 7L, true, 9L, 40L, 0L));
+        orderBook.place(new Order(5L, 7L, true, 9L, 50L, 0L));
+
+        final List<String> changes = new ArrayList<>();
+        orderBook.getBidsDepth().setListener(new DepthListener() {
+            @Override
+            public void onLevelChanged(boolean isBuy, long price, long totalQty, long orderCount) {
+                changes.add(price + ":" + totalQty + "/" + orderCount);
+            }
+        }, false);
+
+        assertEquals(4, orderBook.cancelByOwner(7L));
+        changes.sort(null);
+        assertEquals(List.of("10:20/1", "9:0/0"), changes, "同一档的撤单只更新一次深度");
+        assertEquals(1, orderBook.getBidsDepth().size());
+        assertEquals(20, orderBook.getBidsDepth().getFirstLevel().getTotalQty());
+    }
+
+    @Test
+    void testDepthChangesCoalescedManyLevels() {
+        for (int i = 0; i < 50; i++) orderBook.place(orderGenerator.nextOrder(false, 100L + i, 10L));
+        final List<String> batches = new ArrayList<>();
+        orderBook.getAsksDepth().setListener(new DepthListener() {
+            @Override
+            public void onLevelsChanged(DepthChanges changes) {
+                final var batch = new StringBuilder();
+                for (int i = 0; i < changes.size(); i++) batch.append(changes.getPrice(i)).append(':').append(changes.getTotalQty(i)).append(' ');
+                batches.add(batch.toString().trim());
+            }
+        }, true);
+
+        // 一个买单吃掉 50 档里的 40 档，剩下的一档只成交一半
+        orderBook.place(orderGenerator.nextOrder(true, 140L, 405L));
+        assertEquals(1, batches.size());
+        final String[] levels = batches.get(0).split(" ");
+        assertEquals(41, levels.length, "每个价格只出现一次");
+        assertEquals("100:0", levels[0]);
+        assertEquals("140:5", levels[40]);
+    }
+
+    @Test
+    void testTimeInForce() {
+        orderBook.place(new Order(1L, 0L, false, 10L, 10L, 0L));
+        orderBook.place(new Order(2L, 0L, false, 11L, 10L, 0L));
+
+        final var fok = new Order(3L, 0L, true, 11L, 25L, TimeInForce.FOK, false, 0L);
+        orderBook.place(fok); // 11 元以内只有 20，整单拒绝，一个订单都不动
+        assertEquals(25, fok.getOpenQty());
+        assertEquals(0, totalQty.get());
+        assertEquals(2, orderBook.getAsksDepth().size());
+
+        final var ioc = new Order(4L, 0L, true, 10L, 15L, TimeInForce.IOC, false, 0L);
+        orderBook.place(ioc); // 成交 10，剩下的 5 撤掉，不挂单
+        assertEquals(5, ioc.getOpenQty());
+        assertTrue(orderBook.getBidsDepth().isEmpty());
+        assertEquals(11, orderBook.getBestAsk());
+
+        orderBook.place(new Order(5L, 0L, true, 11L, 5L, TimeInForce.GTC, true, 0L)); // 会和 11 元卖单成交，拒绝
+        assertTrue(orderBook.getBidsDepth().isEmpty());
+        assertEquals(10, orderBook.getBestAskQty());
+        orderBook.place(new Order(6L, 0L, true, 10L, 5L, TimeInForce.GTC, true, 0L));
+        assertEquals(10, orderBook.getBestBid());
+
+        final var fillable = new Order(7L, 0L, false, 10L, 5L, TimeInForce.FOK, false, 0L);
+        orderBook.place(fillable);
+        assertEquals(0, fillable.getOpenQty());
+        assertEquals(15, totalQty.get());
+        assertTrue(orderBook.getBidsDepth().isEmpty());
+    }
+
+    @Test
+    void testStopOrders() {
+        orderBook.place(new Order(1L, 0L, false, 10L, 10L, 0L));
+        orderBook.place(new Order(2L, 0L, false, 11L, 10L, 0L));
+        orderBook.place(new Order(3L, 0L, false, 12L, 10L, 0L));
+        final var stopLimit = new Order(4L, 0L, true, 12L, 15L, 11L, TimeInForce.GTC, false, 0L); // 涨到 11 时以 12 元限价买入
+        final var stopMarket = new Order(5L, 0L, true, 0L, 5L, 10L, TimeInForce.GTC, false, 0L); // 涨到 10 时市价买入
+        orderBook.place(stopLimit);
+        orderBook.place(stopMarket);
+        assertEquals(0, totalQty.get(), "还没有成交价，止损单不会触发");
+        assertTrue(orderBook.getBidsDepth().isEmpty(), "没触发的止损单不在深度里");
+
+        orderBook.place(new Order(6L, 0L, true, 10L, 5L, 0L)); // 成交在 10，触发止损市价单，吃掉 10 元剩下的 5
+        assertTrue(stopMarket.isTriggered());
+        assertEquals(0, stopMarket.getOpenQty());
+        assertEquals(15, stopLimit.getOpenQty(), "最新价 10 还没涨到 11");
+
+        orderBook.place(new Order(7L, 0L, true, 11L, 1L, 0L)); // 成交在 11，触发止损限价单，吃掉 11 元的 9 和 12 元的 6
+        assertEquals(0, stopLimit.getOpenQty());
+        assertEquals(12, orderBook.getMarketPrice());
+        assertEquals(4, orderBook.getBestAskQty());
+        assertEquals(26, totalQty.get());
+
+        orderBook.place(new Order(8L, 0L, false, 0L, 5L, 5L, TimeInForce.GTC, false, 0L));
+        orderBook.cancel(8L); // 没触发的止损单可以撤
+        assertEquals(0, cancelRejected.get());
+        orderBook.cancel(8L);
+        assertEquals(1, cancelRejected.get());
+    }
+
+    @Test
+    void testAmend() {
+        final var first = new Order(1L, 0L, true, 10L, 10L, 0L);
+        final var second = new Order(2L, 0L, true, 10L, 10L, 0L);
+        orderBook.place(first);
+        orderBook.place(second);
+        orderBook.place(new Order(3L, 0L, false, 13L, 5L, 0L));
+
+        orderBook.amend(1L, 10L, 4L); // 同价减量，还排在最前面
+        assertEquals(14, orderBook.getBestBidQty());
+        assertEquals(2, orderBook.getBidsDepth().getFirstLevel().getOrderCount());
+        assertEquals(4, first.getOriginQty());
+        orderBook.place(new Order(4L, 0L, false, 10L, 4L, 0L));
+        assertEquals(0, first.getOpenQty(), "减量之后第一个订单还是最先成交");
+
+        final var third = new Order(5L, 0L, true, 10L, 10L, 0L);
+        orderBook.place(third);
+        orderBook.amend(2L, 10L, 11L); // 加量，排到队尾
+        assertEquals(21, orderBook.getBestBidQty());
+        orderBook.place(new Order(6L, 0L, false, 10L, 10L, 0L));
+        assertEquals(0, third.getOpenQty(), "加量之后失去了排队位置");
+        assertEquals(11, second.getOpenQty());
+
+        orderBook.amend(2L, 12L, 11L); // 改价，不成交
+        assertEquals(12, orderBook.getBestBid());
+        orderBook.amend(2L, 13L, 11L); // 改到对手价，先吃掉 13 元的 5，剩下的挂在 13
+        assertEquals(6, second.getOpenQty());
+        assertEquals(13, orderBook.getBestBid());
+        assertTrue(orderBook.getAsksDepth().isEmpty());
+        assertEquals(19, totalQty.get());
+
+        orderBook.amend(99L, 10L, 1L);
+        orderBook.amend(2L, 13L, 0L);
+        assertEquals(List.of(99L, 2L), amendRejected);
+        assertEquals(6, orderBook.getBestBidQty());
+    }
+
+    @Test
+    void testMetrics() {
+        final var metrics = new OrderBookMetrics();
+        orderBook.setMetrics(metrics);
+        orderBook.place(new Order(1L, 0L, false, 10L, 5L, 0L));
+        orderBook.place(new Order(2L, 0L, false, 11L, 5L, 0L));
+        orderBook.place(new Order(3L, 0L, false, 12L, 5L, 0L));
+        orderBook.place(new Order(4L, 0L, true, 12L, 15L, 0L)); // 扫掉三档
+        orderBook.cancel(99L);
+
+        assertEquals(4, metrics.getOrdersAccepted());
+        assertEquals(3, metrics.getMatches());
+        assertEquals(3, metrics.getLevelsCreated());
+        assertEquals(3, metrics.getLevelsRemoved());
+        assertEquals(3, metrics.getMaxSweepDepth());
+        assertEquals(4, metrics.getPlaceLatency().getCount());
+        assertEquals(4, metrics.getMatchLatency().getCount());
+        assertEquals(1, metrics.getCancelLatency().getCount());
+        assertTrue(metrics.getPlaceLatency().getValueAtPercentile(50.0) <= metrics.getPlaceLatency().getMax());
+
+        orderBook.setMetrics(null);
+        orderBook.place(new Order(5L, 0L, true, 12L, 1L, 0L));
+        assertEquals(4, metrics.getOrdersAccepted(), "关掉之后不再统计");
+    }
 }
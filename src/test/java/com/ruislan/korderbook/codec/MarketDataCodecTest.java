@@ -0,0 +1,103 @@
+package com.ruislan.korderbook.codec;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MarketDataCodecTest {
+
+    @Test
+    void testEncodeAndDecode() {
+        final var buffer = ByteBuffer.allocateDirect(1024);
+        final var encoder = new MarketDataEncoder().wrap(buffer, 0);
+        final var buy = new Order(1L, true, 100L, 30L, 7L);
+        final var sell = new Order(2L, false, 100L, 10L, 8L);
+        encoder.accepted(buy).matched(buy, sell, 100L, 10L).depthChanged(false, 101L, 500L, 3L);
+
+        final var decoder = new MarketDataDecoder().wrap(buffer, 0, encoder.getOffset());
+        assertTrue(decoder.next());
+        assertEquals(MarketDataSchema.ACCEPTED, decoder.templateId());
+        assertEquals(1, decoder.orderId());
+        assertEquals(30, decoder.qty());
+        assertEquals(7, decoder.value());
+        assertTrue(decoder.isBuy());
+
+        assertTrue(decoder.next());
+        assertEquals(MarketDataSchema.MATCHED, decoder.templateId());
+        assertEquals(2, decoder.counterOrderId());
+        assertEquals(100, decoder.price());
+
+        assertTrue(decoder.next());
+        assertEquals(MarketDataSchema.DEPTH_CHANGED, decoder.templateId());
+        assertFalse(decoder.isBuy());
+        assertEquals(3, decoder.value());
+        assertFalse(decoder.next());
+        assertEquals(3 * MarketDataSchema.MESSAGE_LENGTH, decoder.getOffset());
+    }
+
+    @Test
+    void testBufferOverflow() {
+        final var encoder = new MarketDataEncoder().wrap(ByteBuffer.allocate(MarketDataSchema.MESSAGE_LENGTH + 1), 0);
+        encoder.depthChanged(true, 1L, 1L, 1L);
+        assertThrows(BufferOverflowException.class, () -> encoder.depthChanged(true, 1L, 1L, 1L));
+    }
+
+    @Test
+    void testPublisherFlushesPerBatch() {
+        final List<Short> templates = new ArrayList<>();
+        final var decoder = new MarketDataDecoder();
+        final var publisher = new MarketDataPublisher(ByteBuffer.allocateDirect(2 * MarketDataSchema.MESSAGE_LENGTH), (buffer, offset, length) -> {
+            decoder.wrap(buffer, offset, offset + length);
+            while (decoder.next()) templates.add(decoder.templateId());
+        });
+        final var book = new OrderBookLadderImpl("codec", publisher);
+        book.setEventBatching(true);
+
+        book.place(new Order(1L, false, 10L, 10L));
+        book.place(new Order(2L, true, 10L, 10L)); // 缓冲区只放得下两条，中间会先发出一次
+        assertEquals(List.of(MarketDataSchema.ACCEPTED, MarketDataSchema.ACCEPTED, MarketDataSchema.MATCHED,
+                MarketDataSchema.FULL_FILLED), templates);
+    }
+
+    @Test
+    void testBatchedPublisherEncodesEventTimeQuantities() {
+        final List<String> unbatched = publishTrade(false);
+        final List<String> batched = publishTrade(true);
+        assertEquals("1 10x100", unbatched.get(0), "ACCEPTED 的数量是下单时的数量");
+        assertEquals(unbatched, batched);
+    }
+
+    /**
+     * 挂一个 60 的卖单，再用 100 的买单吃掉它，剩下的 40 撤掉
+     */
+    private static List<String> publishTrade(boolean batching) {
+        final List<String> messages = new ArrayList<>();
+        final var decoder = new MarketDataDecoder();
+        final var publisher = new MarketDataPublisher(ByteBuffer.allocateDirect(1024), (buffer, offset, length) -> {
+            decoder.wrap(buffer, offset, offset + length);
+            while (decoder.next()) {
+                if (decoder.templateId() != MarketDataSchema.DEPTH_CHANGED) {
+                    messages.add(decoder.templateId() + " " + decoder.price() + "x" + decoder.qty());
+                }
+            }
+        });
+        final var book = new OrderBookLadderImpl("codec", publisher);
+        book.setEventBatching(batching);
+        book.place(new Order(1L, false, 10L, 60L));
+        book.place(new Order(2L, true, 10L, 100L));
+        book.cancel(2L);
+        publisher.flush();
+        messages.remove(0); // 卖单的 ACCEPTED
+        return messages;
+    }
+}
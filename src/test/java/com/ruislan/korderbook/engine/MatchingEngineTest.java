@@ -0,0 +1,65 @@
+package com.ruislan.korderbook.engine;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MatchingEngineTest {
+
+    @Test
+    void testBooksAreOwnedByTheirShard() {
+        final Map<String, String> owners = new ConcurrentHashMap<>();
+        final var matchedQty = new AtomicLong();
+        final var violation = new AtomicReference<String>(); // 分片线程上的断言失败不会让测试失败，记下来在测试线程上检查
+        final var engine = new MatchingEngine(symbol -> new OrderBookLadderImpl(symbol, new OrderBookListener() {
+            @Override
+            public void onMatched(Order o1, Order o2, long price, long qty) {
+                final var previous = owners.putIfAbsent(symbol, Thread.currentThread().getName());
+                if (previous != null && !previous.equals(Thread.currentThread().getName())) {
+                    violation.compareAndSet(null, symbol + " matched on " + previous + " and " + Thread.currentThread().getName());
+                }
+                matchedQty.addAndGet(qty);
+            }
+        }, 1L, 1_000L, 1L), 3, 1024, WaitStrategy.YIELD);
+        engine.start();
+
+        final int symbols = 20;
+        for (int i = 0; i < symbols; i++) engine.addBook("S" + i);
+        final long[] lastSequence = new long[engine.getShardCount()];
+        Arrays.fill(lastSequence, -1L);
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < symbols; i++) {
+                final String symbol = "S" + i;
+                engine.place(symbol, new Order(true, 10L, 2L));
+                lastSequence[engine.shardOf(symbol)] = engine.place(symbol, new Order(false, 10L, 1L));
+            }
+        }
+        for (int i = 0; i < engine.getShardCount(); i++) {
+            if (lastSequence[i] >= 0) engine.getShard(i).sequencer().awaitProcessed(lastSequence[i]); // 没有分到品种的分片不用等
+        }
+        assertNull(violation.get());
+
+        assertEquals(symbols * 100, matchedQty.get());
+        assertEquals(symbols, owners.size());
+        int books = 0;
+        for (int i = 0; i < engine.getShardCount(); i++) {
+            final var shard = engine.getShard(i);
+            books += shard.getBookCount();
+            assertEquals(0, shard.getQueueDepth());
+            assertEquals(shard.getBookCount() * 201L, shard.getProcessedCount()); // open + 200 次下单
+        }
+        assertEquals(symbols, books);
+        assertEquals(100, engine.getBook("S0").getBidsDepth().getFirstLevel().getTotalQty());
+        engine.close();
+    }
+}
@@ -0,0 +1,89 @@
+package com.ruislan.korderbook.engine;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderSequencerTest {
+
+    @Test
+    void testCommandsFromManyProducers() throws Exception {
+        final var accepted = new AtomicLong();
+        final var matchingThread = new Thread[1];
+        final var book = new OrderBookLadderImpl("simple", new OrderBookListener() {
+            @Override
+            public void onAccepted(Order order) {
+                accepted.incrementAndGet();
+                matchingThread[0] = Thread.currentThread();
+            }
+        });
+        final var sequencer = new OrderSequencer(book, 64, WaitStrategy.YIELD); // 队列比命令少，生产者要等待
+        sequencer.start();
+
+        final int producers = 4;
+        final int ordersPerProducer = 10_000;
+        final var threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final boolean isBuy = p % 2 == 0;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < ordersPerProducer; i++) sequencer.place(new Order(isBuy, isBuy ? 10L : 11L, 1L));
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) thread.join();
+        sequencer.close();
+
+        assertEquals(producers * ordersPerProducer, accepted.get());
+        assertEquals(producers * ordersPerProducer, sequencer.getProcessedCount());
+        assertEquals(0, sequencer.getQueueDepth());
+        assertEquals(producers / 2 * ordersPerProducer, book.getBidsDepth().getFirstLevel().getTotalQty());
+        assertEquals(producers / 2 * ordersPerProducer, book.getAsksDepth().getFirstLevel().getTotalQty());
+        assertTrue(matchingThread[0].getName().startsWith("order-sequencer"));
+    }
+
+    @Test
+    void testCancelAfterPlace() {
+        final var book = new OrderBookLadderImpl("simple", new OrderBookListener() {
+        });
+        final var sequencer = new OrderSequencer(book, 8, WaitStrategy.BUSY_SPIN);
+        sequencer.start();
+        final var order = new Order(true, 10L, 100L);
+        sequencer.place(order);
+        sequencer.awaitProcessed(sequencer.cancel(order.getId()));
+        assertTrue(book.getBidsDepth().isEmpty());
+        sequencer.close();
+    }
+
+    @Test
+    void testExceptionDoesNotStopMatchingThread() {
+        final var book = new OrderBookLadderImpl("simple", new OrderBookListener() {
+            @Override
+            public void onAccepted(Order order) {
+                if (order.getId() % 10 == 0) throw new IllegalStateException("listener failed");
+            }
+        });
+        final List<Long> failed = new ArrayList<>();
+        final var sequencer = new OrderSequencer(book, 8, WaitStrategy.YIELD); // 比命令少得多，撮合线程停下来的话生产者会一直等
+        sequencer.setExceptionHandler((b, sequence, e) -> failed.add(sequence));
+        sequencer.start();
+        long last = -1L;
+        for (long id = 1; id <= 100; id++) last = sequencer.place(new Order(id, true, 10L, 1L));
+        sequencer.awaitProcessed(last);
+        sequencer.close();
+
+        assertEquals(100, sequencer.getProcessedCount());
+        assertEquals(10, sequencer.getFailedCount());
+        assertEquals("listener failed", sequencer.getLastFailure().getMessage());
+        assertEquals(10, failed.size());
+        assertEquals(9L, (long) failed.get(0));
+        assertEquals(90, book.getBidsDepth().getFirstLevel().getTotalQty(), "出错的命令没有执行完，后面的命令照常执行");
+    }
+}
@@ -0,0 +1,107 @@
+package com.ruislan.korderbook.feed;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.java.OrderBookJavaImpl;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopOfBookPublisherTest {
+
+    @Test
+    void testSubscriberSeesOnlyLatest() {
+        final var book = new OrderBookLadderImpl("feed", new OrderBookListener() {
+        });
+        final var publisher = new TopOfBookPublisher(book, 2);
+        final var subscriber = publisher.subscribe();
+        assertTrue(subscriber.poll(), "挂上去的时候先发布一次空的盘口");
+        assertFalse(subscriber.poll());
+
+        book.place(new Order(1L, true, 10L, 5L));
+        book.place(new Order(2L, true, 11L, 7L));
+        book.place(new Order(3L, true, 9L, 1L));
+        book.place(new Order(4L, false, 13L, 4L));
+        assertTrue(subscriber.poll());
+        assertFalse(subscriber.poll(), "没有新的发布");
+
+        final var top = subscriber.get();
+        assertEquals(2, top.getBidLevels(), "只发布前两档");
+        assertEquals(11, top.getBidPrice(0));
+        assertEquals(7, top.getBidQty(0));
+        assertEquals(10, top.getBidPrice(1));
+        assertEquals(1, top.getAskLevels());
+        assertEquals(13, top.getBestAsk());
+        assertEquals(4, top.getBestAskQty());
+        assertEquals(3, subscriber.getConflatedCount(), "四次下单只读到最后一次");
+
+        book.place(new Order(5L, false, 11L, 7L));
+        assertTrue(subscriber.poll());
+        assertEquals(10, subscriber.get().getBestBid());
+        assertEquals(11, subscriber.get().getMarketPrice());
+        assertEquals(3, subscriber.getUpdateCount());
+    }
+
+    @Test
+    void testBookPublishesOnlyWhenChanged() {
+        final var book = new OrderBookJavaImpl("feed", new OrderBookListener() {
+        });
+        final var slot = new TopOfBookSlot(3);
+        book.setTopOfBookSlot(slot);
+        book.place(new Order(1L, false, 20L, 5L));
+        final long version = slot.getVersion();
+
+        book.cancel(99L); // 撤单失败，深度没变
+        book.place(new Order(2L, true, 10L, 0L)); // 被拒绝
+        assertEquals(version, slot.getVersion());
+
+        final var top = new TopOfBook(3);
+        assertEquals(version, slot.read(top));
+        assertEquals(20, top.getBestAsk());
+        assertEquals(5, top.getAskQty(0));
+        assertEquals(0, top.getBidLevels());
+
+        book.place(new Order(3L, true, 20L, 2L));
+        assertTrue(slot.getVersion() > version);
+        slot.read(top);
+        assertEquals(3, top.getBestAskQty());
+        assertEquals(20, top.getMarketPrice());
+    }
+
+    @Test
+    void testConcurrentReadsAreConsistent() throws InterruptedException {
+        final var book = new OrderBookLadderImpl("feed", new OrderBookListener() {
+        });
+        final var publisher = new TopOfBookPublisher(book, 5);
+        final var running = new AtomicBoolean(true);
+        final var failure = new AtomicReference<String>();
+        final var reader = new Thread(() -> {
+            final var subscriber = publisher.subscribe();
+            while (running.get() && failure.get() == null) {
+                if (!subscriber.poll()) continue;
+                final var top = subscriber.get();
+                // 每一档都只有一个订单，数量等于价格，读到一半的状态会破坏这个关系
+                for (int i = 0; i < top.getBidLevels(); i++) {
+                    if (top.getBidQty(i) != top.getBidPrice(i)) failure.set("torn level " + top.getBidPrice(i));
+                }
+                if (top.getBidLevels() > 0 && top.getBestBid() != top.getBidPrice(0)) failure.set("torn best bid");
+            }
+        });
+        reader.start();
+        for (long id = 1; id <= 200_000; id++) {
+            final long price = 1L + id % 97;
+            book.place(new Order(id, true, price, price));
+            if (id > 3) book.cancel(id - 3);
+        }
+        running.set(false);
+        reader.join();
+        assertNull(failure.get());
+    }
+}
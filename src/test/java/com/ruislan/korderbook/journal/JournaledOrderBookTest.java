@@ -0,0 +1,161 @@
+package com.ruislan.korderbook.journal;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.TimeInForce;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournaledOrderBookTest {
+    private Path file;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        file = Files.createTempFile("korderbook", ".journal");
+        Files.delete(file);
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testReplayRebuildsBook() throws Exception {
+        final var random = new Random(7);
+        final JournaledOrderBook book;
+        try (var journal = new OrderJournal(file, FsyncPolicy.BATCH, 16, 4096)) { // 分段很小，会跨好几个分段
+            book = new JournaledOrderBook(new OrderBookLadderImpl("simple", new OrderBookListener() {
+            }), journal);
+            book.open();
+            for (int i = 0; i < 1_000; i++) {
+                final var order = new Order(i + 1, i % 5 + 1, random.nextBoolean(), random.nextLong(1, 100), random.nextLong(1, 1000), 0L);
+                book.place(order);
+                if (i % 3 == 0) book.cancel(random.nextLong(1, i + 2));
+                if (i % 7 == 0) book.amend(random.nextLong(1, i + 2), random.nextLong(1, 100), random.nextLong(1, 1000));
+                if (i % 97 == 0) book.cancelByOwner(random.nextLong(1, 6));
+                if (i % 101 == 0) book.cancelByPriceRange(random.nextBoolean(), 40L, 60L);
+            }
+        } // 模拟崩溃：没有调用 book.close()
+
+        try (var journal = new OrderJournal(file, FsyncPolicy.ASYNC, 16, 4096)) {
+            final var recovered = new JournaledOrderBook(new OrderBookLadderImpl("simple", new OrderBookListener() {
+            }), journal);
+            recovered.open();
+            assertEquals(book.getMarketPrice(), recovered.getMarketPrice());
+            assertEquals(book.getSpread(), recovered.getSpread());
+            assertEquals(book.getBidsDepth().size(), recovered.getBidsDepth().size());
+            assertEquals(book.getAsksDepth().size(), recovered.getAsksDepth().size());
+            for (int level = 1; level <= book.getBidsDepth().size(); level++) {
+                assertEquals(book.getBidsDepth().getDepthLevel(level).getTotalQty(), recovered.getBidsDepth().getDepthLevel(level).getTotalQty());
+            }
+
+            // 关闭之后再重放，订单簿应该是空的
+            recovered.close();
+        }
+        try (var journal = new OrderJournal(file, FsyncPolicy.ASYNC, 16, 4096)) {
+            final var reopened = new JournaledOrderBook(new OrderBookLadderImpl("simple", new OrderBookListener() {
+            }), journal);
+            reopened.open();
+            assertTrue(reopened.getBidsDepth().isEmpty());
+            assertTrue(reopened.getAsksDepth().isEmpty());
+        }
+    }
+
+    @Test
+    void testReplayKeepsCreatedAt() throws Exception {
+        try (var journal = new OrderJournal(file, FsyncPolicy.SYNC)) {
+            final var book = new JournaledOrderBook(new OrderBookLadderImpl("simple", new OrderBookListener() {
+            }), journal);
+            book.open();
+            book.place(new Order(1L, 1L, true, 10L, 5L, 1_000L));
+            book.place(new Order(2L, 1L, false, 55L, 10L, 60L, TimeInForce.GTC, false, 2_000L));
+        }
+
+        final List<String> accepted = new ArrayList<>();
+        try (var journal = new OrderJournal(file, FsyncPolicy.SYNC)) {
+            final var recovered = new JournaledOrderBook(new OrderBookLadderImpl("simple", new OrderBookListener() {
+                @Override
+                public void onAccepted(Order order) {
+                    accepted.add(order.getId() + "@" + order.getCreatedAt());
+                }
+            }), journal);
+            recovered.open();
+            assertEquals(List.of("1@1000", "2@2000"), accepted, "重放的订单用日志里的创建时间");
+        }
+    }
+
+    @Test
+    void testReplayAuction() throws Exception {
+        final List<String> fills = new ArrayList<>();
+        try (var journal = new OrderJournal(file, FsyncPolicy.SYNC)) {
+            final var book = new JournaledOrderBook(new OrderBookLadderImpl("simple", new OrderBookListener() {
+                @Override
+                public void onMatched(Order o1, Order o2, long price, long qty) {
+                    fills.add(o1.getId() + "/" + o2.getId() + "@" + price + "x" + qty);
+                }
+            }), journal);
+            book.open();
+            book.beginAuction();
+            book.place(new Order(1L, 1L, true, 12L, 5L, 0L));
+            book.place(new Order(2L, 1L, true, 10L, 3L, 0L));
+            book.place(new Order(3L, 2L, false, 9L, 2L, 0L));
+            book.place(new Order(4L, 2L, false, 10L, 6L, 0L));
+            assertEquals(8, book.uncross());
+        }
+
+        final List<String> replayed = new ArrayList<>();
+        try (var journal = new OrderJournal(file, FsyncPolicy.SYNC)) {
+            final var recovered = new JournaledOrderBook(new OrderBookLadderImpl("simple", new OrderBookListener() {
+                @Override
+                public void onMatched(Order o1, Order o2, long price, long qty) {
+                    replayed.add(o1.getId() + "/" + o2.getId() + "@" + price + "x" + qty);
+                }
+            }), journal);
+            recovered.open();
+            assertEquals(fills, replayed, "重放时同样在一个价格上开盘成交");
+            assertFalse(recovered.isInAuction());
+            assertEquals(10, recovered.getMarketPrice());
+        }
+    }
+
+    @Test
+    void testReplayCancelBySideRemovesStops() throws Exception {
+        try (var journal = new OrderJournal(file, FsyncPolicy.SYNC)) {
+            final var book = new JournaledOrderBook(new OrderBookLadderImpl("simple", new OrderBookListener() {
+            }), journal);
+            book.open();
+            book.place(new Order(1L, 1L, true, 55L, 10L, 50L, TimeInForce.GTC, false, 0L));
+            book.place(new Order(2L, 1L, true, 40L, 10L, 0L));
+            assertEquals(2, book.cancelBySide(true), "止损单和限价单都被撤掉");
+        }
+
+        final List<Long> triggered = new ArrayList<>();
+        try (var journal = new OrderJournal(file, FsyncPolicy.SYNC)) {
+            final var recovered = new JournaledOrderBook(new OrderBookLadderImpl("simple", new OrderBookListener() {
+                @Override
+                public void onTriggered(Order order) {
+                    triggered.add(order.getId());
+                }
+            }), journal);
+            recovered.open();
+            assertTrue(recovered.getBidsDepth().isEmpty());
+            recovered.place(new Order(3L, 2L, false, 60L, 10L, 0L));
+            recovered.place(new Order(4L, 3L, true, 60L, 10L, 0L)); // 成交价 60 穿过了止损价 50
+            assertEquals(60, recovered.getMarketPrice());
+            assertTrue(triggered.isEmpty(), "重放之后撤掉的止损单不应该回来");
+        }
+    }
+}
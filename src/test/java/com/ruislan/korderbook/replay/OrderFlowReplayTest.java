@@ -0,0 +1,94 @@
+package com.ruislan.korderbook.replay;
+
+import com.ruislan.korderbook.TimeInForce;
+import com.ruislan.korderbook.java.OrderBookJavaImpl;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import com.ruislan.korderbook.kotlin.OrderBookKotlinImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderFlowReplayTest {
+    private Path dir;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("korderbook");
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    void testConvertCsvAndReplay() throws Exception {
+        final var csv = dir.resolve("flow.csv");
+        Files.writeString(csv, """
+                timestamp,type,orderId,side,price,qty,ownerId,timeInForce,postOnly,stopPrice
+                # 两个卖单，一个买单吃掉一档半
+                1,PLACE,1,SELL,10,5
+                2,PLACE,2,SELL,11,5,7
+                3,PLACE,3,BUY,11,7,8,IOC
+                4,AMEND,2,12,4
+                5,CANCEL,2
+                6,CANCEL,2
+                7,PLACE,4,BUY,9,1,8,GTC,true
+                """);
+        final var flow = dir.resolve("flow.kof");
+        assertEquals(7, OrderFlowCsv.convert(csv, flow));
+
+        final var report = OrderFlowReplay.run(flow, listener -> new OrderBookJavaImpl("flow", listener));
+        assertEquals(7, report.getCommandCount());
+        assertEquals(7, report.getLatency().getCount());
+        assertTrue(report.getEventCount() > 0);
+        assertEquals(report.getChecksum(), OrderFlowReplay.run(flow, listener -> new OrderBookJavaImpl("flow", listener)).getChecksum(),
+                "同一个订单流重放两次校验和应该相同");
+
+        Files.writeString(csv, "1,PLACE,1,LEFT,10,5\n");
+        assertThrows(IOException.class, () -> OrderFlowCsv.convert(csv, flow));
+    }
+
+    @Test
+    void testSameChecksumAcrossImplementations() throws Exception {
+        final var flow = dir.resolve("random.kof");
+        final var random = new Random(7L);
+        long nextId = 0L;
+        try (var writer = new OrderFlowWriter(flow)) {
+            for (int i = 0; i < 20_000; i++) {
+                final int k = random.nextInt(10);
+                if (k < 3 && nextId > 0) {
+                    writer.cancel(i, 1 + random.nextLong(nextId));
+                } else if (k == 3 && nextId > 0) {
+                    writer.amend(i, 1 + random.nextLong(nextId), 40 + random.nextInt(20), 1 + random.nextInt(100));
+                } else {
+                    final long price = random.nextInt(20) == 0 ? 0L : 40 + random.nextInt(20);
+                    final long stopPrice = random.nextInt(10) == 0 ? 40 + random.nextInt(20) : 0L;
+                    final var timeInForce = TimeInForce.values()[random.nextInt(3)];
+                    writer.place(i, ++nextId, random.nextInt(5), random.nextBoolean(), price, 1 + random.nextInt(100),
+                            stopPrice, timeInForce, price > 0 && random.nextInt(10) == 0);
+                }
+            }
+        }
+
+        final var java = OrderFlowReplay.run(flow, listener -> new OrderBookJavaImpl("flow", listener));
+        final var ladder = OrderFlowReplay.run(flow, listener -> new OrderBookLadderImpl("flow", listener));
+        final var kotlin = OrderFlowReplay.run(flow, listener -> new OrderBookKotlinImpl("flow", listener));
+        assertEquals(20_000, java.getCommandCount());
+        assertEquals(java.getEventCount(), ladder.getEventCount());
+        assertEquals(java.getChecksum(), ladder.getChecksum());
+        assertEquals(java.getChecksum(), kotlin.getChecksum());
+    }
+}
@@ -0,0 +1,171 @@
+package com.ruislan.korderbook.snapshot;
+
+import com.ruislan.korderbook.Order;
+import com.ruislan.korderbook.OrderBook;
+import com.ruislan.korderbook.OrderBookListener;
+import com.ruislan.korderbook.TimeInForce;
+import com.ruislan.korderbook.feed.TopOfBook;
+import com.ruislan.korderbook.feed.TopOfBookSlot;
+import com.ruislan.korderbook.java.OrderBookJavaImpl;
+import com.ruislan.korderbook.java.OrderBookLadderImpl;
+import com.ruislan.korderbook.journal.FsyncPolicy;
+import com.ruislan.korderbook.journal.JournaledOrderBook;
+import com.ruislan.korderbook.journal.OrderJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotTest {
+    private Path dir;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("korderbook");
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    void testRestoreSnapshotAndJournalTail() throws Exception {
+        final var journalFile = dir.resolve("book.journal");
+        final var snapshotFile = dir.resolve("book.snapshot");
+        final var random = new Random(11);
+        final JournaledOrderBook book;
+        try (var journal = new OrderJournal(journalFile, FsyncPolicy.ASYNC); var writer = new SnapshotWriter()) {
+            book = new JournaledOrderBook(newBook(), journal, snapshotFile);
+            book.open();
+            for (int i = 0; i < 2_000; i++) {
+                if (i == 1_500) book.snapshot(writer).join(); // 快照之后的 500 条命令只在日志里
+                final long stopPrice = i % 10 == 0 ? random.nextLong(1, 100) : 0L; // 一部分是止损单，有的会留到快照里
+                book.place(new Order(i + 1, 0L, random.nextBoolean(), random.nextLong(1, 100), random.nextLong(1, 1000), stopPrice, TimeInForce.GTC, false, 0L));
+                if (i % 4 == 0) book.cancel(random.nextLong(1, i + 2));
+            }
+        }
+
+        try (var journal = new OrderJournal(journalFile, FsyncPolicy.ASYNC)) {
+            final var restored = new JournaledOrderBook(newBook(), journal, snapshotFile);
+            restored.open();
+            assertSameState(book, restored);
+        }
+    }
+
+    @Test
+    void testSnapshotBetweenImplementations() throws Exception {
+        final var file = dir.resolve("book.snapshot");
+        final var random = new Random(5);
+        final var ladder = newBook();
+        ladder.place(new Order(true, 0L, 10L)); // 市价单也要保持在最前面
+        for (int i = 0; i < 500; i++) ladder.place(new Order(random.nextBoolean(), random.nextLong(1, 100), random.nextLong(1, 1000)));
+
+        try (var writer = new SnapshotWriter()) {
+            writer.write(ladder, 0L, file).join();
+        }
+        final var restored = new OrderBookJavaImpl("simple", new OrderBookListener() {
+        });
+        SnapshotReader.restore(file, restored);
+        assertSameState(ladder, restored);
+    }
+
+    @Test
+    void testFailedWriteDoesNotBlockLaterSnapshots() throws Exception {
+        final var file = dir.resolve("book.snapshot");
+        final var book = newBook();
+        book.place(new Order(true, 10L, 10L));
+
+        try (var writer = new SnapshotWriter()) {
+            // 目录不存在，写失败
+            final var failed = writer.write(book, 0L, dir.resolve("missing").resolve("book.snapshot"));
+            assertThrows(CompletionException.class, failed::join);
+            writer.write(book, 0L, file).join();
+        }
+        final var restored = newBook();
+        SnapshotReader.restore(file, restored);
+        assertSameState(book, restored);
+    }
+
+    @Test
+    void testSnapshotDuringAuction() throws Exception {
+        final var file = dir.resolve("book.snapshot");
+        final var book = newBook();
+        book.beginAuction();
+        book.place(new Order(1L, 0L, true, 12L, 5L, 0L));
+        book.place(new Order(2L, 0L, false, 10L, 6L, 0L)); // 集合竞价阶段订单簿是交叉的
+
+        try (var writer = new SnapshotWriter()) {
+            writer.write(book, 0L, file).join();
+        }
+        final var restored = newBook();
+        SnapshotReader.restore(file, restored);
+        assertSameState(book, restored);
+        assertTrue(restored.isInAuction(), "恢复之后还在集合竞价阶段");
+        assertEquals(book.uncross(), restored.uncross());
+        assertSameState(book, restored);
+    }
+
+    @Test
+    void testRestorePublishesTopOfBook() throws Exception {
+        final var file = dir.resolve("book.snapshot");
+        final var book = newBook();
+        book.place(new Order(1L, 0L, true, 10L, 5L, 0L));
+        book.place(new Order(2L, 0L, false, 12L, 7L, 0L));
+        try (var writer = new SnapshotWriter()) {
+            writer.write(book, 0L, file).join();
+        }
+
+        final List<String> bestBidAsks = new ArrayList<>();
+        final var restored = new OrderBookLadderImpl("simple", new OrderBookListener() {
+            @Override
+            public void onBestBidAskChanged(long bidPrice, long bidQty, long askPrice, long askQty) {
+                bestBidAsks.add(bidQty + "@" + bidPrice + " " + askQty + "@" + askPrice);
+            }
+        });
+        final var slot = new TopOfBookSlot(5);
+        restored.setTopOfBookSlot(slot);
+        SnapshotReader.restore(file, restored);
+
+        assertEquals(List.of("5@10 7@12"), bestBidAsks, "恢复之后马上发布一次最优买卖价");
+        final var top = new TopOfBook(5);
+        slot.read(top);
+        assertEquals(1, top.getBidLevels());
+        assertEquals(10, top.getBidPrice(0));
+        assertEquals(12, top.getAskPrice(0));
+    }
+
+    private static OrderBook newBook() {
+        return new OrderBookLadderImpl("simple", new OrderBookListener() {
+        });
+    }
+
+    private static void assertSameState(OrderBook expected, OrderBook actual) {
+        assertEquals(expected.getMarketPrice(), actual.getMarketPrice());
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    private static String describe(OrderBook book) {
+        final var sb = new StringBuilder();
+        final Snapshotable snapshotable = book instanceof JournaledOrderBook journaled ? (Snapshotable) journaled.getDelegate() : (Snapshotable) book;
+        snapshotable.forEachOrder(order -> sb.append(order.getId()).append(':').append(order.getOpenQty()).append(','));
+        sb.append('|');
+        book.getBidsDepth().forEach(level -> sb.append(level.getPrice()).append('/').append(level.getTotalQty()).append('/').append(level.getOrderCount()).append(','));
+        sb.append('|');
+        book.getAsksDepth().forEach(level -> sb.append(level.getPrice()).append('/').append(level.getTotalQty()).append('/').append(level.getOrderCount()).append(','));
+        return sb.toString();
+    }
+}